@@ -0,0 +1,136 @@
+import util.ThreadOutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many files in a single JVM. Every file goes through {@link Main#compile} on a work-stealing pool; its
+ * diagnostics are captured and printed in one piece, followed by a summary of the exit code of every file.
+ */
+final class BatchCompiler {
+
+    private BatchCompiler() {
+    }
+
+    private static final class Result {
+        final File source;
+        final int exitCode;
+
+        Result(File source, int exitCode) {
+            this.source = source;
+            this.exitCode = exitCode;
+        }
+    }
+
+    /**
+     * Compiles the files listed in {@code input}, either a manifest with one path per line (relative paths being
+     * resolved against the manifest's directory) or a directory searched recursively for {@code .c} files.
+     *
+     * @return {@link Main#PASS} if every file compiled, the exit code of the first file that failed otherwise.
+     */
+    static int run(Main.Mode mode, Main.Options options, File input, int jobs) {
+        List<File> sources;
+        try {
+            sources = input.isDirectory() ? findSources(input) : readManifest(input);
+        } catch (IOException e) {
+            System.out.println("File "+input.toString()+" could not be read.");
+            return Main.FILE_NOT_FOUND;
+        }
+
+        ThreadOutput.install();
+        PrintStream out = ThreadOutput.original();
+
+        List<Future<Result>> futures = new ArrayList<>(sources.size());
+        ForkJoinPool pool = new ForkJoinPool(jobs);
+        try {
+            for (File source : sources)
+                futures.add(pool.submit(() -> compile(mode, options, source, out)));
+
+            List<Result> results = new ArrayList<>(futures.size());
+            for (Future<Result> future : futures)
+                results.add(future.get());
+            return summarise(results, options, out);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Main.MODE_FAIL;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Result compile(Main.Mode mode, Main.Options options, File source, PrintStream out) {
+        Main.Outcome outcome = Main.compileCaptured(() -> Main.compile(mode, options, source, asmFile(source)));
+        if (!outcome.diagnostics.isEmpty()) {
+            synchronized (out) {
+                out.println("== " + source);
+                out.print(outcome.diagnostics);
+            }
+        }
+        return new Result(source, outcome.exitCode);
+    }
+
+    private static int summarise(List<Result> results, Main.Options options, PrintStream out) {
+        int exitCode = Main.PASS;
+        int failed = 0;
+        out.println("== summary");
+        for (Result result : results) {
+            out.println((result.exitCode == Main.PASS ? "pass     " : String.format("fail %3d ", result.exitCode))
+                    + result.source);
+            if (result.exitCode != Main.PASS) {
+                failed++;
+                if (exitCode == Main.PASS)
+                    exitCode = result.exitCode;
+            }
+        }
+        out.println(results.size() + " files, " + (results.size() - failed) + " passed, " + failed + " failed");
+        if (options.cache != null)
+            out.println("cache: " + options.cache.hits() + " hits, " + options.cache.misses() + " misses");
+        if (options.functionCache != null)
+            out.println("function cache: " + options.functionCache.hits() + " hits, "
+                    + options.functionCache.misses() + " misses");
+        return exitCode;
+    }
+
+    /**
+     * Returns the file next to {@code source} with its extension replaced by {@code .asm}.
+     */
+    static File asmFile(File source) {
+        String name = source.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(source.getAbsoluteFile().getParentFile(), (dot > 0 ? name.substring(0, dot) : name) + ".asm");
+    }
+
+    private static List<File> findSources(File directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            return paths.filter(path -> path.toString().endsWith(".c") && Files.isRegularFile(path))
+                    .sorted()
+                    .map(Path::toFile)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static List<File> readManifest(File manifest) throws IOException {
+        File base = manifest.getAbsoluteFile().getParentFile();
+        List<File> sources = new ArrayList<>();
+        for (String line : Files.readAllLines(manifest.toPath())) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            File source = new File(line);
+            sources.add(source.isAbsolute() ? source : new File(base, line));
+        }
+        return sources;
+    }
+}
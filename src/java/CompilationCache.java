@@ -0,0 +1,246 @@
+import lexer.Scanner;
+import regalloc.AssemblyPass;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An on-disk cache of generated assembly, addressed by a hash of everything the output depends on: the source bytes,
+ * the pass and register allocator, the lexer options and the build of the compiler itself. A hit copies the cached
+ * {@code .asm} without lexing, parsing or generating anything.
+ *
+ * Entries are written to a temporary file and moved in place, so that concurrent compilers sharing the directory
+ * never see a partial entry. The least recently used entries are evicted once the cache grows past its size limit;
+ * recency is kept in the modification time of the entries so that it carries over from one run to the next.
+ */
+final class CompilationCache {
+
+    private static final String SUFFIX = ".asm";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path directory;
+    private final long limit;
+    private final byte[] version;
+
+    // entry name to size in bytes, least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * Opens the cache in {@code directory}, creating it if needed, and bounds it to {@code limit} bytes.
+     */
+    CompilationCache(File directory, long limit) throws IOException {
+        this.directory = directory.toPath();
+        this.limit = limit;
+        this.version = compilerVersion();
+        Files.createDirectories(this.directory);
+
+        List<Path> existing;
+        try (Stream<Path> files = Files.list(this.directory)) {
+            existing = files.filter(path -> path.getFileName().toString().endsWith(SUFFIX))
+                    .collect(Collectors.toList());
+        }
+        List<Map.Entry<Path, FileTime>> byAge = new ArrayList<>();
+        for (Path path : existing) {
+            try {
+                byAge.add(Map.entry(path, Files.getLastModifiedTime(path)));
+            } catch (NoSuchFileException e) {
+                // evicted by another compiler in the meantime
+            }
+        }
+        byAge.sort(Map.Entry.comparingByValue());
+        for (Map.Entry<Path, FileTime> entry : byAge) {
+            long length = entry.getKey().toFile().length();
+            entries.put(entry.getKey().getFileName().toString(), length);
+            size += length;
+        }
+    }
+
+    int hits() {
+        return hits.get();
+    }
+
+    int misses() {
+        return misses.get();
+    }
+
+    /**
+     * Generates the code of {@code inputFile} into {@code outputFile} like {@link Main#compile(Main.Mode,
+     * Main.Options, File, File)}, unless the same source has already been compiled the same way.
+     */
+    int compile(Main.Mode mode, Main.Options options, File inputFile, File outputFile) {
+        byte[] source;
+        try {
+            source = Files.readAllBytes(inputFile.toPath());
+        } catch (NoSuchFileException e) {
+            System.out.println("File "+inputFile.toString()+" does not exist.");
+            return Main.FILE_NOT_FOUND;
+        } catch (IOException e) {
+            System.out.println("File "+inputFile.toString()+" could not be read.");
+            return Main.FILE_NOT_FOUND;
+        }
+
+        String name = key(source, mode, options) + SUFFIX;
+        if (fetch(name, outputFile)) {
+            hits.incrementAndGet();
+            return Main.PASS;
+        }
+        misses.incrementAndGet();
+
+        // compile the very bytes that were hashed, the file may change in the meantime
+        int exitCode = Main.compile(mode, options, Scanner.decode(ByteBuffer.wrap(source)), outputFile);
+        if (exitCode == Main.PASS)
+            store(name, outputFile);
+        return exitCode;
+    }
+
+    private String key(byte[] source, Main.Mode mode, Main.Options options) {
+        MessageDigest digest = sha256();
+        digest.update(version);
+        AssemblyPass allocator = Main.determineRegisterAllocator(mode, options);
+        String configuration = mode + " " + (allocator == AssemblyPass.NOP ? "NOP" : allocator.getClass().getName())
+                + (options.classicLexer ? " classic-lexer" : "") + (options.tokenArray ? " token-array" : "")
+                + (options.noPeephole ? " no-peephole" : "") + (options.noFold ? " no-fold" : "")
+                + (options.ir ? " ir" : "") + "\n";
+        digest.update(configuration.getBytes(StandardCharsets.UTF_8));
+        digest.update(source);
+        return hex(digest.digest());
+    }
+
+    // the entry may have been added or evicted by another compiler sharing the directory, so the file decides
+    private boolean fetch(String name, File outputFile) {
+        Path entry = directory.resolve(name);
+        try {
+            Files.copy(entry, outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            synchronized (this) {
+                Long length = entries.remove(name);
+                if (length != null)
+                    size -= length;
+            }
+            return false;
+        }
+        synchronized (this) {
+            long length = outputFile.length();
+            Long previous = entries.put(name, length);
+            size += length - (previous == null ? 0 : previous);
+        }
+        return true;
+    }
+
+    private void store(String name, File outputFile) {
+        Path entry = directory.resolve(name);
+        long length;
+        try {
+            Path temporary = Files.createTempFile(directory, name, ".tmp");
+            try {
+                Files.copy(outputFile.toPath(), temporary, StandardCopyOption.REPLACE_EXISTING);
+                length = Files.size(temporary);
+                try {
+                    Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            // a cache that cannot be written to only costs the next compilation
+            return;
+        }
+
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long previous = entries.put(name, length);
+            size += length - (previous == null ? 0 : previous);
+            for (Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator(); size > limit && it.hasNext(); ) {
+                Map.Entry<String, Long> lru = it.next();
+                if (lru.getKey().equals(name))
+                    continue;
+                evicted.add(lru.getKey());
+                size -= lru.getValue();
+                it.remove();
+            }
+        }
+        for (String old : evicted) {
+            try {
+                Files.deleteIfExists(directory.resolve(old));
+            } catch (IOException e) {
+                // left for the next eviction
+            }
+        }
+    }
+
+    /*
+     * Fingerprints the build of the compiler: the class files when running from a directory, the archive otherwise.
+     */
+    private static byte[] compilerVersion() throws IOException {
+        Path location;
+        try {
+            location = Paths.get(Main.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+
+        MessageDigest digest = sha256();
+        if (!Files.isDirectory(location)) {
+            digest.update(Files.readAllBytes(location));
+            return digest.digest();
+        }
+        try (Stream<Path> files = Files.walk(location)) {
+            List<Path> classes = files.filter(path -> path.toString().endsWith(".class"))
+                    .sorted(Comparator.comparing(path -> location.relativize(path).toString()))
+                    .collect(Collectors.toList());
+            for (Path path : classes) {
+                digest.update(location.relativize(path).toString().getBytes(StandardCharsets.UTF_8));
+                digest.update(Files.readAllBytes(path));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return digest.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+}
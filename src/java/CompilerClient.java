@@ -0,0 +1,88 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A launcher taking the same arguments as {@link Main} that hands the compilation to a running
+ * {@link CompilerServer}, prints its diagnostics and exits with its exit code. When no server is running the
+ * compilation happens in this JVM instead.
+ */
+public final class CompilerClient {
+
+    private CompilerClient() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = CompilerServer.DEFAULT_PORT;
+        int first = 0;
+        if (args.length > 0 && args[0].startsWith("--port=")) {
+            port = Integer.parseInt(args[0].substring("--port=".length()));
+            first = 1;
+        }
+        if (args.length - first < 3) {
+            System.out.println("Usage: java " + CompilerClient.class.getSimpleName()
+                    + " [--port=n] [options] pass inputfile|- outputfile");
+            System.exit(-1);
+        }
+
+        StringBuilder request = new StringBuilder();
+        for (int i = first; i < args.length; i++) {
+            String arg = args[i];
+            // the server does not share our working directory
+            if (i >= args.length - 2 && !arg.equals("-"))
+                arg = new File(arg).getAbsolutePath();
+            request.append(arg).append('\n');
+        }
+        request.append('\n');
+
+        Socket socket;
+        try {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        } catch (ConnectException e) {
+            // Main only reads files, so the source given on the standard input is compiled as the server would
+            if (args[args.length - 2].equals("-")) {
+                Reader in = new InputStreamReader(System.in, StandardCharsets.UTF_8);
+                System.exit(CompilerServer.compile(Arrays.asList(args).subList(first, args.length), new Main.Options(), in));
+            }
+            String[] mainArgs = new String[args.length - first];
+            System.arraycopy(args, first, mainArgs, 0, mainArgs.length);
+            Main.main(mainArgs);
+            return;
+        }
+
+        String response;
+        try (socket) {
+            OutputStream out = socket.getOutputStream();
+            out.write(request.toString().getBytes(StandardCharsets.UTF_8));
+            if (args[args.length - 2].equals("-"))
+                System.in.transferTo(out);
+            socket.shutdownOutput();
+            response = readAll(socket.getInputStream());
+        }
+
+        // a server that dies during the compilation closes the connection without an exit code
+        int newline = response.indexOf('\n');
+        if (newline == -1 || !response.substring(0, newline).matches("\\d+")) {
+            System.out.println("The compiler server closed the connection without answering.");
+            System.exit(Main.MODE_FAIL);
+        }
+        System.out.print(response.substring(newline + 1));
+        System.out.flush();
+        System.exit(Integer.parseInt(response.substring(0, newline)));
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        in.transferTo(bytes);
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,129 @@
+import lexer.Scanner;
+import util.ThreadOutput;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A resident compiler serving compile requests over a localhost TCP socket, so that a warm JVM is reused instead of
+ * starting a new one per file.
+ *
+ * Each connection carries a single request: the arguments of a {@link Main} command line ({@code [options] pass
+ * inputfile outputfile}) one per line, terminated by an empty line. An input file named {@code -} means the source
+ * follows the empty line, up to the end of the client's output. Relative paths are resolved against the server's
+ * working directory. The response is the exit code of the compilation on the first line, followed by everything the
+ * compilation printed.
+ *
+ * The socket only accepts connections from this machine but does not authenticate them: any local user can have the
+ * server read any file and write an output file anywhere its own user can. Only run it on a machine whose users are
+ * trusted with the rights of the user running it.
+ */
+final class CompilerServer {
+
+    static final int DEFAULT_PORT = 5420;
+
+    // requests waiting for a worker, per worker; when the queue is full the acceptor compiles the request itself
+    private static final int QUEUE_PER_JOB = 4;
+    private static final int READ_TIMEOUT = 30_000;
+
+    private CompilerServer() {
+    }
+
+    /**
+     * Serves requests on {@code port} with at most {@code jobs} compilations at once; {@code defaults} are the options
+     * every request starts from. Only returns if the socket cannot be opened or fails.
+     */
+    static int run(Main.Options defaults, int port, int jobs) {
+        ThreadOutput.install();
+        PrintStream out = ThreadOutput.original();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(jobs, jobs, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(jobs * QUEUE_PER_JOB), new ThreadPoolExecutor.CallerRunsPolicy());
+        try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            out.println("Compiler server listening on " + server.getLocalSocketAddress());
+            while (true) {
+                Socket client = server.accept();
+                executor.execute(() -> serve(client, defaults));
+            }
+        } catch (IOException e) {
+            out.println("Compiler server stopped: " + e.getMessage());
+            return Main.FILE_NOT_FOUND;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void serve(Socket client, Main.Options defaults) {
+        try (client) {
+            client.setSoTimeout(READ_TIMEOUT);
+            BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+            List<String> args = new ArrayList<>();
+            for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine())
+                args.add(line);
+
+            Main.Outcome outcome = Main.compileCaptured(() -> compile(args, defaults, in));
+
+            Writer response = new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8);
+            response.write(outcome.exitCode + "\n");
+            response.write(outcome.diagnostics);
+            response.flush();
+        } catch (IOException e) {
+            // the client went away, there is no one left to report to
+        }
+    }
+
+    /**
+     * Compiles the request made of {@code args}, reading the source from {@code in} when the input file is {@code -}.
+     */
+    static int compile(List<String> args, Main.Options defaults, Reader in) {
+        Main.Options options = defaults.copy();
+
+        int first = 0;
+        while (first < args.size() && args.get(first).startsWith("--")) {
+            if (!options.set(args.get(first))) {
+                System.out.println("Unknown option " + args.get(first) + ".");
+                return Main.MODE_FAIL;
+            }
+            first++;
+        }
+        Main.Mode mode = args.size() - first == 3 ? Main.parseMode(args.get(first)) : null;
+        if (mode == null || !options.isValid()) {
+            System.out.println("Expected [options] pass inputfile outputfile, got " + args + ".");
+            return Main.MODE_FAIL;
+        }
+
+        String input = args.get(first + 1);
+        File outputFile = new File(args.get(first + 2));
+        if (!input.equals("-"))
+            return Main.compile(mode, options, new File(input), outputFile);
+
+        StringBuilder source = new StringBuilder();
+        char[] chunk = new char[8192];
+        try {
+            for (int n = in.read(chunk); n != -1; n = in.read(chunk))
+                source.append(chunk, 0, n);
+        } catch (IOException e) {
+            System.out.println("The source could not be read.");
+            return Main.FILE_NOT_FOUND;
+        }
+        // one more char for the scanner's sentinel
+        char[] chars = new char[source.length() + 1];
+        source.getChars(0, source.length(), chars, 0);
+        return Main.compile(mode, options, new Scanner(chars, source.length()), outputFile);
+    }
+}
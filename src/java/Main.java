@@ -1,19 +1,38 @@
 import gen.CodeGenerator;
+import gen.FunctionCache;
+import gen.PeepholeOptimiser;
+import gen.asm.AssemblyProgram;
+import ir.IRBuilder;
+import ir.Lowering;
+import ir.Module;
+import ir.Printer;
+import ir.Verifier;
 import lexer.Scanner;
+import lexer.TableTokeniser;
 import lexer.Token;
 import lexer.Tokeniser;
+import opt.ConstantFolder;
 import parser.Parser;
 import ast.ASTPrinter;
 import ast.Program;
 import regalloc.AssemblyPass;
+import regalloc.ChaitinRegAlloc;
+import regalloc.IteratedCoalescingRegAlloc;
+import regalloc.LinearScanRegAlloc;
 import regalloc.NaiveRegAlloc;
 import sem.SemanticAnalyzer;
+import util.ThreadOutput;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.security.InvalidParameterException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
 
 /**
  * The Main file implies an interface for the subsequent components, e.g.
@@ -22,54 +41,274 @@ import java.security.InvalidParameterException;
  *     which returns the total number of lexing errors.
  */
 public class Main {
-	private static final int FILE_NOT_FOUND = 2;
-    private static final int MODE_FAIL      = 254;
-    private static final int LEXER_FAIL     = 250;
-    private static final int PARSER_FAIL    = 245;
-    private static final int SEM_FAIL       = 240;
-    private static final int PASS           = 0;
-    
-    private enum Mode {
+	static final int FILE_NOT_FOUND = 2;
+    static final int MODE_FAIL      = 254;
+    static final int LEXER_FAIL     = 250;
+    static final int PARSER_FAIL    = 245;
+    static final int SEM_FAIL       = 240;
+    static final int PASS           = 0;
+
+    private static final int DEFAULT_CACHE_LIMIT = 64;
+    private static final int FUNCTION_CACHE_CAPACITY = 4096;
+
+    enum Mode {
         LEXER, PARSER, AST, SEMANTICANALYSIS, GEN, GEN_NO_REGALLOC, REGALLOC
     }
 
+    /**
+     * The command line options shared by every file of a compilation.
+     */
+    static final class Options {
+        boolean classicLexer;
+        boolean tokenArray;
+        boolean parserStats;
+        boolean noPeephole;
+        boolean peepholeStats;
+        boolean noFold;
+        boolean foldStats;
+        boolean ir;
+        boolean printIr;
+        // the allocator of -regalloc, the default one when null
+        AssemblyPass registerAllocator;
+        // set by the driver, shared by every compilation
+        CompilationCache cache;
+        FunctionCache functionCache;
+
+        /**
+         * Sets the option named {@code option}, returning false if there is no such option.
+         */
+        boolean set(String option) {
+            if (option.startsWith("--allocator=")) {
+                registerAllocator = allocatorNamed(option.substring("--allocator=".length()));
+                return registerAllocator != null;
+            }
+            switch (option) {
+                case "--classic-lexer": classicLexer = true; return true;
+                case "--token-array":   tokenArray = true; return true;
+                case "--parser-stats":  parserStats = true; return true;
+                case "--no-peephole":   noPeephole = true; return true;
+                case "--peephole-stats": peepholeStats = true; return true;
+                case "--no-fold":       noFold = true; return true;
+                case "--fold-stats":    foldStats = true; return true;
+                case "--ir":            ir = true; return true;
+                case "--print-ir":      ir = printIr = true; return true;
+                default:                return false;
+            }
+        }
+
+        boolean isValid() {
+            return !(classicLexer && tokenArray);
+        }
+
+        /**
+         * Tells if the options print something about the compilation beyond its errors, which a cached result could
+         * not reproduce.
+         */
+        boolean printsDiagnostics() {
+            return parserStats || peepholeStats || foldStats || printIr;
+        }
+
+        Options copy() {
+            Options copy = new Options();
+            copy.classicLexer = classicLexer;
+            copy.tokenArray = tokenArray;
+            copy.parserStats = parserStats;
+            copy.noPeephole = noPeephole;
+            copy.peepholeStats = peepholeStats;
+            copy.noFold = noFold;
+            copy.foldStats = foldStats;
+            copy.ir = ir;
+            copy.printIr = printIr;
+            copy.registerAllocator = registerAllocator;
+            copy.cache = cache;
+            copy.functionCache = functionCache;
+            return copy;
+        }
+    }
+
     private static void usage() {
-        System.out.println("Usage: java "+ Main.class.getSimpleName()+" pass inputfile outputfile");
+        System.out.println("Usage: java "+ Main.class.getSimpleName()+" [options] pass inputfile outputfile");
+        System.out.println("   or: java "+ Main.class.getSimpleName()+" [options] --batch pass manifest|directory");
+        System.out.println("   or: java "+ Main.class.getSimpleName()+" [options] --server");
         System.out.println("where pass is either: -lexer, -parser, -ast, -sem, -gen, -gen-no-regalloc, or -regalloc");
+        System.out.println("and options are any of:");
+        System.out.println("  --classic-lexer    use the original Tokeniser instead of the table-driven one");
+        System.out.println("  --token-array      lex the whole file into a token array before parsing it");
+        System.out.println("  --parser-stats     with -parser, report how often each decision looked past the next token");
+        System.out.println("  --allocator=name   with -regalloc, the register allocator: chaitin (default), irc (iterated");
+        System.out.println("                     register coalescing) or linear (linear scan, for fast compiles)");
+        System.out.println("  --no-peephole      with -gen or -regalloc, leave out the peephole optimisations of the allocated code");
+        System.out.println("  --peephole-stats   with -gen or -regalloc, report how many instructions each peephole rule removed");
+        System.out.println("  --no-fold          with -gen, -gen-no-regalloc or -regalloc, leave constant expressions to be evaluated");
+        System.out.println("                     at run time");
+        System.out.println("  --fold-stats       with -gen, -gen-no-regalloc or -regalloc, report how much constant folding did");
+        System.out.println("  --ir               with -gen, -gen-no-regalloc or -regalloc, generate the code through the SSA");
+        System.out.println("                     intermediate representation, which is verified first");
+        System.out.println("  --print-ir         like --ir, and print the intermediate representation");
+        System.out.println("  --batch            compile every file listed in a manifest (one path per line) or found under a");
+        System.out.println("                     directory, writing each .asm next to its source");
+        System.out.println("  --jobs=n           with --batch or --server, compile at most n files at once (default: one per");
+        System.out.println("                     processor)");
+        System.out.println("  --cache=dir        reuse the code generated for identical sources, kept in dir; not used with");
+        System.out.println("                     the options printing statistics or the IR");
+        System.out.println("  --cache-limit=n    with --cache, the size of the cache in megabytes (default: " + DEFAULT_CACHE_LIMIT + ")");
+        System.out.println("  --incremental      with --batch or --server, reuse the allocated code of functions that did not change");
+        System.out.println("  --server           stay resident and serve compile requests from " + CompilerClient.class.getSimpleName() + "; any local");
+        System.out.println("                     user can connect and have it read and write files as the user running it");
+        System.out.println("  --port=n           with --server, the localhost port to listen on (default: " + CompilerServer.DEFAULT_PORT + ")");
         System.exit(-1);
     }
 
     public static void main(String[] args) {
-        if (args.length != 3)
+        Options options = new Options();
+        boolean batch = false;
+        boolean server = false;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        int port = CompilerServer.DEFAULT_PORT;
+        String cacheDirectory = null;
+        int cacheLimit = DEFAULT_CACHE_LIMIT;
+        int first = 0;
+        while (first < args.length && args[first].startsWith("--")) {
+            String option = args[first];
+            if (option.startsWith("--jobs="))
+                jobs = parsePositive(option.substring("--jobs=".length()));
+            else if (option.startsWith("--port="))
+                port = parsePositive(option.substring("--port=".length()));
+            else if (option.startsWith("--cache="))
+                cacheDirectory = option.substring("--cache=".length());
+            else if (option.startsWith("--cache-limit="))
+                cacheLimit = parsePositive(option.substring("--cache-limit=".length()));
+            else if (option.equals("--batch"))
+                batch = true;
+            else if (option.equals("--server"))
+                server = true;
+            else if (option.equals("--incremental"))
+                options.functionCache = new FunctionCache(FUNCTION_CACHE_CAPACITY);
+            else if (!options.set(option))
+                usage();
+            first++;
+        }
+        if (!options.isValid() || (batch && server))
             usage();
 
-        Mode mode = null;
-        switch (args[0]) {
-            case "-lexer":           mode = Mode.LEXER; break;
-            case "-parser":          mode = Mode.PARSER; break;
-            case "-ast":             mode = Mode.AST; break;
-            case "-sem":             mode = Mode.SEMANTICANALYSIS; break;
-            case "-gen-no-regalloc": mode = Mode.GEN_NO_REGALLOC; break;
-            case "-gen":             mode = Mode.GEN; break;
-            case "-regalloc":        mode = Mode.REGALLOC; break;
-            default:
+        if (cacheDirectory != null) {
+            try {
+                options.cache = new CompilationCache(new File(cacheDirectory), cacheLimit * 1024L * 1024L);
+            } catch (IOException e) {
+                System.out.println("Cache "+cacheDirectory+" could not be opened.");
+                System.exit(FILE_NOT_FOUND);
+            }
+        }
+
+        if (server) {
+            if (args.length != first)
                 usage();
-                break;
+            System.exit(CompilerServer.run(options, port, jobs));
         }
 
-        File inputFile = new File(args[1]);
-        File outputFile = new File(args[2]);
+        if (args.length - first != (batch ? 2 : 3))
+            usage();
+
+        Mode mode = parseMode(args[first]);
+        if (mode == null)
+            usage();
+
+        if (batch)
+            System.exit(BatchCompiler.run(mode, options, new File(args[first + 1]), jobs));
+
+        File inputFile = new File(args[first + 1]);
+        File outputFile = new File(args[first + 2]);
+        System.exit(compile(mode, options, inputFile, outputFile));
+    }
+
+    private static int parsePositive(String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0)
+                return n;
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        usage();
+        return -1;
+    }
+
+    static Mode parseMode(String pass) {
+        switch (pass) {
+            case "-lexer":           return Mode.LEXER;
+            case "-parser":          return Mode.PARSER;
+            case "-ast":             return Mode.AST;
+            case "-sem":             return Mode.SEMANTICANALYSIS;
+            case "-gen-no-regalloc": return Mode.GEN_NO_REGALLOC;
+            case "-gen":             return Mode.GEN;
+            case "-regalloc":        return Mode.REGALLOC;
+            default:                 return null;
+        }
+    }
+
+    /**
+     * The exit code of a compilation together with everything it printed.
+     */
+    static final class Outcome {
+        final int exitCode;
+        final String diagnostics;
+
+        Outcome(int exitCode, String diagnostics) {
+            this.exitCode = exitCode;
+            this.diagnostics = diagnostics;
+        }
+    }
+
+    /**
+     * Runs {@code compilation} on the calling thread with its output captured by {@link ThreadOutput}, which must have
+     * been installed. A crash of the compiler is reported as {@link #MODE_FAIL} so that it only fails the compilation
+     * it happened in.
+     */
+    static Outcome compileCaptured(IntSupplier compilation) {
+        ThreadOutput.begin();
+        int exitCode;
+        try {
+            exitCode = compilation.getAsInt();
+        } catch (RuntimeException | StackOverflowError e) {
+            e.printStackTrace();
+            exitCode = MODE_FAIL;
+        }
+        return new Outcome(exitCode, ThreadOutput.end());
+    }
+
+    /**
+     * Runs the passes selected by {@code mode} on a single file and returns the exit code of the compilation.
+     * Diagnostics are printed on the standard streams; nothing here terminates the JVM.
+     */
+    static int compile(Mode mode, Options options, File inputFile, File outputFile) {
+        if (options.cache != null && !options.printsDiagnostics()
+                && (mode == Mode.GEN || mode == Mode.REGALLOC || mode == Mode.GEN_NO_REGALLOC))
+            return options.cache.compile(mode, options, inputFile, outputFile);
 
         Scanner scanner;
         try {
-            scanner = new Scanner(inputFile);
+            scanner = Scanner.buffered(inputFile);
         } catch (FileNotFoundException e) {
             System.out.println("File "+inputFile.toString()+" does not exist.");
-            System.exit(FILE_NOT_FOUND);
-            return;
+            return FILE_NOT_FOUND;
+        } catch (IOException e) {
+            System.out.println("File "+inputFile.toString()+" could not be read.");
+            return FILE_NOT_FOUND;
+        }
+        try {
+            return compile(mode, options, scanner, outputFile);
+        } catch (UncheckedIOException e) {
+            // the tokeniser failed to read the rest of the file
+            System.out.println("File "+inputFile.toString()+" could not be read.");
+            return FILE_NOT_FOUND;
         }
+    }
 
-        Tokeniser tokeniser = new Tokeniser(scanner);
+    /**
+     * Runs the passes selected by {@code mode} on the source read by {@code scanner}.
+     */
+    static int compile(Mode mode, Options options, Scanner scanner, File outputFile) {
+        Tokeniser tokeniser = options.classicLexer ? new Tokeniser(scanner) : new TableTokeniser(scanner);
         if (mode == Mode.LEXER) {
             for (Token t = tokeniser.nextToken(); t.tokenClass != Token.TokenClass.EOF; t = tokeniser.nextToken()) 
             	System.out.println(t);
@@ -77,17 +316,22 @@ public class Main {
         		System.out.println("Lexing: pass");
     	    else
         		System.out.println("Lexing: failed ("+tokeniser.getErrorCount()+" errors)");	
-            System.exit(tokeniser.getErrorCount() == 0 ? PASS : LEXER_FAIL);
+            return tokeniser.getErrorCount() == 0 ? PASS : LEXER_FAIL;
         } else if (mode == Mode.PARSER) {
-            Parser parser = new Parser(tokeniser);
+            Parser parser = createParser(tokeniser, options.tokenArray);
 		    parser.parse();
 		    if (parser.getErrorCount() == 0)
 		    	System.out.println("Parsing: pass");
             else
                 System.out.println("Parsing: failed (" + parser.getErrorCount() + " errors)");
-            System.exit(parser.getErrorCount() == 0 ? PASS : PARSER_FAIL);
+            if (options.parserStats) {
+                for (Parser.Decision decision : Parser.Decision.values())
+                    System.out.println("Lookaheads past the next token on " + decision + ": "
+                            + parser.getDeepLookaheadCount(decision));
+            }
+            return parser.getErrorCount() == 0 ? PASS : PARSER_FAIL;
         } else if (mode == Mode.AST) {
-            Parser parser = new Parser(tokeniser);
+            Parser parser = createParser(tokeniser, options.tokenArray);
             Program programAst = parser.parse();
             if (parser.getErrorCount() == 0) {
                 PrintWriter writer;
@@ -103,9 +347,9 @@ public class Main {
                 }
             } else
                 System.out.println("Parsing: failed (" + parser.getErrorCount() + " errors)");
-            System.exit(parser.getErrorCount() == 0 ? PASS : PARSER_FAIL);
+            return parser.getErrorCount() == 0 ? PASS : PARSER_FAIL;
         } else if (mode == Mode.SEMANTICANALYSIS) {
-            Parser parser = new Parser(tokeniser);
+            Parser parser = createParser(tokeniser, options.tokenArray);
             Program programAst = parser.parse();
             if (parser.getErrorCount() == 0) {
                 SemanticAnalyzer sem = new SemanticAnalyzer();
@@ -114,32 +358,80 @@ public class Main {
                     System.out.println("Semantic analysis: Pass");
                 else
                     System.out.println("Semantic analysis: Failed (" + errors + ")");
-                System.exit(errors == 0 ? PASS : SEM_FAIL);
+                return errors == 0 ? PASS : SEM_FAIL;
             } else
-                System.exit(PARSER_FAIL);
+                return PARSER_FAIL;
         } else if (mode == Mode.GEN || mode == Mode.REGALLOC || mode == Mode.GEN_NO_REGALLOC) {
-            Parser parser = new Parser(tokeniser);
+            Parser parser = createParser(tokeniser, options.tokenArray);
             Program programAst = parser.parse();
             if (parser.getErrorCount() > 0)
-                System.exit(PARSER_FAIL);
+                return PARSER_FAIL;
             SemanticAnalyzer sem = new SemanticAnalyzer();
             int errors = sem.analyze(programAst);
             if (errors > 0)
-                System.exit(SEM_FAIL);
+                return SEM_FAIL;
+
+            if (!options.noFold) {
+                ConstantFolder folder = new ConstantFolder();
+                folder.fold(programAst);
+                if (options.foldStats)
+                    System.out.println("Constant folding: folded " + folder.folded() + " expressions, propagated "
+                            + folder.propagated() + " constants, removed " + folder.removed() + " branches");
+            }
 
-            var codegen = new CodeGenerator(determineRegisterAllocator(mode));
+            AssemblyProgram generated = null;
+            if (options.ir) {
+                Module module = new IRBuilder().build(programAst);
+                List<String> problems = new Verifier().verify(module);
+                if (options.printIr)
+                    new Printer(new PrintWriter(System.out)).print(module);
+                if (!problems.isEmpty()) {
+                    problems.forEach(System.out::println);
+                    System.out.println("IR verification: failed (" + problems.size() + " errors)");
+                    return MODE_FAIL;
+                }
+                generated = new Lowering().lower(module);
+            }
+
+            PeepholeOptimiser peephole = mode == Mode.GEN_NO_REGALLOC || options.noPeephole ? null : new PeepholeOptimiser();
+            var codegen = new CodeGenerator(determineRegisterAllocator(mode, options), options.functionCache,
+                    peephole == null ? AssemblyPass.NOP : peephole);
             try {
-                codegen.emitProgram(programAst, outputFile);
+                if (generated != null)
+                    codegen.emitProgram(generated, outputFile);
+                else
+                    codegen.emitProgram(programAst, outputFile);
             } catch (FileNotFoundException e) {
                 System.out.println("File "+outputFile.toString()+" does not exist.");
-                System.exit(FILE_NOT_FOUND);
+                return FILE_NOT_FOUND;
+            }
+            if (peephole != null && options.peepholeStats) {
+                Map<String, Integer> applications = peephole.applications();
+                peephole.removals().forEach((rule, removed) ->
+                        System.out.println("Peephole " + rule + ": applied " + applications.get(rule) + " times, removed " + removed + " instructions"));
             }
+            return PASS;
         } else {
-        	System.exit(MODE_FAIL);
+        	return MODE_FAIL;
+        }
+    }
+
+    private static Parser createParser(Tokeniser tokeniser, boolean tokenArray) {
+        if (tokenArray)
+            return new Parser(((TableTokeniser) tokeniser).tokenise());
+        return new Parser(tokeniser);
+    }
+
+    private static AssemblyPass allocatorNamed(String name) {
+        switch (name) {
+            case "chaitin": return ChaitinRegAlloc.INSTANCE;
+            case "irc":     return IteratedCoalescingRegAlloc.INSTANCE;
+            case "linear":  return LinearScanRegAlloc.INSTANCE;
+            default:        return null;
         }
     }
 
-    private static AssemblyPass determineRegisterAllocator(Mode mode) {
+    static AssemblyPass determineRegisterAllocator(Mode mode, Options options) {
         switch (mode) {
             case GEN_NO_REGALLOC:
                 // Use no register allocator if the user explicitly requests it.
@@ -148,7 +440,9 @@ public class Main {
                 // Use the naive register allocator when testing only the code generator.
                 return NaiveRegAlloc.INSTANCE;
             case REGALLOC:
-                // Use the default register allocator when testing the register allocator.
+                // Use the default register allocator when testing the register allocator, unless told otherwise.
+                if (options.registerAllocator != null)
+                    return options.registerAllocator;
                 return new CodeGenerator().registerAllocator;
             default:
                 throw new InvalidParameterException();
@@ -12,13 +12,17 @@ public class AddrGen implements ASTVisitor<Register> {
 
 
     private AssemblyProgram asmProg;
+    private CompilationContext context;
     private ExprGen exprGen;
     private FunGen funGen;
+    private StrengthReduction strengthReduction;
 
     public AddrGen(AssemblyProgram asmProg, ExprGen exprGen, FunGen funGen) {
         this.asmProg = asmProg;
+        this.context = asmProg.context;
         this.exprGen = exprGen;
         this.funGen = funGen;
+        this.strengthReduction = new StrengthReduction(context);
     }
 
     @Override
@@ -93,7 +97,7 @@ public class AddrGen implements ASTVisitor<Register> {
 
     @Override
     public Register visitVarExpr(VarExpr v) {
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         if(v.vd.isStaticData()) {
             asmProg.getCurrentSection().emit(OpCode.LA, register, v.vd.label);
         } else if(!v.vd.isParam){
@@ -116,14 +120,16 @@ public class AddrGen implements ASTVisitor<Register> {
     @Override
     public Register visitArrayAccessExpr(ArrayAccessExpr so) {
         int offsetSize = so.type.getSize();
-        Register tempReg = Register.Virtual.create();
-        Register offsetReg = Register.Virtual.create();
-        Register register = Register.Virtual.create();
+        Register offsetReg = context.createVirtualRegister();
+        Register register = context.createVirtualRegister();
         Register addrReg = so.array.accept(this);
         Register indexReg = so.index.accept(exprGen);
-        asmProg.getCurrentSection().emit(OpCode.LI, tempReg, offsetSize);
-        asmProg.getCurrentSection().emit(OpCode.MULT, indexReg, tempReg);
-        asmProg.getCurrentSection().emit(OpCode.MFLO, offsetReg);
+        if (!strengthReduction.multiply(asmProg.getCurrentSection(), offsetReg, indexReg, offsetSize)) {
+            Register tempReg = context.createVirtualRegister();
+            asmProg.getCurrentSection().emit(OpCode.LI, tempReg, offsetSize);
+            asmProg.getCurrentSection().emit(OpCode.MULT, indexReg, tempReg);
+            asmProg.getCurrentSection().emit(OpCode.MFLO, offsetReg);
+        }
         asmProg.getCurrentSection().emit(OpCode.ADD, register, addrReg, offsetReg);
 
         return register;
@@ -132,7 +138,7 @@ public class AddrGen implements ASTVisitor<Register> {
     @Override
     public Register visitFieldAccessExpr(FieldAccessExpr fa) {
 
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         Register addrReg = fa.expr.accept(this);
         VarDecl field = null;
         for(VarDecl varDecl: ((StructType)fa.expr.type).structTypeDecl.varDecls) {
@@ -159,7 +165,7 @@ public class AddrGen implements ASTVisitor<Register> {
 
     @Override
     public Register visitValueAtExpr(ValueAtExpr va) {
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         Register exprReg = va.expr.accept(this);
         if(va.type == BaseType.CHAR)
             asmProg.getCurrentSection().emit(OpCode.LB, register, exprReg, 0);
@@ -185,8 +191,8 @@ public class AddrGen implements ASTVisitor<Register> {
 
     @Override
     public Register visitStrLiteral(StrLiteral str) {
-        str.label =  Label.create();
-        Register register = Register.Virtual.create();
+        str.label =  context.createLabel();
+        Register register = context.createVirtualRegister();
         asmProg.sections.get(0).emit(str.label);
         int padding = 4 - ((str.str.length()+1)%4);
         asmProg.sections.get(0).emit(new Directive("asciiz \"" + decodeString(str.str) +  "\""));
@@ -24,7 +24,7 @@ public final class CodeGenerator {
      * instance of your register allocator pass.
      */
     public CodeGenerator() {
-        this.registerAllocator = ChaitinRegAlloc.INSTANCE;
+        this(ChaitinRegAlloc.INSTANCE);
     }
 
     /**
@@ -33,7 +33,32 @@ public final class CodeGenerator {
      * @param registerAllocator The register allocator to use.
      */
     public CodeGenerator(AssemblyPass registerAllocator) {
+        this(registerAllocator, null);
+    }
+
+    /**
+     * Creates a code generator that uses a custom register allocator and reuses the functions already allocated in a
+     * cache.
+     *
+     * @param registerAllocator The register allocator to use.
+     * @param functionCache The cache of allocated functions, or {@code null} to allocate every function.
+     */
+    public CodeGenerator(AssemblyPass registerAllocator, FunctionCache functionCache) {
+        this(registerAllocator, functionCache, AssemblyPass.NOP);
+    }
+
+    /**
+     * Creates a code generator that uses a custom register allocator, reuses the functions already allocated in a
+     * cache, and runs a pass over the allocated program before writing it out.
+     *
+     * @param registerAllocator The register allocator to use.
+     * @param functionCache The cache of allocated functions, or {@code null} to allocate every function.
+     * @param optimiser The pass to run after register allocation, such as a {@link PeepholeOptimiser}.
+     */
+    public CodeGenerator(AssemblyPass registerAllocator, FunctionCache functionCache, AssemblyPass optimiser) {
         this.registerAllocator = registerAllocator;
+        this.functionCache = functionCache;
+        this.optimiser = optimiser;
     }
 
     /**
@@ -41,6 +66,10 @@ public final class CodeGenerator {
      */
     public final AssemblyPass registerAllocator;
 
+    private final FunctionCache functionCache;
+
+    private final AssemblyPass optimiser;
+
     /**
      * Takes a Mini C program as an AST, turns it into a MIPS program, and writes a textual representation of that
      * program to a file.
@@ -55,16 +84,26 @@ public final class CodeGenerator {
         AssemblyProgram asmProgWithVirtualRegs = new AssemblyProgram();
         ProgramGen progGen = new ProgramGen(asmProgWithVirtualRegs);
         progGen.visitProgram(astProgram);
+        emitProgram(asmProgWithVirtualRegs, outputFile);
+    }
 
-        // print the assembly program
-        PrintWriter writer = new PrintWriter("simple.asm");
-        asmProgWithVirtualRegs.print(writer);
-
+    /**
+     * Allocates the registers of a MIPS program generated elsewhere, such as from the IR, and writes a textual
+     * representation of the allocated program to a file.
+     * @param asmProgWithVirtualRegs The program to allocate, whose registers may be virtual.
+     * @param outputFile The output file to write MIPS assembly code to.
+     * @throws FileNotFoundException If {@code outputFile} cannot be opened or created, as for
+     * {@link #emitProgram(Program, File)}.
+     */
+    public void emitProgram(AssemblyProgram asmProgWithVirtualRegs, File outputFile) throws FileNotFoundException {
         // run the register naive allocator which remove the virtual registers
-        AssemblyProgram asmProgNoVirtualRegs = registerAllocator.apply(asmProgWithVirtualRegs);
+        AssemblyProgram asmProgNoVirtualRegs = functionCache == null
+                ? registerAllocator.apply(asmProgWithVirtualRegs)
+                : functionCache.allocate(asmProgWithVirtualRegs, registerAllocator);
+        asmProgNoVirtualRegs = optimiser.apply(asmProgNoVirtualRegs);
 
         // print the assembly program
-        writer = new PrintWriter(outputFile);
+        PrintWriter writer = new PrintWriter(outputFile);
         asmProgNoVirtualRegs.print(writer);
         writer.close();
     }
@@ -0,0 +1,331 @@
+package gen;
+
+import gen.asm.*;
+
+import java.util.*;
+
+/**
+ * The control-flow graph of a TEXT section: its instructions grouped into basic blocks, with successor and
+ * predecessor arrays, a reverse postorder, the dominator tree and the loop nesting depth of every block. Blocks are
+ * numbered in the order they appear in the section and instructions by their position among the section's
+ * instructions, comments, labels and directives left out.
+ *
+ * A branch goes to its label or to the next instruction, a jump to its label only, and anything else to the next
+ * instruction. Calls return to the next instruction, the callee being a section of its own, and so does jr: the
+ * code generator only emits it to return, at the end of a function. Branches to labels outside the section go
+ * nowhere.
+ */
+public final class ControlFlowGraph {
+
+    private final List<Instruction> instructions = new ArrayList<>();
+    // position of the instruction each label comes before
+    private final Map<Label, Integer> targets = new HashMap<>();
+    private final int[] blockOf;
+    private final int[] blockStart;
+    private final int[] blockEnd;
+    private final int[][] successors;
+    private final int[][] predecessors;
+    private final int[] reversePostorder;
+    // position of each block in the reverse postorder, -1 if unreachable from the entry
+    private final int[] order;
+    private final int[] idom;
+    private final int[] loopDepth;
+
+    public ControlFlowGraph(AssemblyProgram.Section section) {
+        this(section.items);
+    }
+
+    public ControlFlowGraph(List<AssemblyItem> items) {
+        List<Label> pending = new ArrayList<>();
+        for (AssemblyItem item : items) {
+            if (item instanceof Label) {
+                pending.add((Label) item);
+            } else if (item instanceof Instruction) {
+                for (Label label : pending)
+                    targets.put(label, instructions.size());
+                pending.clear();
+                instructions.add((Instruction) item);
+            }
+        }
+
+        int n = instructions.size();
+        int[] target = new int[n];
+        boolean[] leader = new boolean[n + 1];
+        leader[0] = true;
+        leader[n] = true;
+        for (int i = 0; i < n; i++) {
+            Label label = branchTarget(instructions.get(i));
+            Integer t = label == null ? null : targets.get(label);
+            target[i] = t == null ? -1 : t;
+            if (label != null) {
+                leader[i + 1] = true;
+                if (t != null)
+                    leader[t] = true;
+            }
+        }
+        // labels after the last instruction are not branch targets of any block, but still have a position
+        for (Label label : pending)
+            targets.put(label, n);
+
+        blockOf = new int[n];
+        int blocks = 0;
+        for (int i = 0; i < n; i++) {
+            if (leader[i])
+                blocks++;
+            blockOf[i] = blocks - 1;
+        }
+        blockStart = new int[blocks];
+        blockEnd = new int[blocks];
+        for (int i = 0; i < n; i++) {
+            if (leader[i])
+                blockStart[blockOf[i]] = i;
+            if (leader[i + 1])
+                blockEnd[blockOf[i]] = i + 1;
+        }
+
+        successors = new int[blocks][];
+        int[] predecessorCount = new int[blocks];
+        for (int b = 0; b < blocks; b++) {
+            int last = blockEnd[b] - 1;
+            Instruction insn = instructions.get(last);
+            boolean call = insn.opcode == OpCode.JAL;
+            boolean fallsThrough = call || !(insn instanceof Instruction.Jump);
+            int[] next = new int[2];
+            int count = 0;
+            if (target[last] != -1 && !call)
+                next[count++] = blockOf[target[last]];
+            if (fallsThrough && last + 1 < n && (count == 0 || next[0] != b + 1))
+                next[count++] = b + 1;
+            successors[b] = Arrays.copyOf(next, count);
+            for (int s : successors[b])
+                predecessorCount[s]++;
+        }
+        predecessors = new int[blocks][];
+        for (int b = 0; b < blocks; b++)
+            predecessors[b] = new int[predecessorCount[b]];
+        Arrays.fill(predecessorCount, 0);
+        for (int b = 0; b < blocks; b++) {
+            for (int s : successors[b])
+                predecessors[s][predecessorCount[s]++] = b;
+        }
+
+        order = new int[blocks];
+        reversePostorder = computeReversePostorder();
+        idom = dominators();
+        loopDepth = loopDepths();
+    }
+
+    private static Label branchTarget(Instruction insn) {
+        if (insn instanceof Instruction.BinaryBranch)
+            return ((Instruction.BinaryBranch) insn).label;
+        if (insn instanceof Instruction.UnaryBranch)
+            return ((Instruction.UnaryBranch) insn).label;
+        if (insn instanceof Instruction.Jump)
+            return ((Instruction.Jump) insn).label;
+        return null;
+    }
+
+    private int[] computeReversePostorder() {
+        int blocks = blockStart.length;
+        Arrays.fill(order, -1);
+        if (blocks == 0)
+            return new int[0];
+
+        int[] postorder = new int[blocks];
+        int count = 0;
+        boolean[] visited = new boolean[blocks];
+        int[] stack = new int[blocks];
+        int[] edge = new int[blocks];
+        int depth = 0;
+        stack[depth++] = 0;
+        visited[0] = true;
+        while (depth > 0) {
+            int b = stack[depth - 1];
+            if (edge[b] < successors[b].length) {
+                int s = successors[b][edge[b]++];
+                if (!visited[s]) {
+                    visited[s] = true;
+                    stack[depth++] = s;
+                }
+            } else {
+                postorder[count++] = b;
+                depth--;
+            }
+        }
+
+        int[] rpo = new int[count];
+        for (int i = 0; i < count; i++) {
+            rpo[i] = postorder[count - 1 - i];
+            order[rpo[i]] = i;
+        }
+        return rpo;
+    }
+
+    /*
+     * Cooper, Harvey and Kennedy's iterative algorithm over the reverse postorder.
+     */
+    private int[] dominators() {
+        int[] idom = new int[blockStart.length];
+        Arrays.fill(idom, -1);
+        if (reversePostorder.length == 0)
+            return idom;
+
+        int entry = reversePostorder[0];
+        idom[entry] = entry;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < reversePostorder.length; i++) {
+                int b = reversePostorder[i];
+                int dom = -1;
+                for (int p : predecessors[b]) {
+                    if (idom[p] == -1)
+                        continue;
+                    dom = dom == -1 ? p : intersect(idom, p, dom);
+                }
+                if (idom[b] != dom) {
+                    idom[b] = dom;
+                    changed = true;
+                }
+            }
+        }
+        idom[entry] = -1;
+        return idom;
+    }
+
+    private int intersect(int[] idom, int b1, int b2) {
+        while (b1 != b2) {
+            while (order[b1] > order[b2])
+                b1 = idom[b1];
+            while (order[b2] > order[b1])
+                b2 = idom[b2];
+        }
+        return b1;
+    }
+
+    /*
+     * Every back edge, an edge to a block that dominates its source, closes a natural loop: its header and the blocks
+     * that reach the source without going through the header. The depth of a block is the number of loops it is in,
+     * loops sharing a header counting once.
+     */
+    private int[] loopDepths() {
+        int blocks = blockStart.length;
+        int[] depth = new int[blocks];
+        boolean[] inLoop = new boolean[blocks];
+        int[] worklist = new int[blocks];
+        for (int header : reversePostorder) {
+            int count = 0;
+            for (int p : predecessors[header]) {
+                if (dominates(header, p) && !inLoop[p]) {
+                    inLoop[p] = true;
+                    worklist[count++] = p;
+                }
+            }
+            if (count == 0)
+                continue;
+
+            List<Integer> body = new ArrayList<>();
+            inLoop[header] = true;
+            body.add(header);
+            while (count > 0) {
+                int b = worklist[--count];
+                if (b != header)
+                    body.add(b);
+                if (b == header)
+                    continue;
+                for (int p : predecessors[b]) {
+                    if (!inLoop[p] && order[p] != -1) {
+                        inLoop[p] = true;
+                        worklist[count++] = p;
+                    }
+                }
+            }
+            for (int b : body) {
+                depth[b]++;
+                inLoop[b] = false;
+            }
+        }
+        return depth;
+    }
+
+    public List<Instruction> instructions() {
+        return instructions;
+    }
+
+    /**
+     * @return the position of the first instruction after the label, the number of instructions if none follows it,
+     * or -1 if the label is not in the items
+     */
+    public int position(Label label) {
+        return targets.getOrDefault(label, -1);
+    }
+
+    public int blockCount() {
+        return blockStart.length;
+    }
+
+    /**
+     * @return the block the instruction at the given position belongs to
+     */
+    public int blockOf(int instruction) {
+        return blockOf[instruction];
+    }
+
+    /**
+     * @return the position of the first instruction of the block
+     */
+    public int start(int block) {
+        return blockStart[block];
+    }
+
+    /**
+     * @return the position after the last instruction of the block
+     */
+    public int end(int block) {
+        return blockEnd[block];
+    }
+
+    public int[] successors(int block) {
+        return successors[block];
+    }
+
+    public int[] predecessors(int block) {
+        return predecessors[block];
+    }
+
+    /**
+     * @return the blocks reachable from the entry, each before its successors except along back edges
+     */
+    public int[] reversePostorder() {
+        return reversePostorder;
+    }
+
+    public boolean isReachable(int block) {
+        return order[block] != -1;
+    }
+
+    /**
+     * @return the immediate dominator of the block, or -1 for the entry and for unreachable blocks
+     */
+    public int immediateDominator(int block) {
+        return idom[block];
+    }
+
+    public boolean dominates(int dominator, int block) {
+        if (order[block] == -1)
+            return false;
+        while (block != -1 && order[block] >= order[dominator]) {
+            if (block == dominator)
+                return true;
+            block = idom[block];
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of loops the block is in, 0 outside of any loop
+     */
+    public int loopDepth(int block) {
+        return loopDepth[block];
+    }
+}
@@ -11,13 +11,17 @@ import gen.asm.Label;
 public class ExprGen implements ASTVisitor<Register> {
 
     private AssemblyProgram asmProg;
+    private CompilationContext context;
     private FunGen funGen;
     private AddrGen addrGen;
+    private StrengthReduction strengthReduction;
 
     public ExprGen(AssemblyProgram asmProg, FunGen funGen) {
         this.asmProg = asmProg;
+        this.context = asmProg.context;
         this.funGen = funGen;
         this.addrGen = new AddrGen(asmProg, this, funGen);
+        this.strengthReduction = new StrengthReduction(context);
     }
 
     @Override
@@ -70,28 +74,27 @@ public class ExprGen implements ASTVisitor<Register> {
 
     @Override
     public Register visitWhile(While w) {
-        Label bodyLabel = Label.create("BODY_WHILE");
-        Label endLabel = Label.create("END_WHILE");
+        // the condition is tested at the bottom, so that each iteration takes a single branch
+        Label bodyLabel = context.createLabel("BODY_WHILE");
+        Label condLabel = context.createLabel("COND_WHILE");
+        asmProg.getCurrentSection().emit(OpCode.J, condLabel);
         asmProg.getCurrentSection().emit(bodyLabel);
-        Register condReg = w.expr.accept(this);
-        asmProg.getCurrentSection().emit(OpCode.BEQ, Register.Arch.zero, condReg, endLabel);
         w.stmt.accept(this);
-        asmProg.getCurrentSection().emit(OpCode.J, bodyLabel);
-        asmProg.getCurrentSection().emit(endLabel);
+        asmProg.getCurrentSection().emit(condLabel);
+        branch(w.expr, true, bodyLabel);
         return null;
     }
 
     @Override
     public Register visitIf(If i) {
-        Register ifReg = i.expr.accept(this);
-        Label elseLabel = Label.create("ELSE_IF");
-        Label endLabel = Label.create("END_IF");
+        Label elseLabel = context.createLabel("ELSE_IF");
+        Label endLabel = context.createLabel("END_IF");
         if(i.elseStmt == null) {
-            asmProg.getCurrentSection().emit(OpCode.BEQ, Register.Arch.zero, ifReg, endLabel);
+            branch(i.expr, false, endLabel);
             i.ifStmt.accept(this);
             asmProg.getCurrentSection().emit(endLabel);
         } else {
-            asmProg.getCurrentSection().emit(OpCode.BEQ, Register.Arch.zero, ifReg, elseLabel);
+            branch(i.expr, false, elseLabel);
             i.ifStmt.accept(this);
             asmProg.getCurrentSection().emit(OpCode.J, endLabel);
             asmProg.getCurrentSection().emit(elseLabel);
@@ -165,7 +168,7 @@ public class ExprGen implements ASTVisitor<Register> {
     @Override
     public Register visitVarExpr(VarExpr v) {
         Register addrReg = v.accept(addrGen);
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         if(v.type == BaseType.CHAR)
             asmProg.getCurrentSection().emit(OpCode.LB, register, addrReg, 0);
         else
@@ -175,7 +178,7 @@ public class ExprGen implements ASTVisitor<Register> {
 
     @Override
     public Register visitSizeOfExpr(SizeOfExpr so) {
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         asmProg.getCurrentSection().emit(OpCode.LI, register, so.insideType.getSize());
         return register;
     }
@@ -183,7 +186,7 @@ public class ExprGen implements ASTVisitor<Register> {
     @Override
     public Register visitArrayAccessExpr(ArrayAccessExpr so) {
 
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         Register addrReg = so.accept(addrGen);
 
         if(so.type == BaseType.CHAR)
@@ -196,7 +199,7 @@ public class ExprGen implements ASTVisitor<Register> {
     @Override
     public Register visitFieldAccessExpr(FieldAccessExpr fa) {
         Register addrReg = fa.accept(addrGen);
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
 
         if(fa.expr.type == BaseType.CHAR)
             asmProg.getCurrentSection().emit(OpCode.LB, register, addrReg, 0);
@@ -207,7 +210,7 @@ public class ExprGen implements ASTVisitor<Register> {
 
     @Override
     public Register visitFunCallExpr(FunCallExpr fc) {
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         if(fc.fnName.matches("print_i")) {
             Register valueReg = fc.params.get(0).accept(this);
             asmProg.getCurrentSection().emit(new Comment("Print_i function call"));
@@ -261,7 +264,7 @@ public class ExprGen implements ASTVisitor<Register> {
 
     @Override
     public Register visitValueAtExpr(ValueAtExpr va) {
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         Register exprReg = va.expr.accept(this);
         if(va.type == BaseType.CHAR)
             asmProg.getCurrentSection().emit(OpCode.LB, register, exprReg, 0);
@@ -277,14 +280,14 @@ public class ExprGen implements ASTVisitor<Register> {
 
     @Override
     public Register visitIntLiteral(IntLiteral i) {
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         asmProg.getCurrentSection().emit(OpCode.LI, register, i.value);
         return register;
     }
 
     @Override
     public Register visitChrLiteral(ChrLiteral c) {
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         asmProg.getCurrentSection().emit(OpCode.LI, register, c.value);
         return register;
     }
@@ -298,7 +301,7 @@ public class ExprGen implements ASTVisitor<Register> {
     public Register visitAdd(Add a) {
         Register lReg = a.left.accept(this);
         Register rReg = a.right.accept(this);
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         asmProg.getCurrentSection().emit(OpCode.ADD, register, lReg, rReg);
         return register;
     }
@@ -307,16 +310,28 @@ public class ExprGen implements ASTVisitor<Register> {
     public Register visitSub(Sub s) {
         Register lReg = s.left.accept(this);
         Register rReg = s.right.accept(this);
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         asmProg.getCurrentSection().emit(OpCode.SUB, register, lReg, rReg);
         return register;
     }
 
     @Override
     public Register visitMul(Mul m) {
+        Register register = context.createVirtualRegister();
+        // a literal operand is multiplied by shifts and adds when it can be
+        if (m.left instanceof IntLiteral && !(m.right instanceof IntLiteral)) {
+            Register rReg = m.right.accept(this);
+            if (strengthReduction.multiply(asmProg.getCurrentSection(), register, rReg, ((IntLiteral) m.left).value))
+                return register;
+            asmProg.getCurrentSection().emit(OpCode.MULT, m.left.accept(this), rReg);
+            asmProg.getCurrentSection().emit(OpCode.MFLO, register);
+            return register;
+        }
         Register lReg = m.left.accept(this);
+        if (m.right instanceof IntLiteral
+                && strengthReduction.multiply(asmProg.getCurrentSection(), register, lReg, ((IntLiteral) m.right).value))
+            return register;
         Register rReg = m.right.accept(this);
-        Register register = Register.Virtual.create();
         asmProg.getCurrentSection().emit(OpCode.MULT, lReg, rReg);
         asmProg.getCurrentSection().emit(OpCode.MFLO, register);
         return register;
@@ -325,8 +340,11 @@ public class ExprGen implements ASTVisitor<Register> {
     @Override
     public Register visitDiv(Div d) {
         Register lReg = d.left.accept(this);
+        Register register = context.createVirtualRegister();
+        if (d.right instanceof IntLiteral
+                && strengthReduction.divide(asmProg.getCurrentSection(), register, lReg, ((IntLiteral) d.right).value))
+            return register;
         Register rReg = d.right.accept(this);
-        Register register = Register.Virtual.create();
         asmProg.getCurrentSection().emit(OpCode.DIV, lReg, rReg);
         asmProg.getCurrentSection().emit(OpCode.MFLO, register);
         return register;
@@ -335,8 +353,11 @@ public class ExprGen implements ASTVisitor<Register> {
     @Override
     public Register visitMod(Mod m) {
         Register lReg = m.left.accept(this);
+        Register register = context.createVirtualRegister();
+        if (m.right instanceof IntLiteral
+                && strengthReduction.remainder(asmProg.getCurrentSection(), register, lReg, ((IntLiteral) m.right).value))
+            return register;
         Register rReg = m.right.accept(this);
-        Register register = Register.Virtual.create();
         asmProg.getCurrentSection().emit(OpCode.DIV, lReg, rReg);
         asmProg.getCurrentSection().emit(OpCode.MFHI, register);
         return register;
@@ -346,7 +367,7 @@ public class ExprGen implements ASTVisitor<Register> {
     public Register visitGt(Gt g) {
         Register lReg = g.left.accept(this);
         Register rReg = g.right.accept(this);
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         asmProg.getCurrentSection().emit(OpCode.SLT, register, rReg, lReg);
         return register;
     }
@@ -355,7 +376,7 @@ public class ExprGen implements ASTVisitor<Register> {
     public Register visitLt(Lt l) {
         Register lReg = l.left.accept(this);
         Register rReg = l.right.accept(this);
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         asmProg.getCurrentSection().emit(OpCode.SLT, register, lReg, rReg);
         return register;
     }
@@ -364,7 +385,7 @@ public class ExprGen implements ASTVisitor<Register> {
     public Register visitGe(Ge g) {
         Register lReg = g.left.accept(this);
         Register rReg = g.right.accept(this);
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         asmProg.getCurrentSection().emit(OpCode.SLT, register, lReg, rReg);
         asmProg.getCurrentSection().emit(OpCode.XORI, register, register, 1);
         return register;
@@ -374,7 +395,7 @@ public class ExprGen implements ASTVisitor<Register> {
     public Register visitLe(Le l) {
         Register lReg = l.left.accept(this);
         Register rReg = l.right.accept(this);
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         asmProg.getCurrentSection().emit(OpCode.SLT, register, rReg, lReg);
         asmProg.getCurrentSection().emit(OpCode.XORI, register, register, 1);
         return register;
@@ -384,7 +405,7 @@ public class ExprGen implements ASTVisitor<Register> {
     public Register visitNe(Ne n) {
         Register lReg = n.left.accept(this);
         Register rReg = n.right.accept(this);
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         asmProg.getCurrentSection().emit(OpCode.XOR, register, lReg, rReg);
         asmProg.getCurrentSection().emit(OpCode.SLTU, register, Register.Arch.zero, register);
         return register;
@@ -394,7 +415,7 @@ public class ExprGen implements ASTVisitor<Register> {
     public Register visitEq(Eq e) {
         Register lReg = e.left.accept(this);
         Register rReg = e.right.accept(this);
-        Register register = Register.Virtual.create();
+        Register register = context.createVirtualRegister();
         asmProg.getCurrentSection().emit(OpCode.XOR, register, lReg, rReg);
         asmProg.getCurrentSection().emit(OpCode.SLTIU, register, register, 1);
         return register;
@@ -402,14 +423,11 @@ public class ExprGen implements ASTVisitor<Register> {
 
     @Override
     public Register visitOr(Or o) {
-        Label trueLabel = Label.create("OR_TRUE");
-        Label endLabel = Label.create("OR_END");
-        Register lReg = o.left.accept(this);
-        Register register = Register.Virtual.create();
-
-        asmProg.getCurrentSection().emit(OpCode.BNE, lReg, Register.Arch.zero, trueLabel);
-        Register rReg = o.right.accept(this);
-        asmProg.getCurrentSection().emit(OpCode.BNE, rReg, Register.Arch.zero, trueLabel);
+        Label trueLabel = context.createLabel("OR_TRUE");
+        Label endLabel = context.createLabel("OR_END");
+        Register register = context.createVirtualRegister();
+
+        branch(o, true, trueLabel);
         asmProg.getCurrentSection().emit(OpCode.LI, register, 0);
         asmProg.getCurrentSection().emit(OpCode.J, endLabel);
 
@@ -422,14 +440,11 @@ public class ExprGen implements ASTVisitor<Register> {
 
     @Override
     public Register visitAnd(And a) {
-        Label falseLabel = Label.create("AND_FALSE");
-        Label endLabel = Label.create("AND_END");
-        Register lReg = a.left.accept(this);
-        Register register = Register.Virtual.create();
+        Label falseLabel = context.createLabel("AND_FALSE");
+        Label endLabel = context.createLabel("AND_END");
+        Register register = context.createVirtualRegister();
 
-        asmProg.getCurrentSection().emit(OpCode.BEQ, lReg, Register.Arch.zero, falseLabel);
-        Register rReg = a.right.accept(this);
-        asmProg.getCurrentSection().emit(OpCode.BEQ, rReg, Register.Arch.zero, falseLabel);
+        branch(a, false, falseLabel);
         asmProg.getCurrentSection().emit(OpCode.LI, register, 1);
         asmProg.getCurrentSection().emit(OpCode.J, endLabel);
 
@@ -440,4 +455,61 @@ public class ExprGen implements ASTVisitor<Register> {
         return register;
     }
 
+    private static boolean isZero(Expr expr) {
+        return (expr instanceof IntLiteral && ((IntLiteral) expr).value == 0)
+                || (expr instanceof ChrLiteral && ((ChrLiteral) expr).value == 0);
+    }
+
+    /**
+     * Generates code that jumps to {@code target} when the condition evaluates to {@code when}, and falls through
+     * otherwise. Comparisons branch on their operands directly instead of computing a 0 or 1 first, and the right
+     * operand of {@code &&} and {@code ||} is skipped as soon as the left one decides.
+     */
+    private void branch(Expr cond, boolean when, Label target) {
+        if (cond instanceof And || cond instanceof Or) {
+            BinOp op = (BinOp) cond;
+            boolean and = cond instanceof And;
+            if (when != and) {
+                // a && b is false as soon as a is, a || b true as soon as a is
+                branch(op.left, when, target);
+                branch(op.right, when, target);
+            } else {
+                Label skipLabel = context.createLabel(and ? "AND_FALSE" : "OR_TRUE");
+                branch(op.left, !when, skipLabel);
+                branch(op.right, when, target);
+                asmProg.getCurrentSection().emit(skipLabel);
+            }
+        } else if (cond instanceof IntLiteral) {
+            if ((((IntLiteral) cond).value != 0) == when)
+                asmProg.getCurrentSection().emit(OpCode.J, target);
+        } else if (cond instanceof Eq || cond instanceof Ne) {
+            BinOp op = (BinOp) cond;
+            Register lReg = op.left.accept(this);
+            Register rReg = isZero(op.right) ? Register.Arch.zero : op.right.accept(this);
+            boolean equal = (cond instanceof Eq) == when;
+            asmProg.getCurrentSection().emit(equal ? OpCode.BEQ : OpCode.BNE, lReg, rReg, target);
+        } else if (cond instanceof Lt || cond instanceof Gt || cond instanceof Le || cond instanceof Ge) {
+            // a >= b is !(a < b) and a <= b is !(a > b)
+            BinOp op = (BinOp) cond;
+            boolean less = cond instanceof Lt || cond instanceof Ge;
+            boolean taken = when != (cond instanceof Ge || cond instanceof Le);
+            Register lReg = op.left.accept(this);
+            if (isZero(op.right)) {
+                OpCode.UnaryBranch opcode = less ? (taken ? OpCode.BLTZ : OpCode.BGEZ) : (taken ? OpCode.BGTZ : OpCode.BLEZ);
+                asmProg.getCurrentSection().emit(opcode, lReg, target);
+            } else {
+                Register rReg = op.right.accept(this);
+                Register register = context.createVirtualRegister();
+                if (less)
+                    asmProg.getCurrentSection().emit(OpCode.SLT, register, lReg, rReg);
+                else
+                    asmProg.getCurrentSection().emit(OpCode.SLT, register, rReg, lReg);
+                asmProg.getCurrentSection().emit(taken ? OpCode.BNE : OpCode.BEQ, register, Register.Arch.zero, target);
+            }
+        } else {
+            Register condReg = cond.accept(this);
+            asmProg.getCurrentSection().emit(when ? OpCode.BNE : OpCode.BEQ, condReg, Register.Arch.zero, target);
+        }
+    }
+
 }
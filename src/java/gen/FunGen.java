@@ -9,6 +9,7 @@ import gen.asm.*;
 public class FunGen implements ASTVisitor<Void> {
 
     private AssemblyProgram asmProg;
+    private CompilationContext context;
     private ProgramGen programGen;
     private ExprGen exprGen;
     public FunDecl currentFun;
@@ -17,6 +18,7 @@ public class FunGen implements ASTVisitor<Void> {
 
     public FunGen(AssemblyProgram asmProg, ProgramGen programGen) {
         this.asmProg = asmProg;
+        this.context = asmProg.context;
         this.programGen = programGen;
         this.exprGen = new ExprGen(asmProg, this);
         this.funCallSPOffset = 0;
@@ -121,7 +123,7 @@ public class FunGen implements ASTVisitor<Void> {
         if(p.name.equalsIgnoreCase("main"))
             p.label = this.programGen.main;
         else
-            p.label = Label.create(p.name);
+            p.label = context.createLabel(p.name);
         asmProg.getCurrentSection().emit(p.label);
 
         //Initialise frame pointer
@@ -215,7 +217,7 @@ public class FunGen implements ASTVisitor<Void> {
         //Restore return address
         asmProg.getCurrentSection().emit(OpCode.LW, Register.Arch.ra, Register.Arch.sp, 0);
         //Get return value
-        fc.returnRegister = Register.Virtual.create();
+        fc.returnRegister = context.createVirtualRegister();
         if(fc.type == BaseType.CHAR)
             asmProg.getCurrentSection().emit(OpCode.LB, fc.returnRegister, Register.Arch.sp, returnSize); //TODO fix for structs
         else
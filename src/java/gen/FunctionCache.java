@@ -0,0 +1,268 @@
+package gen;
+
+import gen.asm.*;
+import regalloc.AssemblyPass;
+
+import java.util.*;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * A cache of register-allocated functions, so that recompiling a program only allocates the functions that changed.
+ *
+ * Since every function is generated into a TEXT section of its own (see {@link FunGen#visitFunDecl}) and allocated
+ * independently of the others, the allocated code of a function only depends on the code generated for it. That code
+ * already reflects everything the function depends on (the layout of its frame, the offsets of struct fields, the
+ * sizes of globals and of the values returned by its callees), so it is the key of the cache once labels and virtual
+ * registers have been renamed in order of appearance. Renaming makes the key independent of the names the rest of
+ * the program took; cached code is mapped back onto the names of the program being compiled when it is reused.
+ *
+ * The cache is thread-safe and keeps the most recently used functions up to a fixed number.
+ */
+public final class FunctionCache {
+
+    /*
+     * An allocated section ready to be reused. Items are shared between the programs that reuse them, which is safe
+     * since they are immutable once allocated, except for labels: those are template labels named after their position
+     * in the key, rebound to the labels of the program at hand on each reuse.
+     */
+    private static final class Template {
+        final AssemblyProgram.Section.Type type;
+        final AssemblyItem[] items;
+
+        Template(AssemblyProgram.Section.Type type, AssemblyItem[] items) {
+            this.type = type;
+            this.items = items;
+        }
+    }
+
+    // the namespace of the template labels, L_0, L_1, ...
+    private static final CompilationContext TEMPLATES = new CompilationContext();
+
+    private final int capacity;
+    private final LinkedHashMap<String, Template[]> entries;
+    private int hits;
+    private int misses;
+
+    /**
+     * Creates a cache holding at most {@code capacity} functions.
+     */
+    public FunctionCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public synchronized int hits() {
+        return hits;
+    }
+
+    public synchronized int misses() {
+        return misses;
+    }
+
+    /**
+     * Applies {@code allocator} to each TEXT section of {@code program}, reusing the sections allocated before for the
+     * same code. Sections are looked up and allocated in parallel, as the allocators do, and put together in their
+     * order.
+     */
+    public AssemblyProgram allocate(AssemblyProgram program, AssemblyPass allocator) {
+        if (allocator == AssemblyPass.NOP)
+            return program;
+
+        AssemblyProgram result = new AssemblyProgram(program.context);
+        program.sections.parallelStream()
+                .map(section -> section.type == AssemblyProgram.Section.Type.DATA ? List.of(section)
+                        : allocate(section, allocator, program.context))
+                .collect(Collectors.toList())
+                .forEach(sections -> sections.forEach(result::emitSection));
+        return result;
+    }
+
+    private List<AssemblyProgram.Section> allocate(AssemblyProgram.Section section, AssemblyPass allocator,
+                                                   CompilationContext context) {
+        // labels of the section in order of appearance, each one is known by its position from then on
+        Map<Label, Integer> labels = new HashMap<>();
+        String key = key(section, allocator, labels);
+
+        Template[] cached;
+        synchronized (this) {
+            cached = entries.get(key);
+            if (cached != null)
+                hits++;
+            else
+                misses++;
+        }
+        if (cached != null)
+            return instantiate(cached, labels);
+
+        AssemblyProgram single = new AssemblyProgram(context);
+        single.emitSection(section);
+        List<AssemblyProgram.Section> allocated = allocator.apply(single).sections;
+
+        Template[] templates = new Template[allocated.size()];
+        for (int i = 0; i < templates.length; i++)
+            templates[i] = template(allocated.get(i), labels);
+        synchronized (this) {
+            entries.put(key, templates);
+            if (entries.size() > capacity)
+                entries.remove(entries.keySet().iterator().next());
+        }
+        return allocated;
+    }
+
+    /*
+     * The code of the section without comments, labels and virtual registers being renamed in order of appearance.
+     */
+    private static String key(AssemblyProgram.Section section, AssemblyPass allocator, Map<Label, Integer> labels) {
+        Map<Register, Integer> virtuals = new HashMap<>();
+        StringBuilder key = new StringBuilder(allocator.getClass().getName()).append('\n');
+        for (AssemblyItem item : section.items) {
+            if (item instanceof Label) {
+                key.append('L').append(position((Label) item, labels)).append(":\n");
+            } else if (item instanceof Instruction) {
+                Instruction insn = (Instruction) item;
+                Label label = labelOf(insn);
+                if (label != null)
+                    position(label, labels);
+                appendRenamed(key, insn, label, virtuals, labels);
+            } else if (item instanceof Directive) {
+                key.append(item).append('\n');
+            }
+        }
+        return key.toString();
+    }
+
+    private static int position(Label label, Map<Label, Integer> labels) {
+        Integer position = labels.get(label);
+        if (position == null) {
+            position = labels.size();
+            labels.put(label, position);
+        }
+        return position;
+    }
+
+    /*
+     * Appends the textual form of the instruction, with its operands renamed. Operands are separated by commas and
+     * parentheses; registers start with a $, immediates with a digit or a sign, anything else is a name.
+     */
+    private static void appendRenamed(StringBuilder key, Instruction insn, Label label, Map<Register, Integer> virtuals,
+                                      Map<Label, Integer> labels) {
+        String text = insn.toString();
+        int space = text.indexOf(' ');
+        if (space == -1) {
+            key.append(text).append('\n');
+            return;
+        }
+        key.append(text, 0, space + 1);
+        int start = space + 1;
+        for (int i = start; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ',';
+            if (c != ',' && c != '(' && c != ')')
+                continue;
+            if (i > start) {
+                char first = text.charAt(start);
+                if (first == '$' || first == '-' || Character.isDigit(first)) {
+                    key.append(text, start, i);
+                } else if (label != null && text.regionMatches(start, label.name, 0, i - start)
+                        && label.name.length() == i - start) {
+                    key.append('L').append(labels.get(label));
+                } else {
+                    Register register = virtualNamed(insn, text.substring(start, i));
+                    Integer id = virtuals.get(register);
+                    if (id == null) {
+                        id = virtuals.size();
+                        virtuals.put(register, id);
+                    }
+                    key.append('v').append(id);
+                }
+            }
+            if (i < text.length())
+                key.append(c);
+            start = i + 1;
+        }
+        key.append('\n');
+    }
+
+    private static Register virtualNamed(Instruction insn, String name) {
+        for (Register register : insn.registers()) {
+            if (register.isVirtual() && register.toString().equals(name))
+                return register;
+        }
+        throw new IllegalStateException("no register " + name + " in " + insn);
+    }
+
+    private static Label labelOf(Instruction insn) {
+        if (insn instanceof Instruction.BinaryBranch)
+            return ((Instruction.BinaryBranch) insn).label;
+        if (insn instanceof Instruction.UnaryBranch)
+            return ((Instruction.UnaryBranch) insn).label;
+        if (insn instanceof Instruction.Jump)
+            return ((Instruction.Jump) insn).label;
+        if (insn instanceof Instruction.LoadAddress)
+            return ((Instruction.LoadAddress) insn).label;
+        return null;
+    }
+
+    /*
+     * Replaces the labels of an allocated section by template labels. The allocators create no labels, so each one is
+     * a label of the key.
+     */
+    private static Template template(AssemblyProgram.Section section, Map<Label, Integer> labels) {
+        UnaryOperator<Label> toTemplate = label -> {
+            Integer position = labels.get(label);
+            if (position == null)
+                throw new IllegalStateException("label " + label + " was introduced by the register allocator");
+            return templateLabel(position);
+        };
+        AssemblyItem[] items = new AssemblyItem[section.items.size()];
+        for (int i = 0; i < items.length; i++)
+            items[i] = relabel(section.items.get(i), toTemplate);
+        return new Template(section.type, items);
+    }
+
+    private static Label templateLabel(int position) {
+        synchronized (TEMPLATES) {
+            return TEMPLATES.label("L_" + position);
+        }
+    }
+
+    /*
+     * Rebuilds the sections of a template with the labels of the program being compiled.
+     */
+    private static List<AssemblyProgram.Section> instantiate(Template[] templates, Map<Label, Integer> labels) {
+        Label[] bound = new Label[labels.size()];
+        labels.forEach((label, position) -> bound[position] = label);
+        UnaryOperator<Label> rebind = template -> bound[Integer.parseInt(template.name.substring(2))];
+
+        List<AssemblyProgram.Section> sections = new ArrayList<>(templates.length);
+        for (Template template : templates) {
+            AssemblyProgram.Section section = new AssemblyProgram.Section(template.type);
+            for (AssemblyItem item : template.items)
+                section.items.add(relabel(item, rebind));
+            sections.add(section);
+        }
+        return sections;
+    }
+
+    private static AssemblyItem relabel(AssemblyItem item, UnaryOperator<Label> relabel) {
+        if (item instanceof Label)
+            return relabel.apply((Label) item);
+        if (item instanceof Instruction.BinaryBranch) {
+            Instruction.BinaryBranch b = (Instruction.BinaryBranch) item;
+            return new Instruction.BinaryBranch((OpCode.BinaryBranch) b.opcode, b.src1, b.src2, relabel.apply(b.label));
+        }
+        if (item instanceof Instruction.UnaryBranch) {
+            Instruction.UnaryBranch b = (Instruction.UnaryBranch) item;
+            return new Instruction.UnaryBranch((OpCode.UnaryBranch) b.opcode, b.src, relabel.apply(b.label));
+        }
+        if (item instanceof Instruction.Jump) {
+            Instruction.Jump j = (Instruction.Jump) item;
+            return new Instruction.Jump((OpCode.Jump) j.opcode, relabel.apply(j.label));
+        }
+        if (item instanceof Instruction.LoadAddress) {
+            Instruction.LoadAddress la = (Instruction.LoadAddress) item;
+            return new Instruction.LoadAddress(la.dst, relabel.apply(la.label));
+        }
+        return item;
+    }
+}
@@ -10,9 +10,9 @@ public class MainGen {
         AssemblyProgram prog = new AssemblyProgram();
 
         AssemblyProgram.Section text = prog.newSection(AssemblyProgram.Section.Type.TEXT);
-        Register v1 = Register.Virtual.create();
-        Register v2 = Register.Virtual.create();
-        Register v3 = Register.Virtual.create();
+        Register v1 = prog.context.createVirtualRegister();
+        Register v2 = prog.context.createVirtualRegister();
+        Register v3 = prog.context.createVirtualRegister();
         text.emit(OpCode.PUSH_REGISTERS);
         text.emit(OpCode.ADDI, v1, Register.Arch.zero, 4);
         text.emit(OpCode.ADDI, v2, Register.Arch.zero, 8);
@@ -46,9 +46,10 @@ public class MainGen {
         var writer = new PrintWriter(out);
         program.print(writer);
 
-        // Next, we read the file we just created. This effectively creates a copy of `program`.
+        // Next, we read the file we just created, in the namespace of `program` so that its labels and virtual
+        // registers are the same instances. This effectively creates a copy of `program`.
         var programCopy = AssemblyParser.readAssemblyProgram(
-                new BufferedReader(new StringReader(out.toString())));
+                new BufferedReader(new StringReader(out.toString())), program.context);
 
         // Now all we need to do is simply check that the programs are equivalent.
         if (!program.equals(programCopy)) {
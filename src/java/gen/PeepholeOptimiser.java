@@ -0,0 +1,380 @@
+package gen;
+
+import gen.asm.*;
+import regalloc.AssemblyPass;
+
+import java.util.*;
+
+/**
+ * A peephole optimiser for programs without virtual registers. It slides a window over the instructions of each TEXT
+ * section and lets each {@link Rule} replace the instructions in the window, until no rule applies any more. A window
+ * never spans a label or a directive, so control only enters it at its first instruction; comments are skipped over
+ * and kept where they are.
+ *
+ * The optimiser counts how often each rule applied and how many instructions it removed. An instance is meant for
+ * one compilation at a time.
+ */
+public final class PeepholeOptimiser implements AssemblyPass {
+
+    /**
+     * A rewrite of a few consecutive instructions.
+     */
+    public interface Rule {
+        String name();
+
+        /**
+         * @return the number of instructions in the window the rule looks at
+         */
+        int size();
+
+        /**
+         * @return the instructions to put in place of those of the window, at most as many, or null to leave them
+         */
+        List<Instruction> rewrite(List<Instruction> window, Context context);
+    }
+
+    /**
+     * What a rule may know about the surroundings of its window.
+     */
+    public interface Context {
+        /**
+         * @return whether the label comes right after the window, before any other instruction
+         */
+        boolean isNext(Label label);
+
+        /**
+         * @return the first instruction after the label in the section, or null if the label is not in the section or
+         * no instruction follows it
+         */
+        Instruction at(Label label);
+    }
+
+    /**
+     * The rules, in the order they are tried at each instruction.
+     */
+    public static final List<Rule> RULES = List.of(
+            new NoOpImmediate(),
+            new FoldStackAdjustments(),
+            new SinkStackAdjustment(),
+            new ForwardStore(),
+            new JumpToNext(),
+            new ChainBranches());
+
+    private final List<Rule> rules;
+    // the largest window of any rule
+    private final int largest;
+    private final Map<Rule, int[]> counts = new LinkedHashMap<>();
+
+    public PeepholeOptimiser() {
+        this(RULES);
+    }
+
+    public PeepholeOptimiser(List<Rule> rules) {
+        this.rules = rules;
+        this.largest = rules.stream().mapToInt(Rule::size).max().orElse(0);
+        rules.forEach(rule -> counts.put(rule, new int[2]));
+    }
+
+    @Override
+    public AssemblyProgram apply(AssemblyProgram program) {
+        AssemblyProgram newProg = new AssemblyProgram(program.context);
+        for (AssemblyProgram.Section section : program.sections) {
+            if (section.type == AssemblyProgram.Section.Type.DATA) {
+                newProg.emitSection(section);
+                continue;
+            }
+            AssemblyProgram.Section newSection = newProg.newSection(AssemblyProgram.Section.Type.TEXT);
+            List<AssemblyItem> items = new ArrayList<>(section.items);
+            while (pass(items))
+                items.removeIf(Objects::isNull);
+            items.forEach(item -> emit(newSection, item));
+        }
+        return newProg;
+    }
+
+    private static void emit(AssemblyProgram.Section section, AssemblyItem item) {
+        if (item instanceof Instruction)
+            section.emit((Instruction) item);
+        else if (item instanceof Label)
+            section.emit((Label) item);
+        else if (item instanceof Comment)
+            section.emit((Comment) item);
+        else
+            section.emit((Directive) item);
+    }
+
+    /*
+     * Tries every rule once at every instruction; removed instructions are left as nulls until the pass is over.
+     * Labels are resolved against the control flow graph of the section as it was when the pass started. Returns
+     * whether anything changed.
+     */
+    private boolean pass(List<AssemblyItem> items) {
+        ControlFlowGraph cfg = new ControlFlowGraph(items);
+        // the position in the graph of the instruction at each position of the items
+        int[] index = new int[items.size()];
+        for (int i = 0, instruction = 0; i < items.size(); i++) {
+            index[i] = instruction;
+            if (items.get(i) instanceof Instruction)
+                instruction++;
+        }
+
+        boolean changed = false;
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            if (!(items.get(i) instanceof Instruction))
+                continue;
+            positions.clear();
+            window(items, i, positions);
+            List<Instruction> window = new ArrayList<>(positions.size());
+            for (int position : positions)
+                window.add((Instruction) items.get(position));
+
+            for (Rule rule : rules) {
+                if (rule.size() > window.size())
+                    continue;
+                int next = index[positions.get(rule.size() - 1)] + 1;
+                Context context = new Context() {
+                    public boolean isNext(Label label) {
+                        return cfg.position(label) == next;
+                    }
+                    public Instruction at(Label label) {
+                        int position = cfg.position(label);
+                        return position == -1 || position == cfg.instructions().size() ? null
+                                : cfg.instructions().get(position);
+                    }
+                };
+                List<Instruction> replacement = rule.rewrite(window.subList(0, rule.size()), context);
+                if (replacement == null)
+                    continue;
+                for (int j = 0; j < rule.size(); j++)
+                    items.set(positions.get(j), j < replacement.size() ? replacement.get(j) : null);
+                counts.get(rule)[0]++;
+                counts.get(rule)[1] += rule.size() - replacement.size();
+                changed = true;
+                break;
+            }
+        }
+        return changed;
+    }
+
+    /*
+     * Collects the positions of the instructions that can share a window with the one at position first, up to the
+     * largest window of any rule. Instructions removed earlier in the pass end the window.
+     */
+    private void window(List<AssemblyItem> items, int first, List<Integer> positions) {
+        for (int i = first; i < items.size() && positions.size() < largest; i++) {
+            AssemblyItem item = items.get(i);
+            if (item instanceof Instruction)
+                positions.add(i);
+            else if (!(item instanceof Comment))
+                break;
+        }
+    }
+
+    /**
+     * @return how many times each rule applied, by rule name
+     */
+    public Map<String, Integer> applications() {
+        Map<String, Integer> applications = new LinkedHashMap<>();
+        counts.forEach((rule, count) -> applications.put(rule.name(), count[0]));
+        return applications;
+    }
+
+    /**
+     * @return how many instructions each rule removed, by rule name
+     */
+    public Map<String, Integer> removals() {
+        Map<String, Integer> removals = new LinkedHashMap<>();
+        counts.forEach((rule, count) -> removals.put(rule.name(), count[1]));
+        return removals;
+    }
+
+    private static boolean isStackAdjustment(Instruction insn) {
+        if (!(insn instanceof Instruction.ArithmeticWithImmediate))
+            return false;
+        Instruction.ArithmeticWithImmediate addi = (Instruction.ArithmeticWithImmediate) insn;
+        return (addi.opcode == OpCode.ADDI || addi.opcode == OpCode.ADDIU)
+                && addi.dst == Register.Arch.sp && addi.src == Register.Arch.sp;
+    }
+
+    private static int adjustment(Instruction insn) {
+        return ((Instruction.ArithmeticWithImmediate) insn).imm;
+    }
+
+    private static boolean fitsImmediate(long value) {
+        return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+    }
+
+    /**
+     * Removes additions of 0 to a register in place, such as the ADDI $sp,$sp,0 that pops an empty block.
+     */
+    static final class NoOpImmediate implements Rule {
+        public String name() {
+            return "no-op addi";
+        }
+
+        public int size() {
+            return 1;
+        }
+
+        public List<Instruction> rewrite(List<Instruction> window, Context context) {
+            Instruction insn = window.get(0);
+            if (!(insn instanceof Instruction.ArithmeticWithImmediate))
+                return null;
+            Instruction.ArithmeticWithImmediate addi = (Instruction.ArithmeticWithImmediate) insn;
+            boolean add = addi.opcode == OpCode.ADDI || addi.opcode == OpCode.ADDIU || addi.opcode == OpCode.ORI;
+            return add && addi.imm == 0 && addi.dst == addi.src ? List.of() : null;
+        }
+    }
+
+    /**
+     * Adds up two adjustments of the stack pointer in a row.
+     */
+    static final class FoldStackAdjustments implements Rule {
+        public String name() {
+            return "fold $sp adjustments";
+        }
+
+        public int size() {
+            return 2;
+        }
+
+        public List<Instruction> rewrite(List<Instruction> window, Context context) {
+            if (!isStackAdjustment(window.get(0)) || !isStackAdjustment(window.get(1)))
+                return null;
+            long sum = (long) adjustment(window.get(0)) + adjustment(window.get(1));
+            if (!fitsImmediate(sum))
+                return null;
+            return sum == 0 ? List.of()
+                    : List.of(new Instruction.ArithmeticWithImmediate(OpCode.ADDI, Register.Arch.sp, Register.Arch.sp, (int) sum));
+        }
+    }
+
+    /**
+     * Moves an adjustment of the stack pointer past a load or store relative to it when another adjustment follows,
+     * so that the two can be added up: the SW $zero / ADDI $sp pairs that push locals one word at a time become a
+     * row of stores and a single ADDI.
+     */
+    static final class SinkStackAdjustment implements Rule {
+        public String name() {
+            return "sink $sp adjustment";
+        }
+
+        public int size() {
+            return 3;
+        }
+
+        public List<Instruction> rewrite(List<Instruction> window, Context context) {
+            if (!isStackAdjustment(window.get(0)) || !isStackAdjustment(window.get(2)))
+                return null;
+            if (!(window.get(1) instanceof Instruction.MemIndirect))
+                return null;
+            Instruction.MemIndirect access = (Instruction.MemIndirect) window.get(1);
+            if (access.op2 != Register.Arch.sp || access.op1 == Register.Arch.sp)
+                return null;
+            long offset = (long) access.imm + adjustment(window.get(0));
+            long sum = (long) adjustment(window.get(0)) + adjustment(window.get(2));
+            if (!fitsImmediate(offset) || !fitsImmediate(sum))
+                return null;
+            Instruction moved = access instanceof Instruction.Store
+                    ? new Instruction.Store((OpCode.Store) access.opcode, access.op1, access.op2, (int) offset)
+                    : new Instruction.Load((OpCode.Load) access.opcode, access.op1, access.op2, (int) offset);
+            return sum == 0 ? List.of(moved)
+                    : List.of(moved, new Instruction.ArithmeticWithImmediate(OpCode.ADDI, Register.Arch.sp, Register.Arch.sp, (int) sum));
+        }
+    }
+
+    /**
+     * Replaces a load of the word just stored, from the same address, by a copy of the stored register, or by
+     * nothing when it loads into that register.
+     */
+    static final class ForwardStore implements Rule {
+        public String name() {
+            return "store-to-load forwarding";
+        }
+
+        public int size() {
+            return 2;
+        }
+
+        public List<Instruction> rewrite(List<Instruction> window, Context context) {
+            if (window.get(0).opcode != OpCode.SW || window.get(1).opcode != OpCode.LW)
+                return null;
+            Instruction.MemIndirect store = (Instruction.MemIndirect) window.get(0);
+            Instruction.MemIndirect load = (Instruction.MemIndirect) window.get(1);
+            if (store.op2 != load.op2 || store.imm != load.imm)
+                return null;
+            if (load.op1 == store.op1)
+                return List.of(store);
+            return List.of(store, new Instruction.TernaryArithmetic(OpCode.ADDU, load.op1, store.op1, Register.Arch.zero));
+        }
+    }
+
+    /**
+     * Removes a jump, or a branch, to the label that follows it.
+     */
+    static final class JumpToNext implements Rule {
+        public String name() {
+            return "jump to next";
+        }
+
+        public int size() {
+            return 1;
+        }
+
+        public List<Instruction> rewrite(List<Instruction> window, Context context) {
+            Label target = target(window.get(0));
+            return target != null && context.isNext(target) ? List.of() : null;
+        }
+    }
+
+    /**
+     * Sends a jump or a branch whose target is an unconditional jump directly to the target of that jump.
+     */
+    static final class ChainBranches implements Rule {
+        public String name() {
+            return "branch chaining";
+        }
+
+        public int size() {
+            return 1;
+        }
+
+        public List<Instruction> rewrite(List<Instruction> window, Context context) {
+            Instruction insn = window.get(0);
+            Label target = target(insn);
+            if (target == null)
+                return null;
+            Set<Label> seen = new HashSet<>();
+            seen.add(target);
+            Label last = target;
+            while (context.at(last) instanceof Instruction.Jump && context.at(last).opcode == OpCode.J) {
+                last = ((Instruction.Jump) context.at(last)).label;
+                // a cycle of jumps has nowhere better to go
+                if (!seen.add(last))
+                    return null;
+            }
+            if (last == target)
+                return null;
+            if (insn instanceof Instruction.Jump)
+                return List.of(new Instruction.Jump((OpCode.Jump) insn.opcode, last));
+            if (insn instanceof Instruction.BinaryBranch) {
+                Instruction.BinaryBranch branch = (Instruction.BinaryBranch) insn;
+                return List.of(new Instruction.BinaryBranch((OpCode.BinaryBranch) branch.opcode, branch.src1, branch.src2, last));
+            }
+            Instruction.UnaryBranch branch = (Instruction.UnaryBranch) insn;
+            return List.of(new Instruction.UnaryBranch((OpCode.UnaryBranch) branch.opcode, branch.src, last));
+        }
+    }
+
+    // the label a jump or branch other than a call goes to; null for other instructions
+    private static Label target(Instruction insn) {
+        if (insn instanceof Instruction.Jump && (insn.opcode == OpCode.J || insn.opcode == OpCode.B))
+            return ((Instruction.Jump) insn).label;
+        if (insn instanceof Instruction.BinaryBranch)
+            return ((Instruction.BinaryBranch) insn).label;
+        if (insn instanceof Instruction.UnaryBranch && insn.opcode != OpCode.BGEZAL && insn.opcode != OpCode.BLTZAL)
+            return ((Instruction.UnaryBranch) insn).label;
+        return null;
+    }
+}
@@ -2,6 +2,7 @@ package gen;
 
 import ast.*;
 import gen.asm.AssemblyProgram;
+import gen.asm.CompilationContext;
 import gen.asm.Directive;
 import gen.asm.Label;
 import gen.asm.OpCode;
@@ -15,6 +16,7 @@ import gen.asm.OpCode;
 public class ProgramGen implements ASTVisitor<Void> {
 
     private final AssemblyProgram asmProg;
+    private final CompilationContext context;
     private final FunGen funGen;
     public final Label main;
 
@@ -22,9 +24,10 @@ public class ProgramGen implements ASTVisitor<Void> {
 
     public ProgramGen(AssemblyProgram asmProg) {
         this.asmProg = asmProg;
+        this.context = asmProg.context;
         this.dataSection = asmProg.newSection(AssemblyProgram.Section.Type.DATA);
         this.funGen = new FunGen(asmProg, this);
-        this.main = Label.create("MAIN");
+        this.main = context.createLabel("MAIN");
     }
 
     @Override
@@ -45,7 +48,7 @@ public class ProgramGen implements ASTVisitor<Void> {
 
     @Override
     public Void visitVarDecl(VarDecl vd) {
-        vd.label = Label.create(vd.varName);
+        vd.label = context.createLabel(vd.varName);
         dataSection.emit(vd.label);
         if(vd.type != BaseType.CHAR)
             dataSection.emit(new Directive("space " + vd.type.getSize()));
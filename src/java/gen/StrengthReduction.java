@@ -0,0 +1,154 @@
+package gen;
+
+import gen.asm.AssemblyProgram;
+import gen.asm.CompilationContext;
+import gen.asm.OpCode;
+import gen.asm.Register;
+
+/**
+ * Replaces the multiplications, divisions and remainders by a constant that have a cheaper equivalent: shifts for a
+ * power of two, and shift/add chains for the factors made of two powers of two. Each method returns false, emitting
+ * nothing, when the constant has no such equivalent, leaving the caller to use {@code mult} or {@code div}.
+ *
+ * The sums use {@code addu} and {@code subu} so that an overflow wraps around as it does with {@code mult}, instead of
+ * trapping.
+ */
+public final class StrengthReduction {
+
+    // longest chain to replace a multiplication, which takes an li, a mult and an mflo
+    private static final int MAX_MULTIPLY_CHAIN = 3;
+
+    private final CompilationContext context;
+
+    public StrengthReduction(CompilationContext context) {
+        this.context = context;
+    }
+
+    private static boolean isPowerOfTwo(int n) {
+        return n > 0 && (n & (n - 1)) == 0;
+    }
+
+    private static int log2(int n) {
+        return Integer.numberOfTrailingZeros(n);
+    }
+
+    // value << shift, value itself when the shift is zero
+    private Register shifted(AssemblyProgram.Section section, Register value, int shift) {
+        if (shift == 0)
+            return value;
+        Register register = context.createVirtualRegister();
+        section.emit(OpCode.SLL, register, value, shift);
+        return register;
+    }
+
+    /**
+     * Emits {@code result = value * factor}.
+     */
+    public boolean multiply(AssemblyProgram.Section section, Register result, Register value, int factor) {
+        if (factor == 0) {
+            section.emit(OpCode.ADDU, result, Register.Arch.zero, Register.Arch.zero);
+            return true;
+        }
+        // shifting by 31 multiplies by MIN_VALUE too
+        if (Integer.bitCount(factor) == 1) {
+            section.emit(OpCode.SLL, result, value, log2(factor));
+            return true;
+        }
+        if (factor == Integer.MIN_VALUE)
+            return false;
+        boolean negative = factor < 0;
+        int magnitude = Math.abs(factor);
+        if (isPowerOfTwo(magnitude)) {
+            section.emit(OpCode.SUBU, result, Register.Arch.zero, shifted(section, value, log2(magnitude)));
+            return true;
+        }
+
+        int low = Integer.lowestOneBit(magnitude);
+        if (Integer.bitCount(magnitude) == 2) {
+            // 2^a + 2^b
+            int high = Integer.highestOneBit(magnitude);
+            int length = (log2(high) > 0 ? 1 : 0) + (log2(low) > 0 ? 1 : 0) + 1 + (negative ? 1 : 0);
+            if (length > MAX_MULTIPLY_CHAIN)
+                return false;
+            Register sum = negative ? context.createVirtualRegister() : result;
+            section.emit(OpCode.ADDU, sum, shifted(section, value, log2(high)), shifted(section, value, log2(low)));
+            if (negative)
+                section.emit(OpCode.SUBU, result, Register.Arch.zero, sum);
+            return true;
+        }
+        if (magnitude + low > 0 && isPowerOfTwo(magnitude + low)) {
+            // 2^a - 2^b, subtracted the other way round for a negative factor
+            int high = magnitude + low;
+            int length = 1 + (log2(low) > 0 ? 1 : 0) + 1;
+            if (length > MAX_MULTIPLY_CHAIN)
+                return false;
+            Register minuend = shifted(section, value, log2(high));
+            Register subtrahend = shifted(section, value, log2(low));
+            if (negative)
+                section.emit(OpCode.SUBU, result, subtrahend, minuend);
+            else
+                section.emit(OpCode.SUBU, result, minuend, subtrahend);
+            return true;
+        }
+        return false;
+    }
+
+    // 2^k - 1 if value is negative, 0 otherwise: what to add to it so that shifting right rounds towards zero
+    private Register bias(AssemblyProgram.Section section, Register value, int k) {
+        Register bias = context.createVirtualRegister();
+        if (k == 1) {
+            section.emit(OpCode.SRL, bias, value, 31);
+        } else {
+            Register sign = context.createVirtualRegister();
+            section.emit(OpCode.SRA, sign, value, 31);
+            section.emit(OpCode.SRL, bias, sign, 32 - k);
+        }
+        return bias;
+    }
+
+    /**
+     * Emits {@code result = value / divisor}, rounding towards zero.
+     */
+    public boolean divide(AssemblyProgram.Section section, Register result, Register value, int divisor) {
+        if (divisor == 0 || divisor == Integer.MIN_VALUE || !isPowerOfTwo(Math.abs(divisor)))
+            return false;
+        boolean negative = divisor < 0;
+        int k = log2(Math.abs(divisor));
+        Register quotient = negative ? context.createVirtualRegister() : result;
+        if (k == 0) {
+            section.emit(OpCode.ADDU, quotient, value, Register.Arch.zero);
+        } else {
+            Register biased = context.createVirtualRegister();
+            section.emit(OpCode.ADDU, biased, value, bias(section, value, k));
+            section.emit(OpCode.SRA, quotient, biased, k);
+        }
+        // x / -d is -(x / d) when rounding towards zero
+        if (negative)
+            section.emit(OpCode.SUBU, result, Register.Arch.zero, quotient);
+        return true;
+    }
+
+    /**
+     * Emits {@code result = value % divisor}, which has the sign of {@code value}.
+     */
+    public boolean remainder(AssemblyProgram.Section section, Register result, Register value, int divisor) {
+        if (divisor == 0 || divisor == Integer.MIN_VALUE || !isPowerOfTwo(Math.abs(divisor)))
+            return false;
+        int k = log2(Math.abs(divisor));
+        // the mask has to fit the zero-extended immediate of andi
+        if (k > 16)
+            return false;
+        if (k == 0) {
+            section.emit(OpCode.ADDU, result, Register.Arch.zero, Register.Arch.zero);
+            return true;
+        }
+        // ((x + bias) & (2^k - 1)) - bias
+        Register bias = bias(section, value, k);
+        Register biased = context.createVirtualRegister();
+        Register masked = context.createVirtualRegister();
+        section.emit(OpCode.ADDU, biased, value, bias);
+        section.emit(OpCode.ANDI, masked, biased, (1 << k) - 1);
+        section.emit(OpCode.SUBU, result, masked, bias);
+        return true;
+    }
+}
@@ -26,13 +26,25 @@ public final class AssemblyParser {
      * @return An {@link AssemblyProgram} instance that corresponds to the text being read by {@code reader}.
      */
     public static AssemblyProgram readAssemblyProgram(final BufferedReader reader) {
+        return readAssemblyProgram(reader, new CompilationContext());
+    }
+
+    /**
+     * Reads a MIPS assembly program from a buffered reader, interning its labels and virtual registers in a given
+     * context.
+     *
+     * @param reader A buffered reader that reads from a textual MIPS assembly program.
+     * @param context The namespace of the program.
+     * @return An {@link AssemblyProgram} instance that corresponds to the text being read by {@code reader}.
+     */
+    public static AssemblyProgram readAssemblyProgram(final BufferedReader reader, CompilationContext context) {
         var textDirective = new Directive("text");
         var dataDirective = new Directive("data");
 
-        var program = new AssemblyProgram();
+        var program = new AssemblyProgram(context);
         AssemblyProgram.Section currentSection = null;
         for (var line : reader.lines().collect(Collectors.toList())) {
-            var item = parseAssemblyItem(line);
+            var item = parseAssemblyItem(line, context);
             if (item == null) {
                 continue;
             }
@@ -67,6 +79,19 @@ public final class AssemblyParser {
      * @return An assembly item if the line is nonempty; otherwise, {@code null}.
      */
     public static AssemblyItem parseAssemblyItem(String line) {
+        synchronized (CompilationContext.SHARED) {
+            return parseAssemblyItem(line, CompilationContext.SHARED);
+        }
+    }
+
+    /**
+     * Parses a string as an {@link AssemblyItem}, interning its labels and virtual registers in a given context.
+     *
+     * @param line A single line of MIPS assembly.
+     * @param context The namespace of the program the line belongs to.
+     * @return An assembly item if the line is nonempty; otherwise, {@code null}.
+     */
+    public static AssemblyItem parseAssemblyItem(String line, CompilationContext context) {
         // Check if the line looks promising.
         if (line == null || line.isBlank()) {
             return null;
@@ -86,7 +111,7 @@ public final class AssemblyParser {
             if (!isLabel(labelIdentifier)) {
                 throw new Error("Expected a label identifier; found " + labelIdentifier);
             }
-            return Label.get(labelIdentifier);
+            return context.label(labelIdentifier);
         } else {
             // Anything else must be an instruction. The general format for instructions is `opcode arg1, arg2, ...`.
             String[] opcodeAndArgs = line.split(" ", 2);
@@ -112,80 +137,80 @@ public final class AssemblyParser {
             switch (opcode.kind()) {
                 case LOAD_ADDRESS:
                     checkArity(args, 2, line);
-                    return new Instruction.LoadAddress(parseRegister(args.get(0)), parseLabel(args.get(1)));
+                    return new Instruction.LoadAddress(parseRegister(args.get(0), context), parseLabel(args.get(1), context));
 
                 case TERNARY_ARITHMETIC:
                     checkArity(args, 3, line);
                     return new Instruction.TernaryArithmetic(
                             (OpCode.TernaryArithmetic) opcode,
-                            parseRegister(args.get(0)),
-                            parseRegister(args.get(1)),
-                            parseRegister(args.get(2)));
+                            parseRegister(args.get(0), context),
+                            parseRegister(args.get(1), context),
+                            parseRegister(args.get(2), context));
 
                 case BINARY_ARITHMETIC:
                     checkArity(args, 2, line);
                     return new Instruction.BinaryArithmetic(
                             (OpCode.BinaryArithmetic) opcode,
-                            parseRegister(args.get(0)),
-                            parseRegister(args.get(1)));
+                            parseRegister(args.get(0), context),
+                            parseRegister(args.get(1), context));
 
                 case UNARY_ARITHMETIC:
                     checkArity(args, 1, line);
                     return new Instruction.UnaryArithmetic(
                             (OpCode.UnaryArithmetic) opcode,
-                            parseRegister(args.get(0)));
+                            parseRegister(args.get(0), context));
 
                 case JUMP:
                     checkArity(args, 1, line);
                     return new Instruction.Jump(
                             (OpCode.Jump) opcode,
-                            parseLabel(args.get(0)));
+                            parseLabel(args.get(0), context));
 
                 case JUMP_REGISTER:
                     checkArity(args, 1, line);
                     return new Instruction.JumpRegister(
                             (OpCode.JumpRegister) opcode,
-                            parseRegister(args.get(0)));
+                            parseRegister(args.get(0), context));
 
                 case BINARY_BRANCH:
                     checkArity(args, 3, line);
                     return new Instruction.BinaryBranch(
                             (OpCode.BinaryBranch) opcode,
-                            parseRegister(args.get(0)),
-                            parseRegister(args.get(1)),
-                            parseLabel(args.get(2)));
+                            parseRegister(args.get(0), context),
+                            parseRegister(args.get(1), context),
+                            parseLabel(args.get(2), context));
 
                 case UNARY_BRANCH:
                     checkArity(args, 2, line);
                     return new Instruction.UnaryBranch(
                             (OpCode.UnaryBranch) opcode,
-                            parseRegister(args.get(0)),
-                            parseLabel(args.get(1)));
+                            parseRegister(args.get(0), context),
+                            parseLabel(args.get(1), context));
 
                 case ARITHMETIC_WITH_IMMEDIATE:
                     checkArity(args, 3, line);
                     return new Instruction.ArithmeticWithImmediate(
                             (OpCode.ArithmeticWithImmediate) opcode,
-                            parseRegister(args.get(0)),
-                            parseRegister(args.get(1)),
+                            parseRegister(args.get(0), context),
+                            parseRegister(args.get(1), context),
                             parseImmediate(args.get(2)));
 
                 case LOAD: {
                     checkArity(args, 2, line);
-                    var memOperand = parseMemoryOperand(args.get(1));
+                    var memOperand = parseMemoryOperand(args.get(1), context);
                     return new Instruction.Load(
                             (OpCode.Load) opcode,
-                            parseRegister(args.get(0)),
+                            parseRegister(args.get(0), context),
                             memOperand.getKey(),
                             memOperand.getValue());
                 }
 
                 case STORE:
                     checkArity(args, 2, line);
-                    var memOperand = parseMemoryOperand(args.get(1));
+                    var memOperand = parseMemoryOperand(args.get(1), context);
                     return new Instruction.Store(
                             (OpCode.Store) opcode,
-                            parseRegister(args.get(0)),
+                            parseRegister(args.get(0), context),
                             memOperand.getKey(),
                             memOperand.getValue());
 
@@ -193,7 +218,7 @@ public final class AssemblyParser {
                     checkArity(args, 2, line);
                     return new Instruction.LoadImmediate(
                             (OpCode.LoadImmediate) opcode,
-                            parseRegister(args.get(0)),
+                            parseRegister(args.get(0), context),
                             parseImmediate(args.get(1)));
 
                 case NULLARY:
@@ -213,7 +238,7 @@ public final class AssemblyParser {
         }
     }
 
-    private static Register parseRegister(String name) {
+    private static Register parseRegister(String name, CompilationContext context) {
         if (!name.codePoints().allMatch(Character::isJavaIdentifierPart)) {
             throw new Error("Expected a register name, got " + name);
         }
@@ -230,15 +255,15 @@ public final class AssemblyParser {
             return candidate.get();
         } else {
             // Looks we just ran into a virtual register.
-            return Register.Virtual.get(name);
+            return context.virtualRegister(name);
         }
     }
 
-    private static Label parseLabel(String name) {
+    private static Label parseLabel(String name, CompilationContext context) {
         if (!isLabel(name)) {
             throw new Error("Expected a label, got " + name);
         }
-        return Label.get(name);
+        return context.label(name);
     }
 
     private static boolean isLabel(String text) {
@@ -251,7 +276,7 @@ public final class AssemblyParser {
         return Integer.parseInt(text);
     }
 
-    private static Map.Entry<Register, Integer> parseMemoryOperand(String text) {
+    private static Map.Entry<Register, Integer> parseMemoryOperand(String text, CompilationContext context) {
         if (text.startsWith("(")) {
             // If a memory operand starts with a parenthesis, then it must be an offset-free operand. That is, it must
             // have an offset of zero.
@@ -259,7 +284,7 @@ public final class AssemblyParser {
                 throw new Error("Expected a memory operand, got " + text);
             }
 
-            var register = parseRegister(text.substring(1, text.length() - 1));
+            var register = parseRegister(text.substring(1, text.length() - 1), context);
             return new AbstractMap.SimpleEntry<>(register, 0);
         }
 
@@ -269,7 +294,7 @@ public final class AssemblyParser {
         }
 
         int immediate = parseImmediate(pieces[0]);
-        var register = parseRegister(pieces[1].substring(0, pieces[1].length() - 1));
+        var register = parseRegister(pieces[1].substring(0, pieces[1].length() - 1), context);
         return new AbstractMap.SimpleEntry<>(register, immediate);
     }
 }
@@ -172,6 +172,27 @@ public final class AssemblyProgram {
     }
 
 
+    /**
+     * The namespace the labels and virtual registers of this program belong to.
+     */
+    public final CompilationContext context;
+
+    /**
+     * Creates an empty program with a fresh {@link CompilationContext}.
+     */
+    public AssemblyProgram() {
+        this(new CompilationContext());
+    }
+
+    /**
+     * Creates an empty program whose labels and virtual registers belong to {@code context}; passes that rewrite a
+     * program create their output this way so that the names they add cannot clash with the existing ones.
+     * @param context The namespace of the program.
+     */
+    public AssemblyProgram(CompilationContext context) {
+        this.context = context;
+    }
+
     private Section currSection;
 
     public final List<Section> sections = new ArrayList<>();
@@ -0,0 +1,83 @@
+package gen.asm;
+
+import java.util.HashMap;
+
+/**
+ * The namespace of a single compilation: the {@link Label} and {@link Register.Virtual} flyweights created while
+ * generating and allocating one program. Each compilation owns its context, so programs compiled concurrently or one
+ * after another in the same JVM never share names, and everything a compilation interned is collected with it.
+ *
+ * A context is not thread-safe; it is meant to be used by one compilation at a time.
+ */
+public final class CompilationContext {
+
+    private final HashMap<String, Label> labels = new HashMap<>();
+    private final HashMap<String, Register.Virtual> virtuals = new HashMap<>();
+
+    /**
+     * The context behind the static {@link Label#get(String)}, {@link Label#create(String)},
+     * {@link Register.Virtual#get(String)} and {@link Register.Virtual#create()}, kept for code that does not run as
+     * part of a compilation. Access to it is synchronized on the context itself.
+     */
+    static final CompilationContext SHARED = new CompilationContext();
+
+    /**
+     * Gets the unique label for a given name in this context.
+     *
+     * @param name The label's name.
+     * @return The unique {@link Label} instance with name {@code name}.
+     */
+    public Label label(String name) {
+        return labels.computeIfAbsent(name, Label::new);
+    }
+
+    /**
+     * Creates a fresh label with a name that is unique in this context.
+     *
+     * @param nameSuffix A suffix to append to the label's name.
+     * @return A unique {@link Label} instance.
+     */
+    public Label createLabel(String nameSuffix) {
+        int counter = labels.size();
+        String draftName;
+        do {
+            draftName = "label_" + counter + "_" + nameSuffix;
+            counter++;
+        } while (labels.containsKey(draftName));
+        return label(draftName);
+    }
+
+    /**
+     * Creates a fresh label with a name that is unique in this context.
+     *
+     * @return A unique {@link Label} instance.
+     */
+    public Label createLabel() {
+        return createLabel("");
+    }
+
+    /**
+     * Gets the unique virtual register for a given name in this context.
+     *
+     * @param name The virtual register's name.
+     * @return The unique {@link Register.Virtual} instance with name {@code name}.
+     */
+    public Register.Virtual virtualRegister(String name) {
+        return virtuals.computeIfAbsent(name, Register.Virtual::new);
+    }
+
+    /**
+     * Creates a fresh virtual register with a name that is unique in this context.
+     *
+     * @return A unique {@link Register.Virtual} instance.
+     */
+    public Register.Virtual createVirtualRegister() {
+        int counter = virtuals.size();
+        String draftName;
+        do {
+            draftName = "v" + counter;
+            counter++;
+        } while (virtuals.containsKey(draftName));
+        return virtualRegister(draftName);
+    }
+}
@@ -9,14 +9,13 @@
 
 package gen.asm;
 
-import java.util.HashMap;
-
 /**
  * A label in a MIPS assembly program.
  *
- * {@link Label} instances are flyweights. That is, the class' design makes it so that (barring multithreading
- * or reflection shenanigans) there can be at most one {@link Label} instance per name. Use {@link #create(String)}
- * and {@link #create()} to generate fresh {@link Label} instances.
+ * {@link Label} instances are flyweights. That is, the class' design makes it so that (barring reflection
+ * shenanigans) there can be at most one {@link Label} instance per name in a {@link CompilationContext}. Use
+ * {@link CompilationContext#createLabel(String)} and {@link CompilationContext#createLabel()} to generate fresh
+ * {@link Label} instances.
  */
 public final class Label extends AssemblyItem {
     /**
@@ -24,7 +23,7 @@ public final class Label extends AssemblyItem {
      */
     public final String name;
 
-    private Label(String name) {
+    Label(String name) {
         this.name = name;
     }
 
@@ -36,37 +35,32 @@ public final class Label extends AssemblyItem {
         v.visitLabel(this);
     }
 
-    // This hash map interns flyweight instances to ensure that no two Virtual instances have the same name.
-    private static final HashMap<String, Label> instances = new HashMap<>();
-
     /**
-     * Gets the unique label for a given name.
+     * Gets the unique label for a given name in the shared {@link CompilationContext}.
      *
      * @param name The label's name.
      * @return The unique {@link Label} instance with name {@code name}.
      */
     public static Label get(String name) {
-        return instances.computeIfAbsent(name, Label::new);
+        synchronized (CompilationContext.SHARED) {
+            return CompilationContext.SHARED.label(name);
+        }
     }
 
     /**
-     * Creates a fresh label with a unique name.
+     * Creates a fresh label with a unique name in the shared {@link CompilationContext}.
      *
      * @param nameSuffix A suffix to append to the label's name.
      * @return A unique {@link Label} instance.
      */
     public static Label create(String nameSuffix) {
-        int counter = instances.size();
-        String draftName;
-        do {
-            draftName = "label_" + counter + "_" + nameSuffix;
-            counter++;
-        } while (instances.containsKey(draftName));
-        return get(draftName);
+        synchronized (CompilationContext.SHARED) {
+            return CompilationContext.SHARED.createLabel(nameSuffix);
+        }
     }
 
     /**
-     * Creates a fresh label with a unique name.
+     * Creates a fresh label with a unique name in the shared {@link CompilationContext}.
      *
      * @return A unique {@link Label} instance.
      */
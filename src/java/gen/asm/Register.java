@@ -9,7 +9,6 @@
 
 package gen.asm;
 
-import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -40,7 +39,7 @@ public abstract class Register {
          */
         public final String name;
 
-        private Virtual(String name) {
+        Virtual(String name) {
             this.name = name;
         }
 
@@ -52,32 +51,27 @@ public abstract class Register {
             return true;
         }
 
-        // This hash map interns flyweight instances to ensure that no two Virtual instances have the same name.
-        private static final HashMap<String, Virtual> instances = new HashMap<>();
-
         /**
-         * Gets the unique virtual register for a given name.
+         * Gets the unique virtual register for a given name in the shared {@link CompilationContext}.
          * @param name The virtual register's name.
          * @return The unique {@link Virtual} instance with name {@code name}.
          */
         public static Virtual get(String name)
         {
-            return instances.computeIfAbsent(name, Virtual::new);
+            synchronized (CompilationContext.SHARED) {
+                return CompilationContext.SHARED.virtualRegister(name);
+            }
         }
 
         /**
-         * Creates a fresh virtual register with a unique name.
+         * Creates a fresh virtual register with a unique name in the shared {@link CompilationContext}.
          * @return A unique {@link Virtual} instance.
          */
         public static Virtual create()
         {
-            int counter = instances.size();
-            String draftName;
-            do {
-                draftName = "v" + counter;
-                counter++;
-            } while (instances.containsKey(draftName));
-            return get(draftName);
+            synchronized (CompilationContext.SHARED) {
+                return CompilationContext.SHARED.createVirtualRegister();
+            }
         }
     }
 
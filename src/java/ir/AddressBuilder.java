@@ -0,0 +1,235 @@
+package ir;
+
+import ast.*;
+
+/**
+ * Evaluates the address of an expression for the {@link IRBuilder}, which adds the instructions to its current block.
+ */
+final class AddressBuilder implements ASTVisitor<Value> {
+
+    private final IRBuilder builder;
+
+    AddressBuilder(IRBuilder builder) {
+        this.builder = builder;
+    }
+
+    // fields are laid out in the order they are declared, chars taking a word
+    private int fieldOffset(StructType struct, String field) {
+        int offset = 0;
+        for (VarDecl varDecl : builder.declaration(struct).varDecls) {
+            if (varDecl.varName.equals(field))
+                return offset;
+            offset += builder.storageSize(varDecl.type);
+        }
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitVarExpr(VarExpr v) {
+        if (builder.globals.containsKey(v.vd))
+            return builder.append(new Instruction.GlobalAddress(builder.globals.get(v.vd)));
+        if (builder.parameters.containsKey(v.vd))
+            return builder.append(new Instruction.ParameterAddress(builder.parameters.get(v.vd)));
+        if (builder.slots.containsKey(v.vd))
+            return builder.append(new Instruction.LocalAddress(builder.slots.get(v.vd)));
+        // an SSA value has no address
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitArrayAccessExpr(ArrayAccessExpr aa) {
+        // the value of an array is its address, and that of a pointer the address it holds
+        Value base = aa.array.accept(builder);
+        Value index = aa.index.accept(builder);
+        Value offset = builder.append(new Instruction.Binary(Instruction.Binary.Operator.MUL, index,
+                builder.constant(builder.size(aa.type))));
+        return builder.append(new Instruction.Binary(Instruction.Binary.Operator.ADD, base, offset));
+    }
+
+    @Override
+    public Value visitFieldAccessExpr(FieldAccessExpr fa) {
+        Value base = fa.expr.accept(builder);
+        int offset = fieldOffset((StructType) fa.expr.type, fa.field);
+        if (offset == 0)
+            return base;
+        return builder.append(new Instruction.Binary(Instruction.Binary.Operator.ADD, base, builder.constant(offset)));
+    }
+
+    @Override
+    public Value visitValueAtExpr(ValueAtExpr va) {
+        return va.expr.accept(builder);
+    }
+
+    @Override
+    public Value visitTypeCastExpr(TypeCastExpr tc) {
+        return tc.expr.accept(this);
+    }
+
+    @Override
+    public Value visitFunCallExpr(FunCallExpr fc) {
+        // only a returned struct has an address, the caller's copy of it
+        if (!(fc.type instanceof StructType))
+            throw new ShouldNotReach();
+        return fc.accept(builder);
+    }
+
+    @Override
+    public Value visitStrLiteral(StrLiteral str) {
+        return builder.append(new Instruction.GlobalAddress(builder.module.addString(str.str)));
+    }
+
+    @Override
+    public Value visitAddressOfExpr(AddressOfExpr ao) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitBaseType(BaseType bt) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitStructType(StructType st) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitPointerType(PointerType pt) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitArrayType(ArrayType at) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitStructTypeDecl(StructTypeDecl st) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitFunDecl(FunDecl f) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitBlock(Block b) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitWhile(While w) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitIf(If i) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitReturn(Return r) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitAssign(Assign a) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitExprStmt(ExprStmt es) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitProgram(Program p) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitVarDecl(VarDecl vd) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitSizeOfExpr(SizeOfExpr so) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitIntLiteral(IntLiteral i) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitChrLiteral(ChrLiteral c) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitAdd(Add a) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitSub(Sub s) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitMul(Mul m) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitDiv(Div d) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitMod(Mod m) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitGt(Gt g) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitLt(Lt l) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitGe(Ge g) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitLe(Le l) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitNe(Ne n) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitEq(Eq e) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitOr(Or o) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitAnd(And a) {
+        throw new ShouldNotReach();
+    }
+}
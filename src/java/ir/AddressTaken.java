@@ -0,0 +1,240 @@
+package ir;
+
+import ast.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Finds the variables of a function whose address is taken with {@code &}. Those have to stay in memory; the other
+ * scalar locals and parameters become SSA values.
+ */
+final class AddressTaken implements ASTVisitor<Void> {
+
+    final Set<VarDecl> variables = new HashSet<>();
+
+    // the variable whose storage the expression denotes, if any
+    private static VarDecl root(Expr expr) {
+        while (true) {
+            if (expr instanceof VarExpr)
+                return ((VarExpr) expr).vd;
+            else if (expr instanceof FieldAccessExpr)
+                expr = ((FieldAccessExpr) expr).expr;
+            else if (expr instanceof ArrayAccessExpr && ((ArrayAccessExpr) expr).array.type instanceof ArrayType)
+                expr = ((ArrayAccessExpr) expr).array;
+            else if (expr instanceof TypeCastExpr)
+                expr = ((TypeCastExpr) expr).expr;
+            else
+                return null;
+        }
+    }
+
+    @Override
+    public Void visitBaseType(BaseType bt) {
+        return null;
+    }
+
+    @Override
+    public Void visitStructType(StructType st) {
+        return null;
+    }
+
+    @Override
+    public Void visitPointerType(PointerType pt) {
+        return null;
+    }
+
+    @Override
+    public Void visitArrayType(ArrayType at) {
+        return null;
+    }
+
+    @Override
+    public Void visitStructTypeDecl(StructTypeDecl st) {
+        return null;
+    }
+
+    @Override
+    public Void visitFunDecl(FunDecl f) {
+        return f.block.accept(this);
+    }
+
+    @Override
+    public Void visitBlock(Block b) {
+        b.stmts.forEach(stmt -> stmt.accept(this));
+        return null;
+    }
+
+    @Override
+    public Void visitWhile(While w) {
+        w.expr.accept(this);
+        return w.stmt.accept(this);
+    }
+
+    @Override
+    public Void visitIf(If i) {
+        i.expr.accept(this);
+        i.ifStmt.accept(this);
+        if (i.elseStmt != null)
+            i.elseStmt.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitReturn(Return r) {
+        if (r.expr != null)
+            r.expr.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitAssign(Assign a) {
+        a.leftExpr.accept(this);
+        return a.rightExpr.accept(this);
+    }
+
+    @Override
+    public Void visitExprStmt(ExprStmt es) {
+        return es.expr.accept(this);
+    }
+
+    @Override
+    public Void visitProgram(Program p) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Void visitVarDecl(VarDecl vd) {
+        return null;
+    }
+
+    @Override
+    public Void visitVarExpr(VarExpr v) {
+        return null;
+    }
+
+    @Override
+    public Void visitSizeOfExpr(SizeOfExpr so) {
+        return null;
+    }
+
+    @Override
+    public Void visitArrayAccessExpr(ArrayAccessExpr aa) {
+        aa.array.accept(this);
+        return aa.index.accept(this);
+    }
+
+    @Override
+    public Void visitFieldAccessExpr(FieldAccessExpr fa) {
+        return fa.expr.accept(this);
+    }
+
+    @Override
+    public Void visitFunCallExpr(FunCallExpr fc) {
+        fc.params.forEach(param -> param.accept(this));
+        return null;
+    }
+
+    @Override
+    public Void visitTypeCastExpr(TypeCastExpr tc) {
+        return tc.expr.accept(this);
+    }
+
+    @Override
+    public Void visitValueAtExpr(ValueAtExpr va) {
+        return va.expr.accept(this);
+    }
+
+    @Override
+    public Void visitAddressOfExpr(AddressOfExpr ao) {
+        VarDecl variable = root(ao.expr);
+        if (variable != null)
+            variables.add(variable);
+        return ao.expr.accept(this);
+    }
+
+    @Override
+    public Void visitIntLiteral(IntLiteral i) {
+        return null;
+    }
+
+    @Override
+    public Void visitChrLiteral(ChrLiteral c) {
+        return null;
+    }
+
+    @Override
+    public Void visitStrLiteral(StrLiteral str) {
+        return null;
+    }
+
+    private Void visitBinOp(BinOp op) {
+        op.left.accept(this);
+        return op.right.accept(this);
+    }
+
+    @Override
+    public Void visitAdd(Add a) {
+        return visitBinOp(a);
+    }
+
+    @Override
+    public Void visitSub(Sub s) {
+        return visitBinOp(s);
+    }
+
+    @Override
+    public Void visitMul(Mul m) {
+        return visitBinOp(m);
+    }
+
+    @Override
+    public Void visitDiv(Div d) {
+        return visitBinOp(d);
+    }
+
+    @Override
+    public Void visitMod(Mod m) {
+        return visitBinOp(m);
+    }
+
+    @Override
+    public Void visitGt(Gt g) {
+        return visitBinOp(g);
+    }
+
+    @Override
+    public Void visitLt(Lt l) {
+        return visitBinOp(l);
+    }
+
+    @Override
+    public Void visitGe(Ge g) {
+        return visitBinOp(g);
+    }
+
+    @Override
+    public Void visitLe(Le l) {
+        return visitBinOp(l);
+    }
+
+    @Override
+    public Void visitNe(Ne n) {
+        return visitBinOp(n);
+    }
+
+    @Override
+    public Void visitEq(Eq e) {
+        return visitBinOp(e);
+    }
+
+    @Override
+    public Void visitOr(Or o) {
+        return visitBinOp(o);
+    }
+
+    @Override
+    public Void visitAnd(And a) {
+        return visitBinOp(a);
+    }
+}
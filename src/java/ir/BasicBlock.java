@@ -0,0 +1,109 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A basic block: phi instructions, then straight-line instructions, then one terminator. The predecessors are kept in
+ * the order the edges were added, which is the order of the operands of the phi instructions.
+ */
+public final class BasicBlock {
+
+    public final Function function;
+    // renumbered when the blocks are put in their final order
+    String name;
+
+    final List<Instruction> instructions = new ArrayList<>();
+    final List<BasicBlock> predecessors = new ArrayList<>();
+
+    BasicBlock(Function function, String name) {
+        this.function = function;
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public List<Instruction> instructions() {
+        return Collections.unmodifiableList(instructions);
+    }
+
+    public List<BasicBlock> predecessors() {
+        return Collections.unmodifiableList(predecessors);
+    }
+
+    /**
+     * @return the terminator of the block, or null if it does not have one yet
+     */
+    public Instruction terminator() {
+        if (instructions.isEmpty())
+            return null;
+        Instruction last = instructions.get(instructions.size() - 1);
+        return last.isTerminator() ? last : null;
+    }
+
+    public List<BasicBlock> successors() {
+        Instruction terminator = terminator();
+        return terminator == null ? List.of() : terminator.successors();
+    }
+
+    public List<Instruction.Phi> phis() {
+        List<Instruction.Phi> phis = new ArrayList<>();
+        for (Instruction instruction : instructions) {
+            if (!(instruction instanceof Instruction.Phi))
+                break;
+            phis.add((Instruction.Phi) instruction);
+        }
+        return phis;
+    }
+
+    /**
+     * Adds an instruction at the end of the block; a terminator also makes this block a predecessor of its
+     * successors.
+     */
+    public <T extends Instruction> T append(T instruction) {
+        place(instruction);
+        instructions.add(instruction);
+        for (BasicBlock successor : instruction.successors())
+            successor.predecessors.add(this);
+        return instruction;
+    }
+
+    /**
+     * Adds a phi instruction after the ones already at the start of the block.
+     */
+    public Instruction.Phi prepend(Instruction.Phi phi) {
+        place(phi);
+        instructions.add(phis().size(), phi);
+        return phi;
+    }
+
+    private void place(Instruction instruction) {
+        instruction.block = this;
+        if (instruction.hasResult())
+            instruction.id = function.nextId++;
+    }
+
+    /**
+     * Takes an instruction out of the block. Its operands are dropped, so it must no longer be used.
+     */
+    public void remove(Instruction instruction) {
+        instructions.remove(instruction);
+        instruction.detach();
+        instruction.block = null;
+    }
+
+    // forgets a predecessor, along with the operands the phi instructions had for it
+    void removePredecessor(int index) {
+        predecessors.remove(index);
+        for (Instruction.Phi phi : phis())
+            phi.removeOperand(index);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
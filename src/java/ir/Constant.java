@@ -0,0 +1,19 @@
+package ir;
+
+/**
+ * An integer constant. Constants are interned by their {@link Function}, so two constants of a function are equal
+ * exactly when they are the same object.
+ */
+public final class Constant extends Value {
+
+    public final int value;
+
+    Constant(int value) {
+        this.value = value;
+    }
+
+    @Override
+    public String toString() {
+        return Integer.toString(value);
+    }
+}
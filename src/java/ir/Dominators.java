@@ -0,0 +1,108 @@
+package ir;
+
+import java.util.*;
+
+/**
+ * The dominator tree of the blocks of a function reachable from its entry, computed with the iterative algorithm of
+ * Cooper, Harvey and Kennedy over the blocks in reverse postorder.
+ */
+public final class Dominators {
+
+    private final List<BasicBlock> reversePostorder = new ArrayList<>();
+    private final Map<BasicBlock, Integer> order = new HashMap<>();
+    // by position in reverse postorder, the position of the immediate dominator; the entry is its own
+    private final int[] idom;
+
+    public Dominators(Function function) {
+        postorder(function.entry(), new HashSet<>());
+        Collections.reverse(reversePostorder);
+        for (int i = 0; i < reversePostorder.size(); i++)
+            order.put(reversePostorder.get(i), i);
+
+        idom = new int[reversePostorder.size()];
+        Arrays.fill(idom, -1);
+        idom[0] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int b = 1; b < reversePostorder.size(); b++) {
+                int dominator = -1;
+                for (BasicBlock predecessor : reversePostorder.get(b).predecessors) {
+                    Integer p = order.get(predecessor);
+                    if (p == null || idom[p] == -1)
+                        continue;
+                    dominator = dominator == -1 ? p : intersect(p, dominator);
+                }
+                if (idom[b] != dominator) {
+                    idom[b] = dominator;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private void postorder(BasicBlock block, Set<BasicBlock> visited) {
+        // iteratively, so that long chains of blocks do not overflow the stack
+        Deque<Iterator<BasicBlock>> stack = new ArrayDeque<>();
+        Deque<BasicBlock> blocks = new ArrayDeque<>();
+        visited.add(block);
+        stack.push(block.successors().iterator());
+        blocks.push(block);
+        while (!stack.isEmpty()) {
+            Iterator<BasicBlock> successors = stack.peek();
+            if (successors.hasNext()) {
+                BasicBlock successor = successors.next();
+                if (visited.add(successor)) {
+                    stack.push(successor.successors().iterator());
+                    blocks.push(successor);
+                }
+            } else {
+                stack.pop();
+                reversePostorder.add(blocks.pop());
+            }
+        }
+    }
+
+    private int intersect(int b1, int b2) {
+        while (b1 != b2) {
+            while (b1 > b2)
+                b1 = idom[b1];
+            while (b2 > b1)
+                b2 = idom[b2];
+        }
+        return b1;
+    }
+
+    /**
+     * @return the blocks reachable from the entry, in reverse postorder
+     */
+    public List<BasicBlock> reversePostorder() {
+        return Collections.unmodifiableList(reversePostorder);
+    }
+
+    public boolean isReachable(BasicBlock block) {
+        return order.containsKey(block);
+    }
+
+    /**
+     * @return the immediate dominator of a reachable block, or null for the entry
+     */
+    public BasicBlock immediateDominator(BasicBlock block) {
+        int b = order.get(block);
+        return b == 0 ? null : reversePostorder.get(idom[b]);
+    }
+
+    /**
+     * @return whether every path from the entry to {@code b} goes through {@code a}; a block dominates itself
+     */
+    public boolean dominates(BasicBlock a, BasicBlock b) {
+        Integer target = order.get(a);
+        Integer current = order.get(b);
+        if (target == null || current == null)
+            return false;
+        // dominators come earlier in reverse postorder
+        while (current > target)
+            current = idom[current];
+        return current.intValue() == target;
+    }
+}
@@ -0,0 +1,140 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A function of the IR: its parameters, the local variables it keeps in memory, and its control flow graph, whose
+ * first block is the entry.
+ */
+public final class Function {
+
+    /**
+     * A parameter, passed in memory by the caller. Words take 4 bytes, aggregates their size.
+     */
+    public static final class Parameter {
+        public final String name;
+        public final int size;
+
+        Parameter(String name, int size) {
+            this.name = name;
+            this.size = size;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * A local variable kept in memory, because it is an aggregate or its address is taken.
+     */
+    public static final class Slot {
+        public final String name;
+        public final int size;
+
+        Slot(String name, int size) {
+            this.name = name;
+            this.size = size;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    public final String name;
+    // 0 for a function that returns nothing
+    public final int returnSize;
+
+    final List<Parameter> parameters = new ArrayList<>();
+    final List<Slot> slots = new ArrayList<>();
+    final List<BasicBlock> blocks = new ArrayList<>();
+    private final Map<Integer, Constant> constants = new HashMap<>();
+
+    int nextId;
+    private int nextBlock;
+
+    public Function(String name, int returnSize) {
+        this.name = name;
+        this.returnSize = returnSize;
+    }
+
+    public boolean isMain() {
+        return name.equalsIgnoreCase("main");
+    }
+
+    public List<Parameter> parameters() {
+        return Collections.unmodifiableList(parameters);
+    }
+
+    public List<Slot> slots() {
+        return Collections.unmodifiableList(slots);
+    }
+
+    public List<BasicBlock> blocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    public BasicBlock entry() {
+        return blocks.get(0);
+    }
+
+    public Parameter addParameter(String name, int size) {
+        Parameter parameter = new Parameter(name, size);
+        parameters.add(parameter);
+        return parameter;
+    }
+
+    /**
+     * Adds a slot, named after the variable but renamed if another variable of the function has the same name.
+     */
+    public Slot addSlot(String name, int size) {
+        String unique = name;
+        for (int n = 1; isSlotName(unique); n++)
+            unique = name + "." + n;
+        Slot slot = new Slot(unique, size);
+        slots.add(slot);
+        return slot;
+    }
+
+    private boolean isSlotName(String name) {
+        return slots.stream().anyMatch(slot -> slot.name.equals(name));
+    }
+
+    /**
+     * Adds a block at the end of the function; the first block added is the entry.
+     */
+    public BasicBlock addBlock() {
+        BasicBlock block = new BasicBlock(this, "b" + nextBlock++);
+        blocks.add(block);
+        return block;
+    }
+
+    // keeps only the blocks of the order, renumbered in that order; the others must be disconnected from them already
+    void arrange(List<BasicBlock> order) {
+        Set<BasicBlock> kept = new HashSet<>(order);
+        for (BasicBlock block : blocks) {
+            if (!kept.contains(block)) {
+                for (Instruction instruction : new ArrayList<>(block.instructions))
+                    block.remove(instruction);
+            }
+        }
+        blocks.clear();
+        blocks.addAll(order);
+        for (int i = 0; i < blocks.size(); i++)
+            blocks.get(i).name = "b" + i;
+        nextBlock = blocks.size();
+    }
+
+    public Constant constant(int value) {
+        return constants.computeIfAbsent(value, Constant::new);
+    }
+}
@@ -0,0 +1,559 @@
+package ir;
+
+import ast.*;
+
+import java.util.*;
+
+/**
+ * Lowers a Mini C program, once it has passed semantic analysis, to the IR.
+ *
+ * Scalar local variables and parameters whose address is never taken become SSA values: phi instructions are placed
+ * while the code is built, as in Braun et al., "Simple and Efficient Construction of Static Single Assignment Form"
+ * (CC 2013), and the ones that turn out to be trivial are removed straight away. The other variables stay in memory.
+ * Expressions are evaluated for their value by this visitor and for their address by an {@link AddressBuilder}, the
+ * way {@code ExprGen} and {@code AddrGen} do; an aggregate's value is its address.
+ */
+public final class IRBuilder implements ASTVisitor<Value> {
+
+    private final AddressBuilder addresses = new AddressBuilder(this);
+
+    Module module;
+    Function function;
+    // the block the code is added to; after a return, a new block that nothing jumps to
+    BasicBlock block;
+
+    private final Map<String, StructTypeDecl> structs = new HashMap<>();
+    // where the variables kept in memory are
+    final Map<VarDecl, Module.Global> globals = new HashMap<>();
+    final Map<VarDecl, Function.Slot> slots = new HashMap<>();
+    final Map<VarDecl, Function.Parameter> parameters = new HashMap<>();
+    // the parameters declared as arrays, which the caller passes as the address of its array
+    private final Set<VarDecl> arrayParameters = new HashSet<>();
+
+    // the variables of the current function that have to stay in memory because their address is taken
+    private Set<VarDecl> addressTaken;
+    // the variables of the current function that are SSA values, and their definition at the end of each block
+    private final Set<VarDecl> promoted = new HashSet<>();
+    private final Map<VarDecl, Map<BasicBlock, Value>> definitions = new HashMap<>();
+    // the blocks whose predecessors are all known, and the phi instructions of the others, still without operands, in
+    // the order they were created so that they are completed in the same order from one compilation to the next
+    private final Set<BasicBlock> sealed = new HashSet<>();
+    private final Map<BasicBlock, Map<VarDecl, Instruction.Phi>> incompletePhis = new HashMap<>();
+    // the phi instructions whose operands are being looked up
+    private final Set<Instruction.Phi> underConstruction = new HashSet<>();
+
+    public Module build(Program program) {
+        module = new Module();
+        program.structTypeDecls.forEach(st -> structs.put(st.structType.name.toLowerCase(), st));
+        program.varDecls.forEach(vd -> globals.put(vd, module.addVariable(vd.varName, storageSize(vd.type))));
+        program.funDecls.forEach(fd -> fd.accept(this));
+        return module;
+    }
+
+    // chars take a word, like everything else
+    int storageSize(Type type) {
+        return type == BaseType.CHAR ? 4 : size(type);
+    }
+
+    /**
+     * The size of a type as {@link Type#getSize()} gives it, except that structs are found by name, for the struct
+     * types the semantic analysis does not link to their declaration, such as those of return types.
+     */
+    int size(Type type) {
+        if (type instanceof StructType) {
+            int size = 0;
+            for (VarDecl field : declaration((StructType) type).varDecls)
+                size += storageSize(field.type);
+            return size;
+        }
+        if (type instanceof ArrayType) {
+            int size = size(((ArrayType) type).type) * ((ArrayType) type).size;
+            return size + (4 - size % 4);
+        }
+        return type.getSize();
+    }
+
+    StructTypeDecl declaration(StructType type) {
+        return type.structTypeDecl != null ? type.structTypeDecl : structs.get(type.name.toLowerCase());
+    }
+
+    static boolean isAggregate(Type type) {
+        return type instanceof StructType || type instanceof ArrayType;
+    }
+
+    static Instruction.Width width(Type type) {
+        return type == BaseType.CHAR ? Instruction.Width.BYTE : Instruction.Width.WORD;
+    }
+
+    <T extends Instruction> T append(T instruction) {
+        return block.append(instruction);
+    }
+
+    Constant constant(int value) {
+        return function.constant(value);
+    }
+
+    private Value load(Type type, Value address) {
+        return append(new Instruction.Load(width(type), address));
+    }
+
+    @Override
+    public Value visitFunDecl(FunDecl fd) {
+        function = module.addFunction(fd.name, storageSize(fd.type));
+        slots.clear();
+        parameters.clear();
+        arrayParameters.clear();
+        promoted.clear();
+        definitions.clear();
+        sealed.clear();
+        incompletePhis.clear();
+
+        AddressTaken finder = new AddressTaken();
+        fd.accept(finder);
+        addressTaken = finder.variables;
+        block = function.addBlock();
+        seal(block);
+        for (VarDecl param : fd.params) {
+            boolean isArray = param.type instanceof ArrayType;
+            Function.Parameter parameter = function.addParameter(param.varName, isArray ? 4 : storageSize(param.type));
+            if (isArray)
+                arrayParameters.add(param);
+            if ((isArray || !isAggregate(param.type)) && !addressTaken.contains(param)) {
+                promoted.add(param);
+                writeVariable(param, block, load(param.type, append(new Instruction.ParameterAddress(parameter))));
+            } else
+                parameters.put(param, parameter);
+        }
+        fd.block.varDecls.forEach(this::declare);
+        fd.block.stmts.forEach(stmt -> stmt.accept(this));
+        append(new Instruction.Return());
+
+        removeUnreachableBlocks();
+        return null;
+    }
+
+    // a block variable starts at zero each time its declaration is reached, as it does in the code of FunGen
+    private void declare(VarDecl vd) {
+        if (!isAggregate(vd.type) && !addressTaken.contains(vd)) {
+            promoted.add(vd);
+            writeVariable(vd, block, constant(0));
+        } else {
+            Function.Slot slot = function.addSlot(vd.varName, storageSize(vd.type));
+            slots.put(vd, slot);
+            append(new Instruction.Zero(append(new Instruction.LocalAddress(slot)), slot.size));
+        }
+    }
+
+    /**
+     * Drops the blocks nothing jumps to, such as the ones after a return, and puts the others in the order the code
+     * will be laid out in: reverse postorder, visiting the false side of a branch last, so that the code of a loop or
+     * an if statement comes straight after its condition. Phi instructions left with a single operand go too.
+     */
+    private void removeUnreachableBlocks() {
+        List<BasicBlock> order = new ArrayList<>();
+        Set<BasicBlock> visited = new HashSet<>();
+        Deque<BasicBlock> blocks = new ArrayDeque<>();
+        Deque<Iterator<BasicBlock>> successors = new ArrayDeque<>();
+        visited.add(function.entry());
+        blocks.push(function.entry());
+        successors.push(reversed(function.entry().successors()));
+        while (!blocks.isEmpty()) {
+            if (successors.peek().hasNext()) {
+                BasicBlock successor = successors.peek().next();
+                if (visited.add(successor)) {
+                    blocks.push(successor);
+                    successors.push(reversed(successor.successors()));
+                }
+            } else {
+                successors.pop();
+                order.add(blocks.pop());
+            }
+        }
+        Collections.reverse(order);
+
+        for (BasicBlock b : function.blocks) {
+            for (int p = b.predecessors.size() - 1; visited.contains(b) && p >= 0; p--) {
+                if (!visited.contains(b.predecessors.get(p)))
+                    b.removePredecessor(p);
+            }
+        }
+        function.arrange(order);
+        for (BasicBlock b : order) {
+            for (Instruction.Phi phi : b.phis()) {
+                if (phi.block != null)
+                    tryRemoveTrivialPhi(phi);
+            }
+        }
+    }
+
+    private static Iterator<BasicBlock> reversed(List<BasicBlock> blocks) {
+        List<BasicBlock> copy = new ArrayList<>(blocks);
+        Collections.reverse(copy);
+        return copy.iterator();
+    }
+
+    // SSA construction
+
+    private void writeVariable(VarDecl variable, BasicBlock block, Value value) {
+        definitions.computeIfAbsent(variable, v -> new HashMap<>()).put(block, value);
+    }
+
+    private Value readVariable(VarDecl variable, BasicBlock block) {
+        Map<BasicBlock, Value> blocks = definitions.get(variable);
+        Value value = blocks == null ? null : blocks.get(block);
+        return value != null ? value.resolve() : readVariableRecursive(variable, block);
+    }
+
+    private Value readVariableRecursive(VarDecl variable, BasicBlock block) {
+        Value value;
+        if (!sealed.contains(block)) {
+            Instruction.Phi phi = block.prepend(new Instruction.Phi());
+            incompletePhis.computeIfAbsent(block, b -> new LinkedHashMap<>()).put(variable, phi);
+            value = phi;
+        } else if (block.predecessors.size() == 1) {
+            value = readVariable(variable, block.predecessors.get(0));
+        } else if (block.predecessors.isEmpty()) {
+            // the entry, or a block nothing jumps to
+            value = constant(0);
+        } else {
+            Instruction.Phi phi = block.prepend(new Instruction.Phi());
+            writeVariable(variable, block, phi);
+            value = addPhiOperands(variable, phi);
+        }
+        writeVariable(variable, block, value);
+        return value;
+    }
+
+    private Value addPhiOperands(VarDecl variable, Instruction.Phi phi) {
+        underConstruction.add(phi);
+        for (BasicBlock predecessor : phi.block.predecessors)
+            phi.addOperand(readVariable(variable, predecessor));
+        underConstruction.remove(phi);
+        return tryRemoveTrivialPhi(phi);
+    }
+
+    // a phi whose operands are all the same value, or itself, is that value
+    private Value tryRemoveTrivialPhi(Instruction.Phi phi) {
+        Value same = null;
+        for (Value operand : phi.operands) {
+            if (operand == same || operand == phi)
+                continue;
+            if (same != null)
+                return phi;
+            same = operand;
+        }
+        if (same == null)
+            same = constant(0);
+        List<Instruction> users = new ArrayList<>(phi.users);
+        phi.replaceAllUsesWith(same);
+        phi.block.remove(phi);
+        for (Instruction user : users) {
+            if (user instanceof Instruction.Phi && user != phi && user.block != null && sealed.contains(user.block)
+                    && !underConstruction.contains(user))
+                tryRemoveTrivialPhi((Instruction.Phi) user);
+        }
+        return same;
+    }
+
+    /**
+     * Records that all the predecessors of a block are known, and completes the phi instructions it got meanwhile.
+     */
+    private void seal(BasicBlock block) {
+        sealed.add(block);
+        Map<VarDecl, Instruction.Phi> phis = incompletePhis.remove(block);
+        if (phis != null)
+            phis.forEach(this::addPhiOperands);
+    }
+
+    // statements
+
+    @Override
+    public Value visitBlock(Block b) {
+        b.varDecls.forEach(this::declare);
+        b.stmts.forEach(stmt -> stmt.accept(this));
+        return null;
+    }
+
+    @Override
+    public Value visitWhile(While w) {
+        BasicBlock header = function.addBlock();
+        append(new Instruction.Jump(header));
+        block = header;
+        Value condition = w.expr.accept(this);
+        BasicBlock body = function.addBlock();
+        BasicBlock exit = function.addBlock();
+        append(new Instruction.Branch(condition, body, exit));
+        seal(body);
+        block = body;
+        w.stmt.accept(this);
+        append(new Instruction.Jump(header));
+        seal(header);
+        seal(exit);
+        block = exit;
+        return null;
+    }
+
+    @Override
+    public Value visitIf(If i) {
+        Value condition = i.expr.accept(this);
+        BasicBlock then = function.addBlock();
+        BasicBlock otherwise = i.elseStmt == null ? null : function.addBlock();
+        BasicBlock end = function.addBlock();
+        append(new Instruction.Branch(condition, then, otherwise == null ? end : otherwise));
+        seal(then);
+        block = then;
+        i.ifStmt.accept(this);
+        append(new Instruction.Jump(end));
+        if (otherwise != null) {
+            seal(otherwise);
+            block = otherwise;
+            i.elseStmt.accept(this);
+            append(new Instruction.Jump(end));
+        }
+        seal(end);
+        block = end;
+        return null;
+    }
+
+    @Override
+    public Value visitReturn(Return r) {
+        if (r.expr == null)
+            append(new Instruction.Return());
+        else {
+            Value value = r.expr.accept(this);
+            append(new Instruction.Return(value, r.expr.type instanceof StructType ? size(r.expr.type) : 0));
+        }
+        block = function.addBlock();
+        seal(block);
+        return null;
+    }
+
+    @Override
+    public Value visitAssign(Assign a) {
+        if (a.leftExpr instanceof VarExpr && promoted.contains(((VarExpr) a.leftExpr).vd)) {
+            writeVariable(((VarExpr) a.leftExpr).vd, block, a.rightExpr.accept(this));
+            return null;
+        }
+        Value address = a.leftExpr.accept(addresses);
+        Value value = a.rightExpr.accept(this);
+        if (a.leftExpr.type instanceof StructType)
+            append(new Instruction.Copy(address, value, size(a.leftExpr.type)));
+        else
+            append(new Instruction.Store(width(a.leftExpr.type), address, value));
+        return null;
+    }
+
+    @Override
+    public Value visitExprStmt(ExprStmt es) {
+        es.expr.accept(this);
+        return null;
+    }
+
+    // expressions
+
+    @Override
+    public Value visitVarExpr(VarExpr v) {
+        if (promoted.contains(v.vd))
+            return readVariable(v.vd, block);
+        if (arrayParameters.contains(v.vd))
+            return append(new Instruction.Load(Instruction.Width.WORD, v.accept(addresses)));
+        if (isAggregate(v.type))
+            return v.accept(addresses);
+        return load(v.type, v.accept(addresses));
+    }
+
+    @Override
+    public Value visitSizeOfExpr(SizeOfExpr so) {
+        return constant(size(so.insideType));
+    }
+
+    @Override
+    public Value visitArrayAccessExpr(ArrayAccessExpr aa) {
+        Value address = aa.accept(addresses);
+        return isAggregate(aa.type) ? address : load(aa.type, address);
+    }
+
+    @Override
+    public Value visitFieldAccessExpr(FieldAccessExpr fa) {
+        Value address = fa.accept(addresses);
+        return isAggregate(fa.type) ? address : load(fa.type, address);
+    }
+
+    @Override
+    public Value visitFunCallExpr(FunCallExpr fc) {
+        List<Value> arguments = new ArrayList<>();
+        int[] aggregateSizes = new int[fc.params.size()];
+        for (int i = 0; i < fc.params.size(); i++) {
+            Expr param = fc.params.get(i);
+            arguments.add(param.accept(this));
+            aggregateSizes[i] = param.type instanceof StructType ? size(param.type) : 0;
+        }
+        int returnSize = storageSize(fc.funDecl.type);
+        if (fc.type instanceof StructType) {
+            // the caller's copy of the returned struct
+            Value destination = append(new Instruction.LocalAddress(function.addSlot(fc.fnName, returnSize)));
+            append(new Instruction.Call(fc.fnName, arguments, aggregateSizes, returnSize, destination));
+            return destination;
+        }
+        Instruction.Call call = append(new Instruction.Call(fc.fnName, arguments, aggregateSizes, returnSize, null));
+        return call.hasResult() ? call : null;
+    }
+
+    @Override
+    public Value visitTypeCastExpr(TypeCastExpr tc) {
+        return tc.expr.accept(this);
+    }
+
+    @Override
+    public Value visitValueAtExpr(ValueAtExpr va) {
+        Value address = va.accept(addresses);
+        return isAggregate(va.type) ? address : load(va.type, address);
+    }
+
+    @Override
+    public Value visitAddressOfExpr(AddressOfExpr ao) {
+        return ao.expr.accept(addresses);
+    }
+
+    @Override
+    public Value visitIntLiteral(IntLiteral i) {
+        return constant(i.value);
+    }
+
+    @Override
+    public Value visitChrLiteral(ChrLiteral c) {
+        return constant(c.value);
+    }
+
+    @Override
+    public Value visitStrLiteral(StrLiteral str) {
+        return str.accept(addresses);
+    }
+
+    private Value binary(Instruction.Binary.Operator operator, BinOp op) {
+        Value left = op.left.accept(this);
+        Value right = op.right.accept(this);
+        return append(new Instruction.Binary(operator, left, right));
+    }
+
+    @Override
+    public Value visitAdd(Add a) {
+        return binary(Instruction.Binary.Operator.ADD, a);
+    }
+
+    @Override
+    public Value visitSub(Sub s) {
+        return binary(Instruction.Binary.Operator.SUB, s);
+    }
+
+    @Override
+    public Value visitMul(Mul m) {
+        return binary(Instruction.Binary.Operator.MUL, m);
+    }
+
+    @Override
+    public Value visitDiv(Div d) {
+        return binary(Instruction.Binary.Operator.DIV, d);
+    }
+
+    @Override
+    public Value visitMod(Mod m) {
+        return binary(Instruction.Binary.Operator.MOD, m);
+    }
+
+    @Override
+    public Value visitGt(Gt g) {
+        return binary(Instruction.Binary.Operator.GT, g);
+    }
+
+    @Override
+    public Value visitLt(Lt l) {
+        return binary(Instruction.Binary.Operator.LT, l);
+    }
+
+    @Override
+    public Value visitGe(Ge g) {
+        return binary(Instruction.Binary.Operator.GE, g);
+    }
+
+    @Override
+    public Value visitLe(Le l) {
+        return binary(Instruction.Binary.Operator.LE, l);
+    }
+
+    @Override
+    public Value visitNe(Ne n) {
+        return binary(Instruction.Binary.Operator.NE, n);
+    }
+
+    @Override
+    public Value visitEq(Eq e) {
+        return binary(Instruction.Binary.Operator.EQ, e);
+    }
+
+    // the right operand is only evaluated when the left one does not decide the result, which is 0 or 1
+    private Value shortCircuit(BinOp op, boolean isOr) {
+        Value left = op.left.accept(this);
+        BasicBlock right = function.addBlock();
+        BasicBlock end = function.addBlock();
+        BasicBlock decided = block;
+        append(isOr ? new Instruction.Branch(left, end, right) : new Instruction.Branch(left, right, end));
+        seal(right);
+        block = right;
+        Value result = append(new Instruction.Binary(Instruction.Binary.Operator.NE, op.right.accept(this), constant(0)));
+        append(new Instruction.Jump(end));
+        seal(end);
+        Instruction.Phi phi = end.prepend(new Instruction.Phi());
+        for (BasicBlock predecessor : end.predecessors)
+            phi.addOperand(predecessor == decided ? constant(isOr ? 1 : 0) : result);
+        block = end;
+        return phi;
+    }
+
+    @Override
+    public Value visitOr(Or o) {
+        return shortCircuit(o, true);
+    }
+
+    @Override
+    public Value visitAnd(And a) {
+        return shortCircuit(a, false);
+    }
+
+    // nodes that are not statements or expressions of a function
+
+    @Override
+    public Value visitBaseType(BaseType bt) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitStructType(StructType st) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitPointerType(PointerType pt) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitArrayType(ArrayType at) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitStructTypeDecl(StructTypeDecl st) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitProgram(Program p) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public Value visitVarDecl(VarDecl vd) {
+        throw new ShouldNotReach();
+    }
+}
@@ -0,0 +1,470 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A three-address instruction of the IR. An instruction that produces a value is that value: its operands are the
+ * values it reads, each of them a {@link Constant} or another instruction of the same function.
+ *
+ * Every basic block ends with exactly one terminator ({@link Jump}, {@link Branch} or {@link Return}), and its
+ * {@link Phi} instructions, if any, come before all the others.
+ */
+public abstract class Instruction extends Value {
+
+    final List<Value> operands = new ArrayList<>();
+
+    BasicBlock block;
+
+    // the number of the value in its function, or -1 while it is not in a block or when it produces no value
+    int id = -1;
+
+    Instruction(Value... operands) {
+        for (Value operand : operands)
+            addOperand(operand);
+    }
+
+    /**
+     * @return the block this instruction is in, or null if it was removed
+     */
+    public BasicBlock block() {
+        return block;
+    }
+
+    public List<Value> operands() {
+        return Collections.unmodifiableList(operands);
+    }
+
+    public Value operand(int index) {
+        return operands.get(index);
+    }
+
+    void addOperand(Value operand) {
+        operands.add(operand);
+        operand.users.add(this);
+    }
+
+    void setOperand(int index, Value operand) {
+        operands.get(index).users.remove(this);
+        operands.set(index, operand);
+        operand.users.add(this);
+    }
+
+    void removeOperand(int index) {
+        operands.remove(index).users.remove(this);
+    }
+
+    // drops the operands, so that the values this instruction used no longer count it among their users
+    void detach() {
+        for (Value operand : operands)
+            operand.users.remove(this);
+        operands.clear();
+    }
+
+    /**
+     * @return whether this instruction produces a value
+     */
+    public abstract boolean hasResult();
+
+    public boolean isTerminator() {
+        return false;
+    }
+
+    /**
+     * @return the blocks control goes to after this instruction, which are only those of a terminator
+     */
+    public List<BasicBlock> successors() {
+        return List.of();
+    }
+
+    public abstract void accept(InstructionVisitor v);
+
+    @Override
+    public String toString() {
+        return "%" + id;
+    }
+
+    /**
+     * The size of the memory a {@link Load} or a {@link Store} accesses. Bytes are sign-extended when loaded.
+     */
+    public enum Width {
+        BYTE, WORD;
+
+        public static Width of(int size) {
+            return size == 1 ? BYTE : WORD;
+        }
+    }
+
+    public static final class Binary extends Instruction {
+
+        public enum Operator {
+            ADD, SUB, MUL, DIV, MOD, LT, LE, GT, GE, EQ, NE;
+
+            public boolean isComparison() {
+                return compareTo(LT) >= 0;
+            }
+
+            @Override
+            public String toString() {
+                return name().toLowerCase();
+            }
+        }
+
+        public final Operator operator;
+
+        public Binary(Operator operator, Value left, Value right) {
+            super(left, right);
+            this.operator = operator;
+        }
+
+        public Value left() {
+            return operand(0);
+        }
+
+        public Value right() {
+            return operand(1);
+        }
+
+        public boolean hasResult() {
+            return true;
+        }
+
+        public void accept(InstructionVisitor v) {
+            v.visitBinary(this);
+        }
+    }
+
+    public static final class Load extends Instruction {
+
+        public final Width width;
+
+        public Load(Width width, Value address) {
+            super(address);
+            this.width = width;
+        }
+
+        public Value address() {
+            return operand(0);
+        }
+
+        public boolean hasResult() {
+            return true;
+        }
+
+        public void accept(InstructionVisitor v) {
+            v.visitLoad(this);
+        }
+    }
+
+    public static final class Store extends Instruction {
+
+        public final Width width;
+
+        public Store(Width width, Value address, Value value) {
+            super(address, value);
+            this.width = width;
+        }
+
+        public Value address() {
+            return operand(0);
+        }
+
+        public Value value() {
+            return operand(1);
+        }
+
+        public boolean hasResult() {
+            return false;
+        }
+
+        public void accept(InstructionVisitor v) {
+            v.visitStore(this);
+        }
+    }
+
+    /**
+     * Sets {@code size} bytes of memory to zero, a whole number of words from a word-aligned address.
+     */
+    public static final class Zero extends Instruction {
+
+        public final int size;
+
+        public Zero(Value address, int size) {
+            super(address);
+            this.size = size;
+        }
+
+        public Value address() {
+            return operand(0);
+        }
+
+        public boolean hasResult() {
+            return false;
+        }
+
+        public void accept(InstructionVisitor v) {
+            v.visitZero(this);
+        }
+    }
+
+    /**
+     * Copies an aggregate of {@code size} bytes, a whole number of words, from one address to another.
+     */
+    public static final class Copy extends Instruction {
+
+        public final int size;
+
+        public Copy(Value destination, Value source, int size) {
+            super(destination, source);
+            this.size = size;
+        }
+
+        public Value destination() {
+            return operand(0);
+        }
+
+        public Value source() {
+            return operand(1);
+        }
+
+        public boolean hasResult() {
+            return false;
+        }
+
+        public void accept(InstructionVisitor v) {
+            v.visitCopy(this);
+        }
+    }
+
+    /**
+     * The address of a local variable kept in memory.
+     */
+    public static final class LocalAddress extends Instruction {
+
+        public final Function.Slot slot;
+
+        public LocalAddress(Function.Slot slot) {
+            this.slot = slot;
+        }
+
+        public boolean hasResult() {
+            return true;
+        }
+
+        public void accept(InstructionVisitor v) {
+            v.visitLocalAddress(this);
+        }
+    }
+
+    /**
+     * The address of a parameter, where the caller put its value.
+     */
+    public static final class ParameterAddress extends Instruction {
+
+        public final Function.Parameter parameter;
+
+        public ParameterAddress(Function.Parameter parameter) {
+            this.parameter = parameter;
+        }
+
+        public boolean hasResult() {
+            return true;
+        }
+
+        public void accept(InstructionVisitor v) {
+            v.visitParameterAddress(this);
+        }
+    }
+
+    /**
+     * The address of a global variable or a string.
+     */
+    public static final class GlobalAddress extends Instruction {
+
+        public final Module.Global global;
+
+        public GlobalAddress(Module.Global global) {
+            this.global = global;
+        }
+
+        public boolean hasResult() {
+            return true;
+        }
+
+        public void accept(InstructionVisitor v) {
+            v.visitGlobalAddress(this);
+        }
+    }
+
+    /**
+     * A call of a function of the module or of a built-in one. A word argument is passed by value; an aggregate one
+     * is passed as its address, along with its size, and copied by the call. A function that returns an aggregate
+     * has it copied to the {@code destination} address given to the call; one that returns a word makes it the value
+     * of the call.
+     */
+    public static final class Call extends Instruction {
+
+        public final String callee;
+        // by argument, the size of the aggregate whose address is passed, or 0 for a word
+        private final int[] aggregateSizes;
+        // 0 when the callee returns nothing
+        public final int returnSize;
+        private final boolean hasDestination;
+
+        public Call(String callee, List<Value> arguments, int[] aggregateSizes, int returnSize, Value destination) {
+            this.callee = callee;
+            this.aggregateSizes = aggregateSizes.clone();
+            this.returnSize = returnSize;
+            this.hasDestination = destination != null;
+            arguments.forEach(this::addOperand);
+            if (destination != null)
+                addOperand(destination);
+        }
+
+        public List<Value> arguments() {
+            return operands().subList(0, aggregateSizes.length);
+        }
+
+        /**
+         * @return the size of the aggregate passed as the argument, or 0 if the argument is a word
+         */
+        public int aggregateSize(int argument) {
+            return aggregateSizes[argument];
+        }
+
+        /**
+         * @return the address the returned aggregate is copied to, or null if the callee returns a word or nothing
+         */
+        public Value destination() {
+            return hasDestination ? operand(aggregateSizes.length) : null;
+        }
+
+        public boolean hasResult() {
+            return returnSize > 0 && !hasDestination;
+        }
+
+        public void accept(InstructionVisitor v) {
+            v.visitCall(this);
+        }
+    }
+
+    /**
+     * Chooses among its operands by the predecessor control came from: operand i is the value when coming from the
+     * i-th predecessor of the block.
+     */
+    public static final class Phi extends Instruction {
+
+        public Phi() {
+        }
+
+        public Value incoming(BasicBlock predecessor) {
+            return operand(block.predecessors.indexOf(predecessor));
+        }
+
+        public boolean hasResult() {
+            return true;
+        }
+
+        public void accept(InstructionVisitor v) {
+            v.visitPhi(this);
+        }
+    }
+
+    public static final class Jump extends Instruction {
+
+        public final BasicBlock target;
+
+        public Jump(BasicBlock target) {
+            this.target = target;
+        }
+
+        public boolean hasResult() {
+            return false;
+        }
+
+        public boolean isTerminator() {
+            return true;
+        }
+
+        public List<BasicBlock> successors() {
+            return List.of(target);
+        }
+
+        public void accept(InstructionVisitor v) {
+            v.visitJump(this);
+        }
+    }
+
+    /**
+     * Goes to {@code ifTrue} when the condition is not zero, and to {@code ifFalse} when it is.
+     */
+    public static final class Branch extends Instruction {
+
+        public final BasicBlock ifTrue;
+        public final BasicBlock ifFalse;
+
+        public Branch(Value condition, BasicBlock ifTrue, BasicBlock ifFalse) {
+            super(condition);
+            this.ifTrue = ifTrue;
+            this.ifFalse = ifFalse;
+        }
+
+        public Value condition() {
+            return operand(0);
+        }
+
+        public boolean hasResult() {
+            return false;
+        }
+
+        public boolean isTerminator() {
+            return true;
+        }
+
+        public List<BasicBlock> successors() {
+            return List.of(ifTrue, ifFalse);
+        }
+
+        public void accept(InstructionVisitor v) {
+            v.visitBranch(this);
+        }
+    }
+
+    /**
+     * Returns from the function, with a word, the address of an aggregate of {@code aggregateSize} bytes to copy to
+     * the caller, or nothing.
+     */
+    public static final class Return extends Instruction {
+
+        public final int aggregateSize;
+
+        public Return() {
+            this.aggregateSize = 0;
+        }
+
+        public Return(Value value, int aggregateSize) {
+            super(value);
+            this.aggregateSize = aggregateSize;
+        }
+
+        /**
+         * @return the value returned, or null
+         */
+        public Value value() {
+            return operands.isEmpty() ? null : operand(0);
+        }
+
+        public boolean hasResult() {
+            return false;
+        }
+
+        public boolean isTerminator() {
+            return true;
+        }
+
+        public void accept(InstructionVisitor v) {
+            v.visitReturn(this);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ir;
+
+public interface InstructionVisitor {
+
+    public void visitBinary(Instruction.Binary binary);
+    public void visitLoad(Instruction.Load load);
+    public void visitStore(Instruction.Store store);
+    public void visitZero(Instruction.Zero zero);
+    public void visitCopy(Instruction.Copy copy);
+    public void visitLocalAddress(Instruction.LocalAddress address);
+    public void visitParameterAddress(Instruction.ParameterAddress address);
+    public void visitGlobalAddress(Instruction.GlobalAddress address);
+    public void visitCall(Instruction.Call call);
+    public void visitPhi(Instruction.Phi phi);
+    public void visitJump(Instruction.Jump jump);
+    public void visitBranch(Instruction.Branch branch);
+    public void visitReturn(Instruction.Return ret);
+
+}
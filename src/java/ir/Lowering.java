@@ -0,0 +1,394 @@
+package ir;
+
+import gen.StrengthReduction;
+import gen.asm.*;
+
+import java.util.*;
+
+/**
+ * Lowers the IR of a module to MIPS assembly with virtual registers, ready for a register allocator: one data
+ * section for the globals and the strings, then one text section for each function.
+ *
+ * Functions keep the calling convention of {@code FunGen}. The caller pushes the arguments in order, then room for
+ * the returned value and $ra; the callee saves $fp, points it at the saved value, and finds the returned value 8 bytes
+ * above it with the parameters, the last one first, right above that. The local variables kept in memory are below
+ * the registers pushed by pushRegisters and are addressed from $sp, which only moves while a call is being made.
+ *
+ * Each SSA value gets a virtual register. A phi instruction becomes copies at the end of its predecessors; the copies
+ * of an edge that leaves a block with two successors go in a stub at the end of the function instead, and the copies
+ * that read phi instructions of the same block go through fresh registers, so that they all read the values from
+ * before the edge.
+ */
+public final class Lowering {
+
+    // the system call numbers of the built-in functions
+    private static final int PRINT_I = 1, PRINT_S = 4, PRINT_C = 11, READ_I = 5, READ_C = 12, MCMALLOC = 9, EXIT = 10;
+
+    private final AssemblyProgram program = new AssemblyProgram();
+    private final CompilationContext context = program.context;
+    private final StrengthReduction strengthReduction = new StrengthReduction(context);
+    private final Map<String, Label> functions = new HashMap<>();
+    private final Map<Module.Global, Label> globals = new HashMap<>();
+
+    public AssemblyProgram lower(Module module) {
+        AssemblyProgram.Section data = program.newSection(AssemblyProgram.Section.Type.DATA);
+        for (Module.Global global : module.globals) {
+            Label label = context.createLabel(global.text == null ? global.name : "");
+            globals.put(global, label);
+            data.emit(label);
+            if (global.text == null)
+                data.emit(new Directive("space " + global.size));
+            else {
+                // keep what follows aligned on a word
+                data.emit(new Directive("asciiz \"" + Module.escape(global.text) + "\""));
+                data.emit(new Directive("space " + (4 - global.size % 4)));
+            }
+        }
+
+        Label main = context.createLabel("MAIN");
+        for (Function function : module.functions)
+            functions.put(function.name, function.isMain() ? main : context.createLabel(function.name));
+        program.newSection(AssemblyProgram.Section.Type.TEXT).emit(OpCode.J, main);
+        for (Function function : module.functions)
+            new FunctionLowering(function).lower();
+        return program;
+    }
+
+    private static boolean isImmediate(Value value) {
+        return value instanceof Constant && ((Constant) value).value == (short) ((Constant) value).value;
+    }
+
+    private static int immediate(Value value) {
+        return ((Constant) value).value;
+    }
+
+    private final class FunctionLowering implements InstructionVisitor {
+
+        private final Function function;
+        private final AssemblyProgram.Section section = program.newSection(AssemblyProgram.Section.Type.TEXT);
+        private final Map<Instruction, Register> registers = new HashMap<>();
+        private final Map<BasicBlock, Label> labels = new HashMap<>();
+        // from $fp, and from $sp outside of calls
+        private final Map<Function.Parameter, Integer> parameterOffsets = new HashMap<>();
+        private final Map<Function.Slot, Integer> slotOffsets = new HashMap<>();
+        private final int localSize;
+        // the edges that need a stub of copies, by the label of the stub
+        private final Map<Label, BasicBlock[]> stubs = new LinkedHashMap<>();
+
+        private BasicBlock block;
+        // the block laid out after the current one, which it can fall through to
+        private BasicBlock next;
+
+        FunctionLowering(Function function) {
+            this.function = function;
+            int offset = 0;
+            for (int i = function.parameters.size() - 1; i >= 0; i--) {
+                Function.Parameter parameter = function.parameters.get(i);
+                parameterOffsets.put(parameter, 8 + function.returnSize + offset);
+                offset += parameter.size;
+            }
+            offset = 0;
+            for (Function.Slot slot : function.slots) {
+                slotOffsets.put(slot, offset);
+                offset += slot.size;
+            }
+            localSize = offset;
+            for (BasicBlock block : function.blocks)
+                labels.put(block, context.createLabel(function.name + "_" + block.name));
+        }
+
+        void lower() {
+            section.emit(functions.get(function.name));
+            section.emit(OpCode.ADDI, Register.Arch.sp, Register.Arch.sp, -4);
+            section.emit(OpCode.SW, Register.Arch.fp, Register.Arch.sp, 0);
+            section.emit(OpCode.ADDI, Register.Arch.fp, Register.Arch.sp, 0);
+            section.emit(OpCode.PUSH_REGISTERS);
+            if (localSize > 0)
+                section.emit(OpCode.ADDI, Register.Arch.sp, Register.Arch.sp, -localSize);
+
+            for (int b = 0; b < function.blocks.size(); b++) {
+                block = function.blocks.get(b);
+                next = b + 1 < function.blocks.size() ? function.blocks.get(b + 1) : null;
+                if (!block.predecessors.isEmpty())
+                    section.emit(labels.get(block));
+                for (Instruction instruction : block.instructions) {
+                    if (!(instruction instanceof Instruction.Phi))
+                        instruction.accept(this);
+                }
+            }
+            stubs.forEach((label, edge) -> {
+                section.emit(label);
+                copies(edge[0], edge[1]);
+                section.emit(OpCode.J, labels.get(edge[1]));
+            });
+        }
+
+        private Register register(Instruction instruction) {
+            return registers.computeIfAbsent(instruction, i -> context.createVirtualRegister());
+        }
+
+        // the register holding a value; a constant other than zero is loaded into a register of its own
+        private Register use(Value value) {
+            if (value instanceof Instruction)
+                return register((Instruction) value);
+            int constant = ((Constant) value).value;
+            if (constant == 0)
+                return Register.Arch.zero;
+            Register register = context.createVirtualRegister();
+            section.emit(OpCode.LI, register, constant);
+            return register;
+        }
+
+        private void move(Register destination, Value value) {
+            if (value instanceof Constant)
+                section.emit(OpCode.LI, destination, immediate(value));
+            else
+                section.emit(OpCode.ADDI, destination, register((Instruction) value), 0);
+        }
+
+        // the copies that give the phi instructions of a block their values on the edge from the predecessor
+        private void copies(BasicBlock predecessor, BasicBlock successor) {
+            List<Instruction.Phi> phis = successor.phis();
+            if (phis.isEmpty())
+                return;
+            int index = successor.predecessors.indexOf(predecessor);
+            boolean readsPhis = phis.stream().anyMatch(phi -> phi.operand(index) instanceof Instruction.Phi
+                    && ((Instruction.Phi) phi.operand(index)).block == successor);
+            if (!readsPhis) {
+                phis.forEach(phi -> move(register(phi), phi.operand(index)));
+                return;
+            }
+            List<Register> values = new ArrayList<>();
+            for (Instruction.Phi phi : phis) {
+                Register value = context.createVirtualRegister();
+                move(value, phi.operand(index));
+                values.add(value);
+            }
+            for (int i = 0; i < phis.size(); i++)
+                section.emit(OpCode.ADDI, register(phis.get(i)), values.get(i), 0);
+        }
+
+        // the label to branch to for an edge of a block with two successors
+        private Label edge(BasicBlock successor) {
+            if (successor.phis().isEmpty())
+                return labels.get(successor);
+            Label stub = context.createLabel(function.name + "_" + block.name + "_" + successor.name);
+            stubs.put(stub, new BasicBlock[]{block, successor});
+            return stub;
+        }
+
+        private void copyWords(Register destination, int destinationOffset, Register source, int sourceOffset, int size) {
+            for (int i = 0; i < size; i += 4) {
+                Register word = context.createVirtualRegister();
+                section.emit(OpCode.LW, word, source, sourceOffset + i);
+                section.emit(OpCode.SW, word, destination, destinationOffset + i);
+            }
+        }
+
+        public void visitBinary(Instruction.Binary binary) {
+            Register result = register(binary);
+            Value left = binary.left();
+            Value right = binary.right();
+            switch (binary.operator) {
+                case ADD:
+                    if (isImmediate(right))
+                        section.emit(OpCode.ADDI, result, use(left), immediate(right));
+                    else if (isImmediate(left))
+                        section.emit(OpCode.ADDI, result, use(right), immediate(left));
+                    else
+                        section.emit(OpCode.ADD, result, use(left), use(right));
+                    break;
+                case SUB:
+                    if (isImmediate(right) && immediate(right) != Short.MIN_VALUE)
+                        section.emit(OpCode.ADDI, result, use(left), -immediate(right));
+                    else
+                        section.emit(OpCode.SUB, result, use(left), use(right));
+                    break;
+                case MUL:
+                    if (right instanceof Constant && left instanceof Instruction
+                            && strengthReduction.multiply(section, result, use(left), immediate(right)))
+                        break;
+                    if (left instanceof Constant && right instanceof Instruction
+                            && strengthReduction.multiply(section, result, use(right), immediate(left)))
+                        break;
+                    section.emit(OpCode.MULT, use(left), use(right));
+                    section.emit(OpCode.MFLO, result);
+                    break;
+                case DIV:
+                    if (right instanceof Constant && left instanceof Instruction
+                            && strengthReduction.divide(section, result, use(left), immediate(right)))
+                        break;
+                    section.emit(OpCode.DIV, use(left), use(right));
+                    section.emit(OpCode.MFLO, result);
+                    break;
+                case MOD:
+                    if (right instanceof Constant && left instanceof Instruction
+                            && strengthReduction.remainder(section, result, use(left), immediate(right)))
+                        break;
+                    section.emit(OpCode.DIV, use(left), use(right));
+                    section.emit(OpCode.MFHI, result);
+                    break;
+                case LT:
+                    if (isImmediate(right))
+                        section.emit(OpCode.SLTI, result, use(left), immediate(right));
+                    else
+                        section.emit(OpCode.SLT, result, use(left), use(right));
+                    break;
+                case GT:
+                    section.emit(OpCode.SLT, result, use(right), use(left));
+                    break;
+                case LE: {
+                    Register greater = context.createVirtualRegister();
+                    section.emit(OpCode.SLT, greater, use(right), use(left));
+                    section.emit(OpCode.XORI, result, greater, 1);
+                    break;
+                }
+                case GE: {
+                    Register less = context.createVirtualRegister();
+                    if (isImmediate(right))
+                        section.emit(OpCode.SLTI, less, use(left), immediate(right));
+                    else
+                        section.emit(OpCode.SLT, less, use(left), use(right));
+                    section.emit(OpCode.XORI, result, less, 1);
+                    break;
+                }
+                case EQ:
+                case NE: {
+                    Register difference = context.createVirtualRegister();
+                    section.emit(OpCode.XOR, difference, use(left), use(right));
+                    if (binary.operator == Instruction.Binary.Operator.EQ)
+                        section.emit(OpCode.SLTIU, result, difference, 1);
+                    else
+                        section.emit(OpCode.SLTU, result, Register.Arch.zero, difference);
+                    break;
+                }
+            }
+        }
+
+        public void visitLoad(Instruction.Load load) {
+            section.emit(load.width == Instruction.Width.BYTE ? OpCode.LB : OpCode.LW, register(load), use(load.address()), 0);
+        }
+
+        public void visitStore(Instruction.Store store) {
+            Register address = use(store.address());
+            section.emit(store.width == Instruction.Width.BYTE ? OpCode.SB : OpCode.SW, use(store.value()), address, 0);
+        }
+
+        public void visitZero(Instruction.Zero zero) {
+            Register address = use(zero.address());
+            for (int i = 0; i < zero.size; i += 4)
+                section.emit(OpCode.SW, Register.Arch.zero, address, i);
+        }
+
+        public void visitCopy(Instruction.Copy copy) {
+            copyWords(use(copy.destination()), 0, use(copy.source()), 0, copy.size);
+        }
+
+        public void visitLocalAddress(Instruction.LocalAddress address) {
+            section.emit(OpCode.ADDI, register(address), Register.Arch.sp, slotOffsets.get(address.slot));
+        }
+
+        public void visitParameterAddress(Instruction.ParameterAddress address) {
+            section.emit(OpCode.ADDI, register(address), Register.Arch.fp, parameterOffsets.get(address.parameter));
+        }
+
+        public void visitGlobalAddress(Instruction.GlobalAddress address) {
+            section.emit(OpCode.LA, register(address), globals.get(address.global));
+        }
+
+        public void visitCall(Instruction.Call call) {
+            switch (call.callee) {
+                case "print_i": syscall(PRINT_I, call); return;
+                case "print_s": syscall(PRINT_S, call); return;
+                case "print_c": syscall(PRINT_C, call); return;
+                case "read_i":  syscall(READ_I, call); return;
+                case "read_c":  syscall(READ_C, call); return;
+                case "mcmalloc": syscall(MCMALLOC, call); return;
+                default: break;
+            }
+
+            List<Value> arguments = call.arguments();
+            List<Register> values = new ArrayList<>();
+            for (Value argument : arguments)
+                values.add(use(argument));
+            int pushed = 0;
+            for (int i = 0; i < arguments.size(); i++) {
+                int size = call.aggregateSize(i) > 0 ? call.aggregateSize(i) : 4;
+                section.emit(OpCode.ADDI, Register.Arch.sp, Register.Arch.sp, -size);
+                if (call.aggregateSize(i) > 0)
+                    copyWords(Register.Arch.sp, 0, values.get(i), 0, size);
+                else
+                    section.emit(OpCode.SW, values.get(i), Register.Arch.sp, 0);
+                pushed += size;
+            }
+            Register destination = call.destination() == null ? null : use(call.destination());
+            section.emit(OpCode.ADDI, Register.Arch.sp, Register.Arch.sp, -(call.returnSize + 4));
+            section.emit(OpCode.SW, Register.Arch.ra, Register.Arch.sp, 0);
+            section.emit(OpCode.JAL, functions.get(call.callee));
+            section.emit(OpCode.LW, Register.Arch.ra, Register.Arch.sp, 0);
+            // a result nobody uses is not loaded
+            if (call.hasResult() && !call.users.isEmpty())
+                section.emit(OpCode.LW, register(call), Register.Arch.sp, 4);
+            else if (destination != null)
+                copyWords(destination, 0, Register.Arch.sp, 4, call.returnSize);
+            section.emit(OpCode.ADDI, Register.Arch.sp, Register.Arch.sp, pushed + call.returnSize + 4);
+        }
+
+        private void syscall(int number, Instruction.Call call) {
+            if (!call.arguments().isEmpty())
+                section.emit(OpCode.ADDI, Register.Arch.a0, use(call.arguments().get(0)), 0);
+            section.emit(OpCode.LI, Register.Arch.v0, number);
+            section.emit(OpCode.SYSCALL);
+            if (call.hasResult() && !call.users.isEmpty())
+                section.emit(OpCode.ADDI, register(call), Register.Arch.v0, 0);
+        }
+
+        public void visitPhi(Instruction.Phi phi) {
+            // lowered as copies on the edges into its block
+        }
+
+        public void visitJump(Instruction.Jump jump) {
+            jumpTo(jump.target);
+        }
+
+        private void jumpTo(BasicBlock target) {
+            copies(block, target);
+            if (target != next)
+                section.emit(OpCode.J, labels.get(target));
+        }
+
+        public void visitBranch(Instruction.Branch branch) {
+            if (branch.condition() instanceof Constant) {
+                jumpTo(immediate(branch.condition()) != 0 ? branch.ifTrue : branch.ifFalse);
+                return;
+            }
+            Register condition = use(branch.condition());
+            if (branch.ifFalse == next && branch.ifFalse.phis().isEmpty()) {
+                section.emit(OpCode.BNE, condition, Register.Arch.zero, edge(branch.ifTrue));
+                return;
+            }
+            section.emit(OpCode.BEQ, condition, Register.Arch.zero, edge(branch.ifFalse));
+            jumpTo(branch.ifTrue);
+        }
+
+        public void visitReturn(Instruction.Return ret) {
+            if (function.isMain()) {
+                // main is jumped to, and returns by ending the program
+                section.emit(OpCode.LI, Register.Arch.v0, EXIT);
+                section.emit(OpCode.SYSCALL);
+                return;
+            }
+            Value value = ret.value();
+            if (value != null && ret.aggregateSize > 0)
+                copyWords(Register.Arch.fp, 8, use(value), 0, ret.aggregateSize);
+            else if (value != null)
+                section.emit(OpCode.SW, use(value), Register.Arch.fp, 8);
+            if (localSize > 0)
+                section.emit(OpCode.ADDI, Register.Arch.sp, Register.Arch.sp, localSize);
+            section.emit(OpCode.POP_REGISTERS);
+            section.emit(OpCode.ADDI, Register.Arch.sp, Register.Arch.sp, 4);
+            section.emit(OpCode.LW, Register.Arch.fp, Register.Arch.fp, 0);
+            section.emit(OpCode.JR, Register.Arch.ra);
+        }
+    }
+}
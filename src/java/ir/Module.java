@@ -0,0 +1,81 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A whole program in the IR: the global variables, the strings, and the functions.
+ */
+public final class Module {
+
+    /**
+     * A global variable, or a string when it has a text.
+     */
+    public static final class Global {
+        public final String name;
+        public final int size;
+        // null for a variable
+        public final String text;
+
+        Global(String name, int size, String text) {
+            this.name = name;
+            this.size = size;
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    final List<Global> globals = new ArrayList<>();
+    final List<Function> functions = new ArrayList<>();
+    private int strings;
+
+    public List<Global> globals() {
+        return Collections.unmodifiableList(globals);
+    }
+
+    public List<Function> functions() {
+        return Collections.unmodifiableList(functions);
+    }
+
+    public Global addVariable(String name, int size) {
+        Global global = new Global(name, size, null);
+        globals.add(global);
+        return global;
+    }
+
+    public Global addString(String text) {
+        Global global = new Global("str" + strings++, text.length() + 1, text);
+        globals.add(global);
+        return global;
+    }
+
+    public Function addFunction(String name, int returnSize) {
+        Function function = new Function(name, returnSize);
+        functions.add(function);
+        return function;
+    }
+
+    // the text of a string with its special characters escaped, as it appears between quotes in the assembly
+    static String escape(String text) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            switch (c) {
+                case '\t': escaped.append("\\t"); break;
+                case '\b': escaped.append("\\b"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                case '\f': escaped.append("\\f"); break;
+                case '"': escaped.append("\\\""); break;
+                case '\\': escaped.append("\\\\"); break;
+                case '\0': escaped.append("\\0"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,143 @@
+package ir;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Writes the IR in a textual form: the globals of the module, then each function with its parameters, its slots and
+ * its blocks, one instruction per line. Values are named {@code %n}, blocks {@code bn} and globals {@code @name}.
+ */
+public final class Printer {
+
+    private final PrintWriter writer;
+
+    public Printer(PrintWriter writer) {
+        this.writer = writer;
+    }
+
+    public void print(Module module) {
+        for (Module.Global global : module.globals) {
+            if (global.text == null)
+                writer.println("global @" + global.name + ", " + global.size);
+            else
+                writer.println("string @" + global.name + " \"" + Module.escape(global.text) + "\"");
+        }
+        for (Function function : module.functions) {
+            writer.println();
+            print(function);
+        }
+        writer.flush();
+    }
+
+    public void print(Function function) {
+        String parameters = function.parameters.stream().map(p -> p.name + ": " + p.size).collect(Collectors.joining(", "));
+        writer.println("function " + function.name + "(" + parameters + ")"
+                + (function.returnSize > 0 ? ": " + function.returnSize : "") + " {");
+        for (Function.Slot slot : function.slots)
+            writer.println("  slot " + slot.name + ", " + slot.size);
+        for (BasicBlock block : function.blocks) {
+            writer.println(block.name + ":" + (block.predecessors.isEmpty() ? "" : "    ; from " + names(block.predecessors)));
+            for (Instruction instruction : block.instructions)
+                writer.println("  " + toString(instruction));
+        }
+        writer.println("}");
+        writer.flush();
+    }
+
+    private static String names(List<?> items) {
+        return items.stream().map(Object::toString).collect(Collectors.joining(", "));
+    }
+
+    /**
+     * @return the text of an instruction, such as {@code %3 = add %1, 4}
+     */
+    public static String toString(Instruction instruction) {
+        StringBuilder text = new StringBuilder();
+        if (instruction.hasResult())
+            text.append(instruction).append(" = ");
+        instruction.accept(new InstructionVisitor() {
+            public void visitBinary(Instruction.Binary binary) {
+                text.append(binary.operator).append(' ').append(binary.left()).append(", ").append(binary.right());
+            }
+
+            public void visitLoad(Instruction.Load load) {
+                text.append("load.").append(suffix(load.width)).append(' ').append(load.address());
+            }
+
+            public void visitStore(Instruction.Store store) {
+                text.append("store.").append(suffix(store.width)).append(' ').append(store.address()).append(", ")
+                        .append(store.value());
+            }
+
+            public void visitZero(Instruction.Zero zero) {
+                text.append("zero ").append(zero.address()).append(", ").append(zero.size);
+            }
+
+            public void visitCopy(Instruction.Copy copy) {
+                text.append("copy ").append(copy.destination()).append(", ").append(copy.source()).append(", ")
+                        .append(copy.size);
+            }
+
+            public void visitLocalAddress(Instruction.LocalAddress address) {
+                text.append("local ").append(address.slot);
+            }
+
+            public void visitParameterAddress(Instruction.ParameterAddress address) {
+                text.append("param ").append(address.parameter);
+            }
+
+            public void visitGlobalAddress(Instruction.GlobalAddress address) {
+                text.append("global @").append(address.global);
+            }
+
+            public void visitCall(Instruction.Call call) {
+                text.append("call ").append(call.callee).append('(');
+                List<Value> arguments = call.arguments();
+                for (int i = 0; i < arguments.size(); i++) {
+                    if (i > 0)
+                        text.append(", ");
+                    if (call.aggregateSize(i) > 0)
+                        text.append("struct ").append(call.aggregateSize(i)).append(' ');
+                    text.append(arguments.get(i));
+                }
+                text.append(')');
+                if (call.destination() != null)
+                    text.append(" into ").append(call.destination());
+            }
+
+            public void visitPhi(Instruction.Phi phi) {
+                text.append("phi ");
+                for (int i = 0; i < phi.operands.size(); i++) {
+                    if (i > 0)
+                        text.append(", ");
+                    BasicBlock predecessor = phi.block == null || i >= phi.block.predecessors.size() ? null
+                            : phi.block.predecessors.get(i);
+                    text.append('[').append(phi.operands.get(i)).append(", ").append(predecessor).append(']');
+                }
+            }
+
+            public void visitJump(Instruction.Jump jump) {
+                text.append("jump ").append(jump.target);
+            }
+
+            public void visitBranch(Instruction.Branch branch) {
+                text.append("branch ").append(branch.condition()).append(", ").append(branch.ifTrue).append(", ")
+                        .append(branch.ifFalse);
+            }
+
+            public void visitReturn(Instruction.Return ret) {
+                text.append("return");
+                if (ret.aggregateSize > 0)
+                    text.append(" struct ").append(ret.aggregateSize);
+                if (ret.value() != null)
+                    text.append(' ').append(ret.value());
+            }
+        });
+        return text.toString();
+    }
+
+    private static char suffix(Instruction.Width width) {
+        return width == Instruction.Width.BYTE ? 'b' : 'w';
+    }
+}
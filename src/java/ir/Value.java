@@ -0,0 +1,46 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A value of the IR: a constant, or the result of an instruction. Every value is a word; bytes are widened when they
+ * are loaded, and aggregates (structs and arrays) are handled through their addresses.
+ *
+ * A value keeps the instructions that use it, once per operand, so that it can be replaced everywhere at once.
+ */
+public abstract class Value {
+
+    final List<Instruction> users = new ArrayList<>();
+
+    // the value that replaced this one, which the SSA construction follows for the definitions it still refers to
+    Value replacement;
+
+    /**
+     * @return the instructions that use this value, once for each operand it is
+     */
+    public List<Instruction> users() {
+        return users;
+    }
+
+    /**
+     * Makes every instruction that uses this value use {@code value} instead.
+     */
+    public void replaceAllUsesWith(Value value) {
+        for (Instruction user : new ArrayList<>(users)) {
+            for (int i = 0; i < user.operands.size(); i++) {
+                if (user.operands.get(i) == this)
+                    user.setOperand(i, value);
+            }
+        }
+        replacement = value;
+    }
+
+    // the value this one stands for now, after any replacements
+    Value resolve() {
+        Value value = this;
+        while (value.replacement != null)
+            value = value.replacement;
+        return value;
+    }
+}
@@ -0,0 +1,128 @@
+package ir;
+
+import java.util.*;
+
+/**
+ * Checks that the IR of a module is well formed: every block ends with its only terminator and starts with its phi
+ * instructions, which have an operand for each predecessor; the edges agree with the terminators; every block is
+ * reachable from the entry; and every operand is a constant or a value of the same function whose definition
+ * dominates the use, the end of the corresponding predecessor standing for the use of a phi operand.
+ */
+public final class Verifier {
+
+    private final List<String> errors = new ArrayList<>();
+
+    /**
+     * @return the problems found in the module, none if it is well formed
+     */
+    public List<String> verify(Module module) {
+        module.functions.forEach(this::verify);
+        return errors;
+    }
+
+    public List<String> verify(Function function) {
+        if (function.blocks.isEmpty()) {
+            error(function, null, "has no blocks");
+            return errors;
+        }
+        Set<BasicBlock> blocks = new HashSet<>(function.blocks);
+        // where each value is defined: its block, and its position in the block
+        Map<Instruction, Integer> positions = new HashMap<>();
+        for (BasicBlock block : function.blocks) {
+            for (int i = 0; i < block.instructions.size(); i++) {
+                Instruction instruction = block.instructions.get(i);
+                if (positions.put(instruction, i) != null)
+                    error(function, block, Printer.toString(instruction) + " appears twice");
+                if (instruction.block != block)
+                    error(function, block, Printer.toString(instruction) + " belongs to another block");
+            }
+        }
+
+        if (!function.entry().predecessors.isEmpty())
+            error(function, function.entry(), "is the entry but has predecessors");
+        for (BasicBlock block : function.blocks)
+            verifyStructure(function, block, blocks);
+        if (!errors.isEmpty())
+            return errors;
+
+        Dominators dominators = new Dominators(function);
+        for (BasicBlock block : function.blocks) {
+            if (!dominators.isReachable(block)) {
+                error(function, block, "is not reachable from the entry");
+                continue;
+            }
+            for (int i = 0; i < block.instructions.size(); i++) {
+                Instruction instruction = block.instructions.get(i);
+                for (int o = 0; o < instruction.operands.size(); o++) {
+                    Value operand = instruction.operands.get(o);
+                    if (operand instanceof Constant) {
+                        if (operand != function.constant(((Constant) operand).value))
+                            error(function, block, Printer.toString(instruction) + " uses a constant of another function");
+                        continue;
+                    }
+                    Instruction definition = (Instruction) operand;
+                    if (!positions.containsKey(definition)) {
+                        error(function, block, Printer.toString(instruction) + " uses " + operand + ", which is not in the function");
+                        continue;
+                    }
+                    if (!definition.hasResult()) {
+                        error(function, block, Printer.toString(instruction) + " uses " + operand + ", which has no value");
+                        continue;
+                    }
+                    boolean dominated;
+                    if (instruction instanceof Instruction.Phi)
+                        dominated = dominators.dominates(definition.block, block.predecessors.get(o));
+                    else if (definition.block == block)
+                        dominated = positions.get(definition) < i;
+                    else
+                        dominated = dominators.dominates(definition.block, block);
+                    if (!dominated)
+                        error(function, block, Printer.toString(instruction) + " uses " + operand
+                                + " where its definition does not dominate");
+                }
+            }
+        }
+        return errors;
+    }
+
+    private void verifyStructure(Function function, BasicBlock block, Set<BasicBlock> blocks) {
+        if (block.function != function)
+            error(function, block, "belongs to another function");
+        if (block.terminator() == null) {
+            error(function, block, "has no terminator");
+            return;
+        }
+        boolean phis = true;
+        for (int i = 0; i < block.instructions.size(); i++) {
+            Instruction instruction = block.instructions.get(i);
+            if (instruction.isTerminator() && i != block.instructions.size() - 1)
+                error(function, block, "has " + Printer.toString(instruction) + " before its end");
+            if (instruction instanceof Instruction.Phi) {
+                if (!phis)
+                    error(function, block, "has " + Printer.toString(instruction) + " after other instructions");
+                if (instruction.operands.size() != block.predecessors.size())
+                    error(function, block, "has " + Printer.toString(instruction) + " with " + instruction.operands.size()
+                            + " operands for " + block.predecessors.size() + " predecessors");
+            } else
+                phis = false;
+        }
+
+        // each edge is recorded once by the terminator and once among the predecessors of its target
+        for (BasicBlock successor : block.successors()) {
+            if (!blocks.contains(successor))
+                error(function, block, "jumps to " + successor + ", which is not in the function");
+            else if (Collections.frequency(successor.predecessors, block) != Collections.frequency(block.successors(), successor))
+                error(function, block, "jumps to " + successor + ", which does not have it as a predecessor");
+        }
+        for (BasicBlock predecessor : block.predecessors) {
+            if (!blocks.contains(predecessor))
+                error(function, block, "has " + predecessor + ", which is not in the function, as a predecessor");
+            else if (!predecessor.successors().contains(block))
+                error(function, block, "has " + predecessor + " as a predecessor, which does not jump to it");
+        }
+    }
+
+    private void error(Function function, BasicBlock block, String message) {
+        errors.add(function.name + (block == null ? "" : ": " + block.name) + " " + message);
+    }
+}
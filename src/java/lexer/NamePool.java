@@ -0,0 +1,72 @@
+package lexer;
+
+/**
+ * An intern pool for lexemes. Lookups are made directly on a character buffer so that a {@link String} is only
+ * allocated the first time a given name is seen.
+ */
+final class NamePool {
+
+    private String[] table = new String[256];
+    private int size;
+
+    /**
+     * Returns the unique string holding the {@code length} first characters of {@code chars}.
+     */
+    String intern(char[] chars, int length) {
+        int hash = hash(chars, length);
+        int mask = table.length - 1;
+        int i = hash & mask;
+        String entry;
+        while ((entry = table[i]) != null) {
+            if (entry.length() == length && equals(entry, chars, length))
+                return entry;
+            i = (i + 1) & mask;
+        }
+
+        String name = new String(chars, 0, length);
+        table[i] = name;
+        if (++size * 2 > table.length)
+            grow();
+        return name;
+    }
+
+    private void grow() {
+        String[] old = table;
+        table = new String[old.length * 2];
+        int mask = table.length - 1;
+        for (String name : old) {
+            if (name == null)
+                continue;
+            int i = name.hashCode() & mask;
+            while (table[i] != null)
+                i = (i + 1) & mask;
+            table[i] = name;
+        }
+    }
+
+    // same hash as String.hashCode so entries can be rehashed without their characters
+    private static int hash(char[] chars, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++)
+            h = 31 * h + chars[i];
+        return h;
+    }
+
+    private static boolean equals(String name, char[] chars, int length) {
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[i])
+                return false;
+        }
+        return true;
+    }
+
+    static boolean equals(char[] name, char[] chars, int length) {
+        if (name.length != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (name[i] != chars[i])
+                return false;
+        }
+        return true;
+    }
+}
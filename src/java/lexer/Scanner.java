@@ -1,14 +1,32 @@
 package lexer;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 
 /**
  * @author cdubach
  */
 public class Scanner {
 
+    /**
+     * Sentinel returned by {@link #peekChar()} and {@link #nextChar()} once the end of the input has been reached.
+     */
+    public static final char EOF = '\uFFFF';
+
     private BufferedReader input;
     private int peeked = -1;
+    private int consumed;
+
+    // used instead of input when the whole source has been loaded in memory (see buffered)
+    private char[] buffer;
+    private int length;
+    private int pos;
 
     private int line = 1;
     private int column = 1;
@@ -17,6 +35,46 @@ public class Scanner {
         input = new BufferedReader(new FileReader(source));
     }
 
+    /**
+     * Creates a scanner over an in-memory source of {@code length} characters. Characters are read by index
+     * arithmetic and the end of the input is signalled by the {@link #EOF} sentinel, which is written in place after
+     * the last character: the array is used as is and must have room for it.
+     */
+    public Scanner(char[] source, int length) {
+        if (source.length <= length)
+            throw new IllegalArgumentException("no room for the end of input sentinel");
+        this.buffer = source;
+        this.buffer[length] = EOF;
+        this.length = length;
+    }
+
+    /**
+     * Maps the whole source file in memory and decodes it in a single pass, rather than reading it one character at
+     * a time through a {@link BufferedReader}.
+     */
+    public static Scanner buffered(File source) throws IOException {
+        try (FileInputStream in = new FileInputStream(source);
+             FileChannel channel = in.getChannel()) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return decode(bytes);
+        }
+    }
+
+    /**
+     * Creates a scanner over a source already in memory, decoded with the same charset as {@link #buffered(File)}.
+     */
+    public static Scanner decode(ByteBuffer bytes) {
+        // malformed input is replaced, as Charset.decode does
+        CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        // decoded straight into the buffer the scanner reads, with one more char for the sentinel
+        CharBuffer chars = CharBuffer.allocate((int) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte()) + 1);
+        decoder.decode(bytes, chars, true);
+        decoder.flush(chars);
+        return new Scanner(chars.array(), chars.position());
+    }
+
 
     public int getColumn() {
         return column;
@@ -26,30 +84,49 @@ public class Scanner {
         return line;
     }
 
-    public char peek() throws IOException {
-        if (peeked != -1)
-            return (char)peeked;
-
-        int r = input.read();
-        if (r == -1)
-            throw new EOFException();
-
-        peeked = r;
-        return (char) r;
+    /**
+     * Returns the number of characters consumed so far, i.e. the offset of the next character in the source.
+     */
+    public int getOffset() {
+        return buffer != null ? pos : consumed;
     }
 
+    /**
+     * Returns the next character without consuming it, or {@link #EOF} at the end of the input.
+     */
+    public char peekChar() {
+        if (buffer != null)
+            return buffer[pos];
+
+        if (peeked == -1) {
+            int r = read();
+            if (r == -1)
+                return EOF;
+            peeked = r;
+        }
+        return (char) peeked;
+    }
 
-    public char next() throws IOException {
+    /**
+     * Consumes the next character, or returns {@link #EOF} without moving at the end of the input.
+     */
+    public char nextChar() {
         char r;
-        if (peeked != -1) {
+        if (buffer != null) {
+            if (pos == length)
+                return EOF;
+            r = buffer[pos++];
+        } else if (peeked != -1) {
             r = (char) peeked;
             peeked = -1;
         } else {
-            int i = input.read();
+            int i = read();
             if (i == -1)
-                throw new EOFException();
+                return EOF;
             r = (char) i;
         }
+        if (buffer == null)
+            consumed++;
 
         if (r == '\n') {
             line++;
@@ -60,9 +137,28 @@ public class Scanner {
         return r;
     }
 
+    /**
+     * Tells if all the characters of the input have been consumed.
+     */
+    public boolean atEnd() {
+        if (buffer != null)
+            return pos == length;
+        return peekChar() == EOF && peeked == -1;
+    }
+
+    // a failure to read fails the compilation, not the JVM it runs in
+    private int read() {
+        try {
+            return input.read();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
 
     public void close() throws IOException {
-        input.close();
+        if (input != null)
+            input.close();
     }
 
 
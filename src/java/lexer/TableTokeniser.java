@@ -0,0 +1,417 @@
+package lexer;
+
+import lexer.Token.TokenClass;
+
+
+/**
+ * A tokeniser driven by a character-class table rather than by chains of branches. Whitespace and comments are
+ * skipped iteratively, operators are recognised by a two-state DFA, keywords are found with a perfect hash and
+ * identifiers are interned so that repeated names share one {@link String}.
+ *
+ * It produces the same token stream as {@link Tokeniser}, except that tokens are reported at their start position
+ * and that a token ending exactly at the end of the file is not a lexing error.
+ */
+public class TableTokeniser extends Tokeniser {
+
+    // character classes
+    private static final byte OTHER  = 0;
+    private static final byte SPACE  = 1;
+    private static final byte ALPHA  = 2;
+    private static final byte DIGIT  = 3;
+    private static final byte SINGLE = 4; // always a one character token
+    private static final byte DOUBLE = 5; // may be followed by a second character (e.g. = and ==)
+    private static final byte SLASH  = 6;
+    private static final byte QUOTE  = 7;
+    private static final byte DQUOTE = 8;
+    private static final byte HASH   = 9;
+
+    private static final byte[] CLASSES = new byte[128];
+    private static final TokenClass[] FIRST = new TokenClass[128];
+    private static final char[] SECOND_CHAR = new char[128];
+    private static final TokenClass[] SECOND = new TokenClass[128];
+
+    private static void single(char c, TokenClass tokenClass) {
+        CLASSES[c] = SINGLE;
+        FIRST[c] = tokenClass;
+    }
+
+    private static void pair(char c, TokenClass alone, char second, TokenClass both) {
+        CLASSES[c] = DOUBLE;
+        FIRST[c] = alone;
+        SECOND_CHAR[c] = second;
+        SECOND[c] = both;
+    }
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            if (Character.isWhitespace(c))
+                CLASSES[c] = SPACE;
+            else if (Character.isLetter(c) || c == '_')
+                CLASSES[c] = ALPHA;
+            else if (Character.isDigit(c))
+                CLASSES[c] = DIGIT;
+        }
+        single('+', TokenClass.PLUS);
+        single('-', TokenClass.MINUS);
+        single('*', TokenClass.ASTERIX);
+        single('%', TokenClass.REM);
+        single('{', TokenClass.LBRA);
+        single('}', TokenClass.RBRA);
+        single('(', TokenClass.LPAR);
+        single(')', TokenClass.RPAR);
+        single('[', TokenClass.LSBR);
+        single(']', TokenClass.RSBR);
+        single(';', TokenClass.SC);
+        single(',', TokenClass.COMMA);
+        single('.', TokenClass.DOT);
+        pair('=', TokenClass.ASSIGN, '=', TokenClass.EQ);
+        pair('<', TokenClass.LT, '=', TokenClass.LE);
+        pair('>', TokenClass.GT, '=', TokenClass.GE);
+        pair('&', TokenClass.AND, '&', TokenClass.LOGAND);
+        pair('!', null, '=', TokenClass.NE);
+        pair('|', null, '|', TokenClass.LOGOR);
+        CLASSES['/'] = SLASH;
+        CLASSES['\''] = QUOTE;
+        CLASSES['"'] = DQUOTE;
+        CLASSES['#'] = HASH;
+    }
+
+    private static byte classOf(char c) {
+        if (c < 128)
+            return CLASSES[c];
+        if (Character.isWhitespace(c))
+            return SPACE;
+        if (Character.isLetter(c))
+            return ALPHA;
+        if (Character.isDigit(c))
+            return DIGIT;
+        return OTHER;
+    }
+
+    // Keywords are hashed on their first and last characters; the table is collision free for the Mini-C keywords.
+    private static final char[][] KEYWORDS = new char[16][];
+    private static final TokenClass[] KEYWORD_CLASSES = new TokenClass[16];
+
+    private static int keywordHash(char first, char last) {
+        return (4 * first + last) & 15;
+    }
+
+    private static void keyword(String name, TokenClass tokenClass) {
+        int h = keywordHash(name.charAt(0), name.charAt(name.length() - 1));
+        assert KEYWORDS[h] == null : "keyword hash collision on " + name;
+        KEYWORDS[h] = name.toCharArray();
+        KEYWORD_CLASSES[h] = tokenClass;
+    }
+
+    static {
+        keyword("int", TokenClass.INT);
+        keyword("void", TokenClass.VOID);
+        keyword("char", TokenClass.CHAR);
+        keyword("if", TokenClass.IF);
+        keyword("else", TokenClass.ELSE);
+        keyword("while", TokenClass.WHILE);
+        keyword("return", TokenClass.RETURN);
+        keyword("struct", TokenClass.STRUCT);
+        keyword("sizeof", TokenClass.SIZEOF);
+    }
+
+    private final Scanner scanner;
+    private final NamePool names = new NamePool();
+
+    // scratch buffer the current lexeme is accumulated into
+    private char[] lexeme = new char[64];
+    private int lexemeLength;
+
+    // result of the last call to scan
+    protected TokenClass tokenClass;
+    protected String data;
+    protected int line;
+    protected int column;
+    protected int start;
+
+    public TableTokeniser(Scanner scanner) {
+        super(scanner);
+        this.scanner = scanner;
+    }
+
+    @Override
+    public Token nextToken() {
+        scan();
+        return new Token(tokenClass, data, line, column);
+    }
+
+    /**
+     * Lexes the whole remaining input into a {@link TokenArray}, without allocating a {@link Token} per lexeme.
+     * The array ends with the {@link TokenClass#EOF} token.
+     */
+    public TokenArray tokenise() {
+        TokenArray tokens = new TokenArray(1024);
+        do {
+            scan();
+            tokens.add(tokenClass, data, start, scanner.getOffset() - start, line, column);
+        } while (tokenClass != TokenClass.EOF);
+        return tokens;
+    }
+
+    /**
+     * Recognises the next token and records it in {@link #tokenClass}, {@link #data}, {@link #line},
+     * {@link #column} and {@link #start} without allocating a {@link Token}.
+     */
+    protected void scan() {
+        data = "";
+        while (true) {
+            line = scanner.getLine();
+            column = scanner.getColumn();
+            start = scanner.getOffset();
+            if (scanner.atEnd()) {
+                tokenClass = TokenClass.EOF;
+                return;
+            }
+
+            char c = scanner.nextChar();
+            switch (classOf(c)) {
+                case SPACE:
+                    continue;
+                case SLASH:
+                    if (scanner.peekChar() == '/') {
+                        skipLineComment();
+                        continue;
+                    }
+                    if (scanner.peekChar() == '*') {
+                        scanner.nextChar();
+                        if (skipBlockComment())
+                            continue;
+                        unterminated();
+                        return;
+                    }
+                    tokenClass = TokenClass.DIV;
+                    return;
+                case SINGLE:
+                    tokenClass = FIRST[c];
+                    return;
+                case DOUBLE:
+                    if (!scanner.atEnd() && scanner.peekChar() == SECOND_CHAR[c]) {
+                        scanner.nextChar();
+                        tokenClass = SECOND[c];
+                        return;
+                    }
+                    if (FIRST[c] == null)
+                        break;
+                    tokenClass = FIRST[c];
+                    return;
+                case ALPHA:
+                    scanWord(c);
+                    return;
+                case DIGIT:
+                    scanIntLiteral(c);
+                    return;
+                case QUOTE:
+                    scanCharLiteral();
+                    return;
+                case DQUOTE:
+                    scanStringLiteral();
+                    return;
+                case HASH:
+                    scanInclude();
+                    return;
+                default:
+                    break;
+            }
+
+            // if we reach this point, it means we did not recognise a valid token
+            invalid(c, line, column, "");
+            return;
+        }
+    }
+
+    private void invalid(char c, int line, int column, String data) {
+        error(c, line, column);
+        this.tokenClass = TokenClass.INVALID;
+        this.data = data;
+    }
+
+    // the input ended in the middle of a token
+    private void unterminated() {
+        invalid('\0', scanner.getLine(), scanner.getColumn(), "");
+    }
+
+    private void skipLineComment() {
+        while (!scanner.atEnd() && scanner.nextChar() != '\n') ;
+    }
+
+    // returns false if the input ended before the comment was closed
+    private boolean skipBlockComment() {
+        while (!scanner.atEnd()) {
+            if (scanner.nextChar() == '*' && !scanner.atEnd() && scanner.peekChar() == '/') {
+                scanner.nextChar();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void append(char c) {
+        if (lexemeLength == lexeme.length) {
+            char[] larger = new char[lexeme.length * 2];
+            System.arraycopy(lexeme, 0, larger, 0, lexemeLength);
+            lexeme = larger;
+        }
+        lexeme[lexemeLength++] = c;
+    }
+
+    private void scanWord(char c) {
+        lexemeLength = 0;
+        append(c);
+        while (!scanner.atEnd()) {
+            byte cls = classOf(scanner.peekChar());
+            if (cls != ALPHA && cls != DIGIT)
+                break;
+            append(scanner.nextChar());
+        }
+
+        if (lexemeLength >= 2 && lexemeLength <= 6) {
+            int h = keywordHash(lexeme[0], lexeme[lexemeLength - 1]);
+            char[] keyword = KEYWORDS[h];
+            if (keyword != null && NamePool.equals(keyword, lexeme, lexemeLength)) {
+                tokenClass = KEYWORD_CLASSES[h];
+                return;
+            }
+        }
+        tokenClass = TokenClass.IDENTIFIER;
+        data = names.intern(lexeme, lexemeLength);
+    }
+
+    private void scanIntLiteral(char c) {
+        lexemeLength = 0;
+        append(c);
+        while (!scanner.atEnd() && classOf(scanner.peekChar()) == DIGIT)
+            append(scanner.nextChar());
+        tokenClass = TokenClass.INT_LITERAL;
+        data = names.intern(lexeme, lexemeLength);
+    }
+
+    private void scanCharLiteral() {
+        if (scanner.atEnd()) {
+            unterminated();
+            return;
+        }
+        char c = scanner.nextChar();
+        char first = c;
+        if (c == '\\') { // If has an escape character
+            if (scanner.atEnd()) {
+                unterminated();
+                return;
+            }
+            char nextChar = scanner.nextChar();
+            char escapeChar = mapCharToEscapeChar(nextChar);
+            if (escapeChar == '!') {
+                if (!scanner.atEnd() && scanner.peekChar() == '\'')
+                    scanner.nextChar();
+                invalid(nextChar, line, column, "\\" + nextChar);
+                return;
+            }
+            c = escapeChar;
+        } else if (c == '\'') { // Doesn't accept ''
+            if (scanner.atEnd()) {
+                unterminated();
+                return;
+            }
+            scanner.nextChar();
+            invalid(c, line, column, "'");
+            return;
+        }
+
+        if (scanner.atEnd()) {
+            unterminated();
+            return;
+        }
+        char close = scanner.nextChar();
+        if (close == '\'') {
+            tokenClass = TokenClass.CHAR_LITERAL;
+            data = String.valueOf(c);
+            return;
+        }
+        invalid(first, line, column, "'");
+    }
+
+    private void scanStringLiteral() {
+        lexemeLength = 0;
+        String failure = null;
+        while (true) {
+            if (scanner.atEnd()) {
+                unterminated();
+                return;
+            }
+            char c = scanner.peekChar();
+            if (c == '"')
+                break;
+            if (c == '\n') {
+                invalid(c, scanner.getLine(), scanner.getColumn(), "\\n");
+                return;
+            }
+
+            scanner.nextChar();
+            if (c == '\\') {
+                if (scanner.atEnd()) {
+                    unterminated();
+                    return;
+                }
+                char nextChar = scanner.nextChar();
+                char escapeChar = mapCharToEscapeChar(nextChar);
+                if (escapeChar == '!') {
+                    error(nextChar, scanner.getLine(), scanner.getColumn());
+                    failure = "\\" + nextChar;
+                }
+                append(escapeChar);
+                continue;
+            }
+            append(c);
+        }
+        scanner.nextChar();
+        if (failure != null) {
+            tokenClass = TokenClass.INVALID;
+            data = failure;
+            return;
+        }
+        tokenClass = TokenClass.STRING_LITERAL;
+        data = new String(lexeme, 0, lexemeLength);
+    }
+
+    private void scanInclude() {
+        for (char c : INCLUDE) {
+            if (scanner.atEnd()) {
+                unterminated();
+                return;
+            }
+            if (scanner.peekChar() == c) {
+                scanner.nextChar();
+                continue;
+            }
+            char unexpected = scanner.peekChar();
+            while (!scanner.atEnd() && classOf(scanner.peekChar()) != SPACE)
+                scanner.nextChar();
+            if (!scanner.atEnd())
+                scanner.nextChar();
+            invalid(unexpected, line, column, "#");
+            return;
+        }
+        tokenClass = TokenClass.INCLUDE;
+    }
+
+    private static final char[] INCLUDE = "include".toCharArray();
+
+    private static char mapCharToEscapeChar(char c) {
+        switch (c) {
+            case 't': return '\t';
+            case 'b': return '\b';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 'f': return '\f';
+            case '\'': return '\'';
+            case '"': return '"';
+            case '\\': return '\\';
+            case '0': return '\0';
+            default: return '!'; //Placeholder for wrong
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package lexer;
+
+import lexer.Token.TokenClass;
+
+/**
+ * A whole file worth of tokens stored as parallel primitive arrays (struct of arrays) rather than as one
+ * {@link Token} object per lexeme. Tokens are addressed by index, the last one always being {@link TokenClass#EOF}.
+ */
+public final class TokenArray {
+
+    private static final TokenClass[] CLASSES = TokenClass.values();
+
+    private byte[] classes;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int[] columns;
+    // only set for identifiers, literals and invalid tokens, the other entries are null
+    private String[] data;
+    private int size;
+
+    TokenArray(int capacity) {
+        classes = new byte[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        columns = new int[capacity];
+        data = new String[capacity];
+    }
+
+    void add(TokenClass tokenClass, String data, int start, int length, int line, int column) {
+        if (size == classes.length)
+            grow();
+        classes[size] = (byte) tokenClass.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        columns[size] = column;
+        this.data[size] = data.isEmpty() ? null : data;
+        size++;
+    }
+
+    private void grow() {
+        int capacity = classes.length * 2;
+        classes = java.util.Arrays.copyOf(classes, capacity);
+        starts = java.util.Arrays.copyOf(starts, capacity);
+        lengths = java.util.Arrays.copyOf(lengths, capacity);
+        lines = java.util.Arrays.copyOf(lines, capacity);
+        columns = java.util.Arrays.copyOf(columns, capacity);
+        data = java.util.Arrays.copyOf(data, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public TokenClass tokenClass(int i) {
+        return CLASSES[classes[i]];
+    }
+
+    public String data(int i) {
+        String d = data[i];
+        return d == null ? "" : d;
+    }
+
+    /**
+     * Returns the offset of the first character of the {@code i}th token in the source.
+     */
+    public int start(int i) {
+        return starts[i];
+    }
+
+    /**
+     * Returns the number of source characters the {@code i}th token spans.
+     */
+    public int length(int i) {
+        return lengths[i];
+    }
+
+    public int line(int i) {
+        return lines[i];
+    }
+
+    public int column(int i) {
+        return columns[i];
+    }
+
+    /**
+     * Materialises the {@code i}th token as a {@link Token} object.
+     */
+    public Token token(int i) {
+        return new Token(tokenClass(i), data(i), line(i), column(i));
+    }
+}
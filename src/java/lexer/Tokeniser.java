@@ -2,8 +2,6 @@ package lexer;
 
 import lexer.Token.TokenClass;
 
-import java.io.EOFException;
-import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -16,6 +14,8 @@ public class Tokeniser {
 
     private List<char[]> escapableCharacters = Arrays.asList("tbnrf0'\"\\".toCharArray());
     private boolean parsing = false;
+    // set once the end of the input is reached, which ends the token being scanned
+    private boolean ended = false;
 
     private int error = 0;
     public int getErrorCount() {
@@ -26,17 +26,20 @@ public class Tokeniser {
         this.scanner = scanner;
     }
 
-    private void error(char c, int line, int col) {
+    protected void error(char c, int line, int col) {
+        // the token was cut short by the end of the input, which nextToken reports
+        if (ended)
+            return;
         System.out.println("Lexing error: unrecognised character ("+c+") at "+line+":"+col);
 	error++;
     }
 
 
     public Token nextToken() {
-        Token result;
-        try {
-             result = next();
-        } catch (EOFException eof) {
+        ended = false;
+        Token result = next();
+        if (ended) {
+            ended = false;
             // end of file, nothing to worry about, just return EOF token
             if(parsing) {
                 int line = scanner.getLine();
@@ -45,26 +48,40 @@ public class Tokeniser {
                 return new Token(TokenClass.INVALID, line, column);
             }
             return new Token(TokenClass.EOF, scanner.getLine(), scanner.getColumn());
-        } catch (IOException ioe) {
-            ioe.printStackTrace();
-            // something went horribly wrong, abort
-            System.exit(-1);
-            return null;
         }
         return result;
     }
 
+    // Scanner.peekChar and Scanner.nextChar, recording when a read reaches the end of the input, which ends the
+    // token being scanned
+    private char peekOrEnd() {
+        char c = scanner.peekChar();
+        if (c == Scanner.EOF && scanner.atEnd())
+            ended = true;
+        return c;
+    }
+
+    private char nextOrEnd() {
+        if (scanner.atEnd())
+            ended = true;
+        return scanner.nextChar();
+    }
+
     /*
      * To be completed
      */
-    private Token next() throws IOException {
+    private Token next() {
+        if (ended)
+            return null;
 
         int line = scanner.getLine();
         int column = scanner.getColumn();
 
         // get the next character
         parsing = false;
-        char c = scanner.next();
+        char c = nextOrEnd();
+        if (ended)
+            return null;
 
         // skip white spaces
         if (Character.isWhitespace(c))
@@ -77,12 +94,12 @@ public class Tokeniser {
             return result;
 
         // Simple double characters
-        if (c == '!' && scanner.peek() == '=') {
-            scanner.next();
+        if (c == '!' && peekOrEnd() == '=') {
+            nextOrEnd();
             return new Token(TokenClass.NE, line, column);
         }
-        if (c == '|' && scanner.peek() == '|') {
-            scanner.next();
+        if (c == '|' && peekOrEnd() == '|') {
+            nextOrEnd();
             return new Token(TokenClass.LOGOR, line, column);
         }
 
@@ -93,7 +110,7 @@ public class Tokeniser {
 
         // Dynamic lengths
         if (c == '#')                           return handleInclude(line, column);
-        if (c == '\'')                          return handleCharLiteral(scanner.next(), line, column);
+        if (c == '\'')                          return handleCharLiteral(nextOrEnd(), line, column);
         if (c == '"')                           return handleStringLiteral();
         if (Character.isDigit(c))               return handleIntLiteral(c, line, column);
         if (Character.isLetter(c) || c == '_')  return handleWordsAndIdentifiers(c, line, column);
@@ -125,41 +142,41 @@ public class Tokeniser {
         }
     }
 
-    private Token checkComplexMultiCharacters(char c, int line, int column) throws IOException {
+    private Token checkComplexMultiCharacters(char c, int line, int column) {
         switch (c) {
             case '/':
-                if (scanner.peek() == '/') {
-                    while (scanner.next() != '\n') ;
+                if (peekOrEnd() == '/') {
+                    while (nextOrEnd() != '\n' && !ended) ;
                     return next();
                 }
-                if (scanner.peek() == '*') {
-                    scanner.next();
-                    while (scanner.next() != '*' || scanner.peek() != '/') ;
-                    scanner.next();
+                if (peekOrEnd() == '*') {
+                    nextOrEnd();
+                    while ((nextOrEnd() != '*' || peekOrEnd() != '/') && !ended) ;
+                    nextOrEnd();
                     return next();
                 }
                 return new Token(TokenClass.DIV, line, column);
             case '=':
-                if (scanner.peek() == '=') {
-                    scanner.next();
+                if (peekOrEnd() == '=') {
+                    nextOrEnd();
                     return new Token(TokenClass.EQ, line, column);
                 }
                 return new Token(TokenClass.ASSIGN, line, column);
             case '<':
-                if (scanner.peek() == '=') {
-                    scanner.next();
+                if (peekOrEnd() == '=') {
+                    nextOrEnd();
                     return new Token(TokenClass.LE, line, column);
                 }
                 return new Token(TokenClass.LT, line, column);
             case '>':
-                if (scanner.peek() == '=') {
-                    scanner.next();
+                if (peekOrEnd() == '=') {
+                    nextOrEnd();
                     return new Token(TokenClass.GE, line, column);
                 }
                 return new Token(TokenClass.GT, line, column);
             case '&':
-                if (scanner.peek() == '&') {
-                    scanner.next();
+                if (peekOrEnd() == '&') {
+                    nextOrEnd();
                     return new Token(TokenClass.LOGAND, line, column);
                 }
                 return new Token(TokenClass.AND, line, column);
@@ -167,27 +184,27 @@ public class Tokeniser {
         }
     }
 
-    private Token handleIntLiteral(char c, int line, int column) throws IOException {
+    private Token handleIntLiteral(char c, int line, int column) {
         StringBuilder sb = new StringBuilder();
         sb.append(c);
-        while (Character.isDigit(scanner.peek())) {
-            sb.append(scanner.next());
+        while (Character.isDigit(peekOrEnd())) {
+            sb.append(nextOrEnd());
         }
         return new Token(TokenClass.INT_LITERAL, sb.toString(), line, column);
     }
 
-    private Token handleStringLiteral() throws IOException {
+    private Token handleStringLiteral() {
         StringBuilder sb = new StringBuilder();
         Token failure = null;
-        while (scanner.peek() != '"') {
-            if (scanner.peek() == '\n') {
-                error(scanner.peek(), scanner.getLine(), scanner.getColumn());
+        while (peekOrEnd() != '"' && !ended) {
+            if (peekOrEnd() == '\n') {
+                error(peekOrEnd(), scanner.getLine(), scanner.getColumn());
                 return new Token(TokenClass.INVALID, "\\n", scanner.getLine(), scanner.getColumn());
             }
 
-            if (scanner.peek() == '\\') {
-                scanner.next();
-                char nextChar = scanner.next();
+            if (peekOrEnd() == '\\') {
+                nextOrEnd();
+                char nextChar = nextOrEnd();
                 char escapeChar = mapCharToEscapeChar(nextChar);
                 if(escapeChar == '!') {
                     error(nextChar, scanner.getLine(), scanner.getColumn());
@@ -196,45 +213,48 @@ public class Tokeniser {
                 sb.append(escapeChar);
                 continue;
             }
-            sb.append(scanner.next());
+            sb.append(nextOrEnd());
         }
-        scanner.next();
+        nextOrEnd();
         if(failure != null)
             return failure;
         return new Token(TokenClass.STRING_LITERAL, sb.toString(), scanner.getLine(), scanner.getColumn());
     }
 
-    private Token handleCharLiteral(char c, int line, int column) throws IOException {
+    private Token handleCharLiteral(char c, int line, int column) {
         if(c == '\\') { //If has an escape character
-            char nextChar = scanner.next();
+            char nextChar = nextOrEnd();
             char escapeChar = mapCharToEscapeChar(nextChar);
             if(escapeChar == '!') {
-                if(scanner.peek() == '\'')
-                    scanner.next();
+                if(peekOrEnd() == '\'')
+                    nextOrEnd();
                 error(nextChar, line, column);
                 return new Token(TokenClass.INVALID, "\\" + nextChar, scanner.getLine(), scanner.getColumn());
             }
-            if(scanner.next() == '\'')
+            if(nextOrEnd() == '\'')
                 return new Token(TokenClass.CHAR_LITERAL, Character.toString(escapeChar), line, column);
         }
         else if(c == '\'') { // Doesn't accept ''
-            scanner.next();
+            nextOrEnd();
             error(c, line, column);
             return new Token(TokenClass.INVALID, Character.toString(c), line, column);
         }
-        else if(scanner.next() == '\'')
+        else if(nextOrEnd() == '\'')
             return new Token(TokenClass.CHAR_LITERAL, Character.toString(c), line, column);
 
         error(c, line, column);
         return new Token(TokenClass.INVALID, "'", line, column);
     }
 
-    private Token handleInclude(int line, int column) throws IOException {
+    private Token handleInclude(int line, int column) {
         for(char c: "include".toCharArray()) {
-            if(c == scanner.peek())
-                scanner.next();
+            char nextChar = peekOrEnd();
+            if (ended)
+                return null;
+            if(c == nextChar)
+                nextOrEnd();
             else {
-                char error = scanner.peek();
+                char error = peekOrEnd();
                 goToNextSpaceOrNewLine();
                 error(error, line, column);
                 return new Token(TokenClass.INVALID, "#", line, column);
@@ -258,13 +278,13 @@ public class Tokeniser {
         }
     }
 
-    private Token handleWordsAndIdentifiers(char c, int line, int column) throws IOException {
+    private Token handleWordsAndIdentifiers(char c, int line, int column) {
         StringBuilder sb = new StringBuilder();
         sb.append(c);
-        while(sb.length() < 6 && Character.isLetter(scanner.peek())) {
-            sb.append(scanner.next());
+        while(sb.length() < 6 && Character.isLetter(peekOrEnd())) {
+            sb.append(nextOrEnd());
             if(mapStringToToken(sb.toString()) != null) {
-                char nextChar = scanner.peek();
+                char nextChar = peekOrEnd();
                 if(Character.isLetter(nextChar) || Character.isDigit(nextChar) || nextChar == '_')
                     break;
                 return new Token(mapStringToToken(sb.toString()), line, column);
@@ -274,11 +294,11 @@ public class Tokeniser {
         return new Token(TokenClass.IDENTIFIER, sb.toString(), line, column);
     }
 
-    private StringBuilder traverseIdentifiers(StringBuilder sb) throws IOException {
-        char nextChar = scanner.peek();
+    private StringBuilder traverseIdentifiers(StringBuilder sb) {
+        char nextChar = peekOrEnd();
         while (Character.isDigit(nextChar) || Character.isLetter(nextChar) || nextChar == '_') {
-            sb.append(scanner.next());
-            nextChar = scanner.peek();
+            sb.append(nextOrEnd());
+            nextChar = peekOrEnd();
         }
         return sb;
     }
@@ -299,17 +319,16 @@ public class Tokeniser {
         }
     }
 
-    private void goToNextSpaceOrNewLine() throws IOException {
-        try {
-            char nextChar = scanner.peek();
-            while (!Character.isWhitespace(nextChar)) {
-                scanner.next();
-                nextChar = scanner.peek();
-            }
-            scanner.next();
-        } catch (EOFException e) {
-            return;
+    private void goToNextSpaceOrNewLine() {
+        char nextChar = peekOrEnd();
+        while (!Character.isWhitespace(nextChar) && !ended) {
+            nextOrEnd();
+            nextChar = peekOrEnd();
         }
+        if (!ended)
+            nextOrEnd();
+        // reaching the end here does not cut the token short
+        ended = false;
     }
 
 }
@@ -0,0 +1,405 @@
+package opt;
+
+import ast.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Folds the constant expressions of an analysed program before code generation. Arithmetic and comparisons of
+ * literals and {@code sizeof} become literals; a local assigned a constant once, at the top level of the block that
+ * declares it, is replaced by that constant in the statements that follow; an {@code if} or {@code while} whose
+ * condition is constant is replaced by the branch that runs. The AST is rewritten in place, its nodes keeping the types
+ * given by the semantic analysis.
+ */
+public final class ConstantFolder implements ASTVisitor<ASTNode> {
+
+    private int folded;
+    private int propagated;
+    private int removed;
+
+    // of the function being folded
+    private Assignments assignments;
+    private final Map<VarDecl, Expr> constants = new HashMap<>();
+
+    public void fold(Program program) {
+        program.accept(this);
+    }
+
+    /**
+     * @return the number of expressions replaced by a literal
+     */
+    public int folded() {
+        return folded;
+    }
+
+    /**
+     * @return the number of uses of a variable replaced by its constant value
+     */
+    public int propagated() {
+        return propagated;
+    }
+
+    /**
+     * @return the number of {@code if} and {@code while} statements with a constant condition removed
+     */
+    public int removed() {
+        return removed;
+    }
+
+    private Expr expression(Expr expr) {
+        return (Expr) expr.accept(this);
+    }
+
+    // null when the statement does nothing
+    private Stmt statement(Stmt stmt) {
+        return (Stmt) stmt.accept(this);
+    }
+
+    private static Stmt nothing() {
+        return new Block(new ArrayList<>(), new ArrayList<>());
+    }
+
+    // the value of a literal operand, null if the operand is not constant
+    private static Integer value(Expr expr) {
+        if (expr instanceof IntLiteral)
+            return ((IntLiteral) expr).value;
+        if (expr instanceof ChrLiteral)
+            return (int) ((ChrLiteral) expr).value;
+        return null;
+    }
+
+    private static boolean isLiteral(Expr expr) {
+        return expr instanceof IntLiteral || expr instanceof ChrLiteral;
+    }
+
+    private Expr literal(int value) {
+        folded++;
+        IntLiteral literal = new IntLiteral(value);
+        literal.type = BaseType.INT;
+        return literal;
+    }
+
+    private static Expr copy(Expr literal) {
+        Expr copy = literal instanceof ChrLiteral ? new ChrLiteral(((ChrLiteral) literal).value)
+                : new IntLiteral(((IntLiteral) literal).value);
+        copy.type = literal.type;
+        return copy;
+    }
+
+    private static <E extends Expr> E typed(E expr, Expr original) {
+        expr.type = original.type;
+        return expr;
+    }
+
+    // whether the size of the type is known, the declarations of the structs it contains having been linked
+    private static boolean isSized(Type type) {
+        if (type instanceof StructType)
+            return ((StructType) type).structTypeDecl != null;
+        if (type instanceof ArrayType)
+            return isSized(((ArrayType) type).type);
+        return true;
+    }
+
+    private Expr fold(BinOp op, BiFunction<Expr, Expr, BinOp> rebuild, IntBinaryOperator evaluate) {
+        Expr left = expression(op.left);
+        Expr right = expression(op.right);
+        Integer l = value(left);
+        Integer r = value(right);
+        // a division by zero is left to fail at run time
+        if (l != null && r != null && !(r == 0 && (op instanceof Div || op instanceof Mod)))
+            return literal(evaluate.applyAsInt(l, r));
+        if (left == op.left && right == op.right)
+            return op;
+        return typed(rebuild.apply(left, right), op);
+    }
+
+    @Override
+    public ASTNode visitBaseType(BaseType bt) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public ASTNode visitStructType(StructType st) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public ASTNode visitPointerType(PointerType pt) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public ASTNode visitArrayType(ArrayType at) {
+        throw new ShouldNotReach();
+    }
+
+    @Override
+    public ASTNode visitStructTypeDecl(StructTypeDecl st) {
+        return st;
+    }
+
+    @Override
+    public ASTNode visitProgram(Program p) {
+        p.funDecls.forEach(funDecl -> funDecl.accept(this));
+        return p;
+    }
+
+    @Override
+    public ASTNode visitFunDecl(FunDecl f) {
+        assignments = new Assignments();
+        f.block.accept(assignments);
+        constants.clear();
+        f.block.accept(this);
+        return f;
+    }
+
+    @Override
+    public ASTNode visitVarDecl(VarDecl vd) {
+        return vd;
+    }
+
+    @Override
+    public ASTNode visitBlock(Block b) {
+        for (int i = 0; i < b.stmts.size(); i++) {
+            Stmt stmt = statement(b.stmts.get(i));
+            if (stmt == null) {
+                b.stmts.remove(i--);
+                continue;
+            }
+            b.stmts.set(i, stmt);
+            // from here on, a constant assigned to a local of this block is the value it keeps
+            if (stmt instanceof Assign && ((Assign) stmt).leftExpr instanceof VarExpr) {
+                VarDecl variable = ((VarExpr) ((Assign) stmt).leftExpr).vd;
+                Expr value = ((Assign) stmt).rightExpr;
+                if (isLiteral(value) && b.varDecls.contains(variable) && assignments.isAssignedOnce(variable)
+                        && (variable.type == BaseType.INT || variable.type == BaseType.CHAR))
+                    constants.put(variable, value);
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public ASTNode visitWhile(While w) {
+        Expr expr = expression(w.expr);
+        Integer condition = value(expr);
+        if (condition != null && condition == 0) {
+            removed++;
+            return null;
+        }
+        Stmt stmt = statement(w.stmt);
+        if (stmt == null)
+            stmt = nothing();
+        if (expr == w.expr && stmt == w.stmt)
+            return w;
+        return new While(expr, stmt);
+    }
+
+    @Override
+    public ASTNode visitIf(If i) {
+        Expr expr = expression(i.expr);
+        Integer condition = value(expr);
+        if (condition != null) {
+            removed++;
+            Stmt taken = condition != 0 ? i.ifStmt : i.elseStmt;
+            return taken == null ? null : statement(taken);
+        }
+        Stmt ifStmt = statement(i.ifStmt);
+        Stmt elseStmt = i.elseStmt == null ? null : statement(i.elseStmt);
+        if (ifStmt == null)
+            ifStmt = nothing();
+        if (expr == i.expr && ifStmt == i.ifStmt && elseStmt == i.elseStmt)
+            return i;
+        return new If(expr, ifStmt, elseStmt);
+    }
+
+    @Override
+    public ASTNode visitReturn(Return r) {
+        if (r.expr == null)
+            return r;
+        Expr expr = expression(r.expr);
+        if (expr == r.expr)
+            return r;
+        Return copy = new Return(expr);
+        copy.fd = r.fd;
+        return copy;
+    }
+
+    @Override
+    public ASTNode visitAssign(Assign a) {
+        // the variable assigned is not a use of its value
+        Expr left = a.leftExpr instanceof VarExpr ? a.leftExpr : expression(a.leftExpr);
+        Expr right = expression(a.rightExpr);
+        if (left == a.leftExpr && right == a.rightExpr)
+            return a;
+        return new Assign(left, right);
+    }
+
+    @Override
+    public ASTNode visitExprStmt(ExprStmt es) {
+        Expr expr = expression(es.expr);
+        return expr == es.expr ? es : new ExprStmt(expr);
+    }
+
+    @Override
+    public ASTNode visitVarExpr(VarExpr v) {
+        Expr constant = constants.get(v.vd);
+        if (constant == null)
+            return v;
+        propagated++;
+        return copy(constant);
+    }
+
+    @Override
+    public ASTNode visitSizeOfExpr(SizeOfExpr so) {
+        if (!isSized(so.insideType))
+            return so;
+        return literal(so.insideType.getSize());
+    }
+
+    @Override
+    public ASTNode visitArrayAccessExpr(ArrayAccessExpr aa) {
+        Expr array = expression(aa.array);
+        Expr index = expression(aa.index);
+        if (array == aa.array && index == aa.index)
+            return aa;
+        return typed(new ArrayAccessExpr(array, index), aa);
+    }
+
+    @Override
+    public ASTNode visitFieldAccessExpr(FieldAccessExpr fa) {
+        Expr expr = expression(fa.expr);
+        return expr == fa.expr ? fa : typed(new FieldAccessExpr(expr, fa.field), fa);
+    }
+
+    @Override
+    public ASTNode visitFunCallExpr(FunCallExpr fc) {
+        fc.params.replaceAll(this::expression);
+        return fc;
+    }
+
+    @Override
+    public ASTNode visitTypeCastExpr(TypeCastExpr tc) {
+        Expr expr = expression(tc.expr);
+        if (tc.castType == BaseType.INT && expr instanceof ChrLiteral)
+            return literal(((ChrLiteral) expr).value);
+        return expr == tc.expr ? tc : typed(new TypeCastExpr(tc.castType, expr), tc);
+    }
+
+    @Override
+    public ASTNode visitValueAtExpr(ValueAtExpr va) {
+        Expr expr = expression(va.expr);
+        return expr == va.expr ? va : typed(new ValueAtExpr(expr), va);
+    }
+
+    @Override
+    public ASTNode visitAddressOfExpr(AddressOfExpr ao) {
+        Expr expr = expression(ao.expr);
+        return expr == ao.expr ? ao : typed(new AddressOfExpr(expr), ao);
+    }
+
+    @Override
+    public ASTNode visitIntLiteral(IntLiteral i) {
+        return i;
+    }
+
+    @Override
+    public ASTNode visitChrLiteral(ChrLiteral c) {
+        return c;
+    }
+
+    @Override
+    public ASTNode visitStrLiteral(StrLiteral str) {
+        return str;
+    }
+
+    @Override
+    public ASTNode visitAdd(Add a) {
+        return fold(a, Add::new, (l, r) -> l + r);
+    }
+
+    @Override
+    public ASTNode visitSub(Sub s) {
+        return fold(s, Sub::new, (l, r) -> l - r);
+    }
+
+    @Override
+    public ASTNode visitMul(Mul m) {
+        return fold(m, Mul::new, (l, r) -> l * r);
+    }
+
+    @Override
+    public ASTNode visitDiv(Div d) {
+        return fold(d, Div::new, (l, r) -> l / r);
+    }
+
+    @Override
+    public ASTNode visitMod(Mod m) {
+        return fold(m, Mod::new, (l, r) -> l % r);
+    }
+
+    @Override
+    public ASTNode visitGt(Gt g) {
+        return fold(g, Gt::new, (l, r) -> l > r ? 1 : 0);
+    }
+
+    @Override
+    public ASTNode visitLt(Lt l) {
+        return fold(l, Lt::new, (a, b) -> a < b ? 1 : 0);
+    }
+
+    @Override
+    public ASTNode visitGe(Ge g) {
+        return fold(g, Ge::new, (l, r) -> l >= r ? 1 : 0);
+    }
+
+    @Override
+    public ASTNode visitLe(Le l) {
+        return fold(l, Le::new, (a, b) -> a <= b ? 1 : 0);
+    }
+
+    @Override
+    public ASTNode visitNe(Ne n) {
+        return fold(n, Ne::new, (l, r) -> l != r ? 1 : 0);
+    }
+
+    @Override
+    public ASTNode visitEq(Eq e) {
+        return fold(e, Eq::new, (l, r) -> l == r ? 1 : 0);
+    }
+
+    // the right operand is only evaluated when the left one does not decide the result
+    @Override
+    public ASTNode visitOr(Or o) {
+        Expr left = expression(o.left);
+        Integer l = value(left);
+        if (l != null && l != 0)
+            return literal(1);
+        Expr right = expression(o.right);
+        Integer r = value(right);
+        if (l != null && r != null)
+            return literal(r != 0 ? 1 : 0);
+        if (left == o.left && right == o.right)
+            return o;
+        return typed(new Or(left, right), o);
+    }
+
+    @Override
+    public ASTNode visitAnd(And a) {
+        Expr left = expression(a.left);
+        Integer l = value(left);
+        if (l != null && l == 0)
+            return literal(0);
+        Expr right = expression(a.right);
+        Integer r = value(right);
+        if (l != null && r != null)
+            return literal(r != 0 ? 1 : 0);
+        if (left == a.left && right == a.right)
+            return a;
+        return typed(new And(left, right), a);
+    }
+}
@@ -0,0 +1,49 @@
+package parser;
+
+import lexer.Token;
+import lexer.Token.TokenClass;
+import lexer.TokenArray;
+
+/**
+ * A {@link TokenCursor} over a pre-tokenised file. Looking ahead and consuming are plain index arithmetic.
+ */
+final class ArrayCursor implements TokenCursor {
+
+    private final TokenArray tokens;
+    private final int last;
+    private int index = -1;
+    private int position = -1;
+
+    ArrayCursor(TokenArray tokens) {
+        this.tokens = tokens;
+        this.last = tokens.size() - 1;
+    }
+
+    @Override
+    public void advance() {
+        index++;
+        // the final EOF token is repeated forever, as a tokeniser would do
+        if (position < last)
+            position++;
+    }
+
+    @Override
+    public TokenClass lookAhead(int i) {
+        return tokens.tokenClass(Math.min(position + i, last));
+    }
+
+    @Override
+    public String data() {
+        return tokens.data(position);
+    }
+
+    @Override
+    public int index() {
+        return index;
+    }
+
+    @Override
+    public Token current() {
+        return tokens.token(position);
+    }
+}
@@ -3,6 +3,7 @@ package parser;
 import ast.*;
 import lexer.Token;
 import lexer.Token.TokenClass;
+import lexer.TokenArray;
 import lexer.Tokeniser;
 
 import java.util.*;
@@ -13,27 +14,55 @@ import java.util.*;
  */
 public class Parser {
 
-    private Token token;
+    private final TokenCursor tokens;
 
-    // use for backtracking (useful for distinguishing decls from procs when parsing a program for instance)
-    private Queue<Token> buffer = new LinkedList<>();
 
-    private final Tokeniser tokeniser;
-
-
-    private List<TokenClass> types = List.of(TokenClass.INT, TokenClass.CHAR, TokenClass.VOID, TokenClass.STRUCT);
-    private TokenClass[] typesArray = types.toArray(TokenClass[]::new);
-    private List<TokenClass> expStart = List.of(TokenClass.LPAR, TokenClass.IDENTIFIER, TokenClass.INT_LITERAL
+    // FIRST sets of the nonterminals the parser has to predict
+    private static final EnumSet<TokenClass> TYPE_FIRST = EnumSet.of(TokenClass.INT, TokenClass.CHAR, TokenClass.VOID, TokenClass.STRUCT);
+    private static final EnumSet<TokenClass> EXP_FIRST = EnumSet.of(TokenClass.LPAR, TokenClass.IDENTIFIER, TokenClass.INT_LITERAL
                                         , TokenClass.PLUS, TokenClass.MINUS, TokenClass.CHAR_LITERAL, TokenClass.STRING_LITERAL
                                         , TokenClass.ASTERIX, TokenClass.AND, TokenClass.SIZEOF);
-    private TokenClass[] expStartArray = expStart.toArray(TokenClass[]::new);
-    private List<TokenClass> binOperators = List.of(TokenClass.GT, TokenClass.LT, TokenClass.LE, TokenClass.GE, TokenClass.NE, TokenClass.EQ
-                                        , TokenClass.PLUS, TokenClass.MINUS, TokenClass.DIV, TokenClass.ASTERIX, TokenClass.REM
-                                        , TokenClass.LOGOR, TokenClass.LOGAND);
-    private TokenClass[] binOperatorsArray = binOperators.toArray(TokenClass[]::new);
+    private static final EnumSet<TokenClass> STMT_FIRST = EnumSet.of(TokenClass.LBRA, TokenClass.WHILE, TokenClass.IF, TokenClass.RETURN);
+    static {
+        STMT_FIRST.addAll(EXP_FIRST);
+    }
+
+    // binding power of the binary operators, 0 for tokens that are not binary operators
+    private static final int[] PRECEDENCE = new int[TokenClass.values().length];
+    static {
+        PRECEDENCE[TokenClass.LOGOR.ordinal()] = 1;
+        PRECEDENCE[TokenClass.LOGAND.ordinal()] = 2;
+        PRECEDENCE[TokenClass.EQ.ordinal()] = 3;
+        PRECEDENCE[TokenClass.NE.ordinal()] = 3;
+        PRECEDENCE[TokenClass.LT.ordinal()] = 4;
+        PRECEDENCE[TokenClass.GT.ordinal()] = 4;
+        PRECEDENCE[TokenClass.LE.ordinal()] = 4;
+        PRECEDENCE[TokenClass.GE.ordinal()] = 4;
+        PRECEDENCE[TokenClass.PLUS.ordinal()] = 5;
+        PRECEDENCE[TokenClass.MINUS.ordinal()] = 5;
+        PRECEDENCE[TokenClass.ASTERIX.ordinal()] = 6;
+        PRECEDENCE[TokenClass.DIV.ordinal()] = 6;
+        PRECEDENCE[TokenClass.REM.ordinal()] = 6;
+    }
+
+    /**
+     * The decisions for which one token of lookahead is not enough and the parser has to peek further.
+     */
+    public enum Decision {
+        STRUCT_DECL, VAR_DECL, FUN_DECL, TYPE_CAST
+    }
+
+    private final int[] deepLookaheads = new int[Decision.values().length];
 
     public Parser(Tokeniser tokeniser) {
-        this.tokeniser = tokeniser;
+        this.tokens = new StreamCursor(tokeniser);
+    }
+
+    /**
+     * Creates a parser consuming a pre-tokenised file by index.
+     */
+    public Parser(TokenArray tokens) {
+        this.tokens = new ArrayCursor(tokens);
     }
 
     public Program parse() {
@@ -47,12 +76,20 @@ public class Parser {
         return error;
     }
 
+    /**
+     * Returns how many times the parser had to look further than the token after the current one to take the given
+     * decision.
+     */
+    public int getDeepLookaheadCount(Decision decision) {
+        return deepLookaheads[decision.ordinal()];
+    }
+
     private int error = 0;
-    private Token lastErrorToken;
+    private int lastErrorIndex = -1;
 
     private void error(TokenClass... expected) {
 
-        if (lastErrorToken == token) {
+        if (lastErrorIndex == tokens.index()) {
             // skip this error, same token causing trouble
             return;
         }
@@ -64,31 +101,22 @@ public class Parser {
             sb.append(e);
             sep = "|";
         }
+        Token token = tokens.current();
         System.out.println("Parsing error: expected ("+sb+") found ("+token+") at "+token.position);
 
         error++;
-        lastErrorToken = token;
+        lastErrorIndex = tokens.index();
     }
 
     /*
-     * Look ahead the i^th element from the stream of token.
+     * Look ahead the i^th element from the stream of token to take a decision.
      * i should be >= 1
      */
-    private Token lookAhead(int i) {
-        // ensures the buffer has the element we want to look ahead
-        while (buffer.size() < i)
-            buffer.add(tokeniser.nextToken());
-        assert buffer.size() >= i;
-
-        int cnt=1;
-        for (Token t : buffer) {
-            if (cnt == i)
-                return t;
-            cnt++;
-        }
-
-        assert false; // should never reach this
-        return null;
+    private TokenClass lookAhead(Decision decision, int i) {
+        // the token after the current one is routine lookahead
+        if (i > 1)
+            deepLookaheads[decision.ordinal()]++;
+        return tokens.lookAhead(i);
     }
 
 
@@ -96,37 +124,42 @@ public class Parser {
      * Consumes the next token from the tokeniser or the buffer if not empty.
      */
     private void nextToken() {
-        if (!buffer.isEmpty())
-            token = buffer.remove();
-        else
-            token = tokeniser.nextToken();
+        tokens.advance();
+    }
+
+    /*
+     * Returns the class of the current token.
+     */
+    private TokenClass current() {
+        return tokens.lookAhead(0);
     }
 
     /*
      * If the current token is equals to the expected one, then skip it, otherwise report an error.
-     * Returns the expected token or null if an error occurred.
+     * Returns false if an error occurred.
      */
-    private Token expect(TokenClass... expected) {
+    private boolean expect(TokenClass... expected) {
+        TokenClass current = current();
         for (TokenClass e : expected) {
-            if (e == token.tokenClass) {
-                Token cur = token;
+            if (e == current) {
                 nextToken();
-                return cur;
+                return true;
             }
         }
 
         error(expected);
         nextToken();
-        return null;
+        return false;
     }
 
     /*
     * Returns true if the current token is equals to any of the expected ones.
     */
     private boolean accept(TokenClass... expected) {
+        TokenClass current = current();
         boolean result = false;
         for (TokenClass e : expected)
-            result |= (e == token.tokenClass);
+            result |= (e == current);
         return result;
     }
 
@@ -150,9 +183,9 @@ public class Parser {
     }
 
     private List<StructTypeDecl> parseStructDecls(List<StructTypeDecl> structTypeDecls) {
-       if (accept(TokenClass.STRUCT) && lookAhead(2).tokenClass == TokenClass.LBRA) {
+       if (accept(TokenClass.STRUCT) && lookAhead(Decision.STRUCT_DECL, 2) == TokenClass.LBRA) {
            nextToken();
-           String structName = token.data;
+           String structName = tokens.data();
            expect(TokenClass.IDENTIFIER);
            expect(TokenClass.LBRA);
            List<VarDecl> varDecls = parseVarDecls(true, new ArrayList<>());
@@ -169,17 +202,17 @@ public class Parser {
 
     private List<VarDecl> parseVarDecls(boolean atLeastOne, List<VarDecl> varDecls) {
         int horizon = 2;
-        if(lookAhead(1).tokenClass == TokenClass.ASTERIX)
+        if(lookAhead(Decision.VAR_DECL, 1) == TokenClass.ASTERIX)
             horizon = 3;
-        else if(token.tokenClass == TokenClass.STRUCT) {
+        else if(current() == TokenClass.STRUCT) {
             horizon = 3;
-            if(lookAhead(2).tokenClass == TokenClass.ASTERIX)
+            if(lookAhead(Decision.VAR_DECL, 2) == TokenClass.ASTERIX)
                 horizon = 4;
         }
 
-        if (accept(typesArray) && lookAhead(horizon).tokenClass != TokenClass.LPAR) {
+        if (TYPE_FIRST.contains(current()) && lookAhead(Decision.VAR_DECL, horizon) != TokenClass.LPAR) {
             Type type = parseType();
-            String identifier = token.data;
+            String identifier = tokens.data();
             expect(TokenClass.IDENTIFIER);
 
             if(accept(TokenClass.SC)) {
@@ -189,7 +222,7 @@ public class Parser {
             }
             else if(accept(TokenClass.LSBR)) { //Array declaration
                 nextToken();
-                int size = Integer.valueOf(token.data);
+                int size = Integer.valueOf(tokens.data());
                 expect(TokenClass.INT_LITERAL);
                 expect(TokenClass.RSBR);
                 expect(TokenClass.SC);
@@ -208,17 +241,17 @@ public class Parser {
 
     private List<FunDecl> parseFunDecls(List<FunDecl> funDecls) {
         int horizon = 2;
-        if(lookAhead(1).tokenClass == TokenClass.ASTERIX)
+        if(lookAhead(Decision.FUN_DECL, 1) == TokenClass.ASTERIX)
             horizon = 3;
-        else if(token.tokenClass == TokenClass.STRUCT) {
+        else if(current() == TokenClass.STRUCT) {
             horizon = 3;
-            if(lookAhead(2).tokenClass == TokenClass.ASTERIX)
+            if(lookAhead(Decision.FUN_DECL, 2) == TokenClass.ASTERIX)
                 horizon = 4;
         }
 
-        if (lookAhead(horizon).tokenClass == TokenClass.LPAR) {
+        if (lookAhead(Decision.FUN_DECL, horizon) == TokenClass.LPAR) {
             Type type = parseType();
-            String name = token.data;
+            String name = tokens.data();
             expect(TokenClass.IDENTIFIER);
             expect(TokenClass.LPAR);
             List<VarDecl> params = parseParams();
@@ -232,13 +265,13 @@ public class Parser {
 
     private Type parseType() {
         Type type = null;
-        if(types.contains(token.tokenClass)) {
+        if(TYPE_FIRST.contains(current())) {
             if(accept(TokenClass.STRUCT)) {
                 nextToken();
-                type = new StructType(token.data);
+                type = new StructType(tokens.data());
                 expect(TokenClass.IDENTIFIER);
             } else {
-                type = BaseType.fromTokenClass(token.tokenClass);
+                type = BaseType.fromTokenClass(current());
                 nextToken();
             }
             while(accept(TokenClass.ASTERIX)) {
@@ -254,15 +287,15 @@ public class Parser {
 
     private List<VarDecl> parseParams() {
         List<VarDecl> params = new ArrayList<>();
-        if(types.contains(token.tokenClass)) {
+        if(TYPE_FIRST.contains(current())) {
             Type type = parseType();
-            String name = token.data;
+            String name = tokens.data();
             expect(TokenClass.IDENTIFIER);
             params.add(new VarDecl(type, name));
             while(accept(TokenClass.COMMA)) {
                 nextToken();
                 type = parseType();
-                name = token.data;
+                name = tokens.data();
                 expect(TokenClass.IDENTIFIER);
                 params.add(new VarDecl(type, name));
             }
@@ -280,7 +313,7 @@ public class Parser {
 
     private List<Stmt> parseStmts() {
         List<Stmt> stmts = new ArrayList<>();
-        while(accept(TokenClass.LBRA, TokenClass.WHILE, TokenClass.IF, TokenClass.RETURN) || isExp()) {
+        while(STMT_FIRST.contains(current())) {
             Stmt stmt = parseStmt();
             if(stmt == null)
                 break;
@@ -348,107 +381,48 @@ public class Parser {
     }
 
     private boolean isExp() {
-        return expStart.contains(token.tokenClass);
+        return EXP_FIRST.contains(current());
     }
 
+    /*
+     * Parses a binary expression by precedence climbing: a single loop handles every binary operator, and an operand
+     * only recurses for operators binding tighter than the one on its left.
+     */
     private Expr parseExpr1() {
-        Expr lExpr = parseExpr2();
-
-        while(accept(TokenClass.LOGOR)) {
-            nextToken();
-            Expr rExpr = parseExpr2();
-            lExpr = new Or(lExpr, rExpr);
-        }
-        return lExpr;
+        return parseBinary(1);
     }
 
-    private Expr parseExpr2() {
-        Expr lExpr = parseExpr3();
-
-        while(accept(TokenClass.LOGAND)) {
-            nextToken();
-            Expr rExpr = parseExpr3();
-            lExpr = new And(lExpr, rExpr);
-        }
-        return lExpr;
-    }
-
-    private Expr parseExpr3() {
-        Expr lExpr = parseExpr4();
+    private Expr parseBinary(int minPrecedence) {
+        Expr lExpr = parseExpr7();
 
-        while(accept(TokenClass.EQ, TokenClass.NE))
-        if(accept(TokenClass.EQ)) {
-            nextToken();
-            Expr rExpr = parseExpr4();
-            lExpr = new Eq(lExpr, rExpr);
-        } else { //NE
+        int precedence;
+        while ((precedence = PRECEDENCE[current().ordinal()]) >= minPrecedence) {
+            TokenClass operator = current();
             nextToken();
-            Expr rExpr = parseExpr4();
-            lExpr = new Ne(lExpr, rExpr);
-        }
-        return lExpr;
-    }
-
-    private Expr parseExpr4() {
-        Expr lExpr = parseExpr5();
-
-        while(accept(TokenClass.LT, TokenClass.GT, TokenClass.LE, TokenClass.GE)) {
-            if (accept(TokenClass.LT)) {
-                nextToken();
-                Expr rExpr = parseExpr5();
-                lExpr = new Lt(lExpr, rExpr);
-            } else if (accept(TokenClass.GT)) {
-                nextToken();
-                Expr rExpr = parseExpr5();
-                lExpr = new Gt(lExpr, rExpr);
-            } else if (accept(TokenClass.LE)) {
-                nextToken();
-                Expr rExpr = parseExpr5();
-                lExpr = new Le(lExpr, rExpr);
-            } else if (accept(TokenClass.GE)) {
-                nextToken();
-                Expr rExpr = parseExpr5();
-                lExpr = new Ge(lExpr, rExpr);
-            }
+            // all binary operators are left associative
+            Expr rExpr = parseBinary(precedence + 1);
+            lExpr = newBinOp(operator, lExpr, rExpr);
         }
         return lExpr;
     }
 
-    private Expr parseExpr5() {
-        Expr lExpr = parseExpr6();
-        while(accept(TokenClass.PLUS, TokenClass.MINUS)) {
-            if (accept(TokenClass.PLUS)) {
-                nextToken();
-                Expr rExpr = parseExpr6();
-                lExpr = new Add(lExpr, rExpr);
-            } else { //MINUS
-                nextToken();
-                Expr rExpr = parseExpr6();
-                lExpr = new Sub(lExpr, rExpr);
-            }
+    private static Expr newBinOp(TokenClass operator, Expr lExpr, Expr rExpr) {
+        switch (operator) {
+            case LOGOR:   return new Or(lExpr, rExpr);
+            case LOGAND:  return new And(lExpr, rExpr);
+            case EQ:      return new Eq(lExpr, rExpr);
+            case NE:      return new Ne(lExpr, rExpr);
+            case LT:      return new Lt(lExpr, rExpr);
+            case GT:      return new Gt(lExpr, rExpr);
+            case LE:      return new Le(lExpr, rExpr);
+            case GE:      return new Ge(lExpr, rExpr);
+            case PLUS:    return new Add(lExpr, rExpr);
+            case MINUS:   return new Sub(lExpr, rExpr);
+            case ASTERIX: return new Mul(lExpr, rExpr);
+            case DIV:     return new Div(lExpr, rExpr);
+            case REM:     return new Mod(lExpr, rExpr);
+            default:      throw new IllegalArgumentException(operator + " is not a binary operator");
         }
-        return lExpr;
-    }
-
-    private Expr parseExpr6() {
-        Expr lExpr = parseExpr7();
-
-        while(accept(TokenClass.ASTERIX, TokenClass.DIV, TokenClass.REM)) {
-            if (accept(TokenClass.ASTERIX)) {
-                nextToken();
-                Expr rExpr = parseExpr7();
-                lExpr = new Mul(lExpr, rExpr);
-            } else if (accept(TokenClass.DIV)) {
-                nextToken();
-                Expr rExpr = parseExpr7();
-                lExpr = new Div(lExpr, rExpr);
-            } else if (accept(TokenClass.REM)) {
-                nextToken();
-                Expr rExpr = parseExpr7();
-                lExpr = new Mod(lExpr, rExpr);
-            }
-        }
-        return lExpr;
     }
 
     private Expr parseExpr7() {
@@ -460,7 +434,7 @@ public class Parser {
             nextToken();
             Expr expr = parseExpr7();
             return new Sub(expr);
-        } else if (accept(TokenClass.LPAR) && types.contains(lookAhead(1).tokenClass)) {
+        } else if (accept(TokenClass.LPAR) && TYPE_FIRST.contains(lookAhead(Decision.TYPE_CAST, 1))) {
             nextToken();
             Type type = parseType();
             expect(TokenClass.RPAR);
@@ -490,7 +464,7 @@ public class Parser {
                 lExpr = new ArrayAccessExpr(lExpr, arrayIndex);
             } else if(accept(TokenClass.DOT)) { //Field access
                 nextToken();
-                String identifier = token.data;
+                String identifier = tokens.data();
                 expect(TokenClass.IDENTIFIER);
                 lExpr = new FieldAccessExpr(lExpr, identifier);
             } else if(accept(TokenClass.LPAR)) { //Function call
@@ -515,7 +489,7 @@ public class Parser {
     }
 
     private Expr parseTerminal() {
-        TokenClass tokenClass = token.tokenClass;
+        TokenClass tokenClass = current();
         switch (tokenClass) {
             case LPAR:
                 nextToken();
@@ -523,19 +497,19 @@ public class Parser {
                 expect(TokenClass.RPAR);
                 return expr;
             case IDENTIFIER:
-                String varName = token.data;
+                String varName = tokens.data();
                 nextToken();
                 return new VarExpr(varName);
             case INT_LITERAL:
-                int value = Integer.parseInt(token.data);
+                int value = Integer.parseInt(tokens.data());
                 nextToken();
                 return new IntLiteral(value);
             case CHAR_LITERAL:
-                char character = token.data.charAt(0);
+                char character = tokens.data().charAt(0);
                 nextToken();
                 return new ChrLiteral(character);
             case STRING_LITERAL:
-                String str = token.data;
+                String str = tokens.data();
                 nextToken();
                 return new StrLiteral(str);
             case SIZEOF:
@@ -0,0 +1,77 @@
+package parser;
+
+import lexer.Scanner;
+import lexer.TableTokeniser;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures how long the parser takes on a source file and on a synthetic corpus of long and deeply nested
+ * expressions, similar to what machine-generated Mini-C looks like.
+ *
+ * Usage: java parser.ParserBenchmark [sourcefile] (defaults to tests/tictactoe.c)
+ */
+public class ParserBenchmark {
+
+    private static final int WARMUP = 200;
+    private static final int RUNS = 1000;
+
+    public static void main(String[] args) throws IOException {
+        String file = args.length > 0 ? args[0] : "tests/tictactoe.c";
+        report(file, Files.readString(Path.of(file)));
+        report("long arithmetic chains", chains(200, 200));
+        report("deeply nested expressions", nested(200, 60));
+    }
+
+    private static void report(String name, String source) {
+        // one more char for the scanner's sentinel
+        char[] chars = Arrays.copyOf(source.toCharArray(), source.length() + 1);
+        for (int i = 0; i < WARMUP; i++)
+            parse(chars);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++)
+            parse(chars);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-28s %8d chars %10.1f us/parse%n", name, source.length(), elapsed / 1000.0 / RUNS);
+    }
+
+    private static void parse(char[] source) {
+        Parser parser = new Parser(new TableTokeniser(new Scanner(source, source.length - 1)));
+        parser.parse();
+        if (parser.getErrorCount() != 0)
+            throw new IllegalStateException("benchmark input does not parse");
+    }
+
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "%", "<", ">", "<=", ">=", "==", "!=", "&&", "||"};
+
+    // statements of the form x = a + b * c - d ... with operands operators long
+    private static String chains(int statements, int operands) {
+        StringBuilder sb = new StringBuilder("int f(int a, int b) {\n  int x;\n");
+        for (int s = 0; s < statements; s++) {
+            sb.append("  x = a");
+            for (int o = 1; o < operands; o++)
+                sb.append(' ').append(OPERATORS[(s + o) % OPERATORS.length]).append(o % 2 == 0 ? " a" : " b");
+            sb.append(";\n");
+        }
+        return sb.append("  return x;\n}\n").toString();
+    }
+
+    // statements of the form x = (a + (b * (a - ...))) nested depth levels deep
+    private static String nested(int statements, int depth) {
+        StringBuilder sb = new StringBuilder("int f(int a, int b) {\n  int x;\n");
+        for (int s = 0; s < statements; s++) {
+            sb.append("  x = ");
+            for (int d = 0; d < depth; d++)
+                sb.append("(a ").append(OPERATORS[(s + d) % OPERATORS.length]).append(' ');
+            sb.append('b');
+            for (int d = 0; d < depth; d++)
+                sb.append(')');
+            sb.append(";\n");
+        }
+        return sb.append("  return x;\n}\n").toString();
+    }
+}
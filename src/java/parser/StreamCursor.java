@@ -0,0 +1,77 @@
+package parser;
+
+import lexer.Token;
+import lexer.Token.TokenClass;
+import lexer.Tokeniser;
+
+/**
+ * A {@link TokenCursor} pulling tokens from a {@link Tokeniser} as the parser goes. Tokens looked ahead are kept in a
+ * fixed-capacity ring buffer, so the cursor supports LL(k) decisions for any k below {@link #CAPACITY}.
+ */
+final class StreamCursor implements TokenCursor {
+
+    /**
+     * The number of tokens the cursor can hold, the current one included.
+     */
+    static final int CAPACITY = 8;
+    private static final int MASK = CAPACITY - 1;
+
+    private final Tokeniser tokeniser;
+    private final Token[] ring = new Token[CAPACITY];
+    private int head;  // slot of the current token
+    private int count; // number of tokens in the ring, the current one included
+    private int index = -1;
+
+    StreamCursor(Tokeniser tokeniser) {
+        this.tokeniser = tokeniser;
+    }
+
+    /*
+     * Consumes the current token; the next one comes from the ring if it was looked ahead, from the tokeniser
+     * otherwise.
+     */
+    @Override
+    public void advance() {
+        if (count > 0) {
+            ring[head] = null;
+            head = (head + 1) & MASK;
+            count--;
+        }
+        if (count == 0) {
+            ring[head] = tokeniser.nextToken();
+            count = 1;
+        }
+        index++;
+    }
+
+    /*
+     * Look ahead the i^th element from the stream of token.
+     */
+    @Override
+    public TokenClass lookAhead(int i) {
+        if (i >= CAPACITY)
+            throw new IllegalArgumentException("cannot look " + i + " tokens ahead, at most " + (CAPACITY - 1));
+
+        // ensures the ring has the element we want to look ahead
+        while (count <= i) {
+            ring[(head + count) & MASK] = tokeniser.nextToken();
+            count++;
+        }
+        return ring[(head + i) & MASK].tokenClass;
+    }
+
+    @Override
+    public String data() {
+        return ring[head].data;
+    }
+
+    @Override
+    public int index() {
+        return index;
+    }
+
+    @Override
+    public Token current() {
+        return ring[head];
+    }
+}
@@ -0,0 +1,36 @@
+package parser;
+
+import lexer.Token;
+import lexer.Token.TokenClass;
+
+/**
+ * The view of the token stream the {@link Parser} works on: a current token that can be inspected, consumed, and
+ * looked past.
+ */
+interface TokenCursor {
+
+    /**
+     * Consumes the current token; the next one becomes current.
+     */
+    void advance();
+
+    /**
+     * Returns the class of the i^th token after the current one (0 being the current token).
+     */
+    TokenClass lookAhead(int i);
+
+    /**
+     * Returns the data of the current token.
+     */
+    String data();
+
+    /**
+     * Returns the number of tokens consumed so far, which identifies the current token.
+     */
+    int index();
+
+    /**
+     * Returns the current token as a {@link Token} object. Only meant for error reporting.
+     */
+    Token current();
+}
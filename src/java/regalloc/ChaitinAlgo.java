@@ -1,31 +1,28 @@
 package regalloc;
 
-import com.sun.source.tree.BreakTree;
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Stack;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 public class ChaitinAlgo {
-    Stack<VertexEdgesPair> modifications = new Stack<>();
-    Stack<VertexEdgesPair> spilling = new Stack<>();
+    Deque<Vertex> modifications = new ArrayDeque<>();
+    Deque<Vertex> spilling = new ArrayDeque<>();
 
-    public Graph run(List<Node> nodes) {
-        Graph graph = new Graph(nodes);
+    public InterferenceGraph run(Liveness liveness) {
+        InterferenceGraph graph = new InterferenceGraph(liveness);
         //Reduce as much as you can
         while(true) {
             Vertex v = graph.getSubKVertex();
             if(v == null) {
-                if(graph.vertices.isEmpty()) break;
+                if(graph.isEmpty()) break;
                 //Spilling
-                v = graph.getHighestDegreeVertex();
-                VertexEdgesPair pair = graph.removeVertex(v);
-                spilling.push(pair);
+                v = graph.getSpillCandidate();
+                graph.removeVertex(v);
+                spilling.push(v);
                 continue;
             }
 
-            VertexEdgesPair pair = graph.removeVertex(v);
-            modifications.push(pair);
+            graph.removeVertex(v);
+            modifications.push(v);
         }
         while(!modifications.isEmpty()) {
             graph.addAndColorVertex(modifications.pop());
@@ -0,0 +1,197 @@
+package regalloc;
+
+import gen.asm.*;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * The part of the graph-colouring allocators that does not depend on how registers are coloured. Colours 1 to
+ * {@code registers.length} stand for the registers of the same rank; a register of colour 0 is spilled to a stack
+ * slot of the function's frame and loaded into one of the {@code spilledRegs} around each of its uses, unless its
+ * value is a constant or an address, which is recomputed there instead.
+ *
+ * The $s registers a function writes to are saved by pushRegisters and restored by popRegisters; the $t registers
+ * are saved by the caller, in its frame, around each call they are live across.
+ */
+abstract class ColouringRegAlloc implements AssemblyPass {
+
+    public static Register[] registers = {Register.Arch.t0, Register.Arch.t1, Register.Arch.t2, Register.Arch.t3, Register.Arch.t4, Register.Arch.t5, Register.Arch.t6, Register.Arch.t7, Register.Arch.t8, Register.Arch.t9, Register.Arch.s0, Register.Arch.s1, Register.Arch.s2, Register.Arch.s3, Register.Arch.s4};
+    public static Register[] spilledRegs = {Register.Arch.s5, Register.Arch.s6, Register.Arch.s7};
+    // the registers a function must preserve for its callers; the others are saved by the caller around each call
+    static final Set<Register> calleeSaved = Set.of(Register.Arch.s0, Register.Arch.s1, Register.Arch.s2, Register.Arch.s3, Register.Arch.s4, Register.Arch.s5, Register.Arch.s6, Register.Arch.s7);
+
+    /**
+     * Allocates the TEXT sections of the program independently of each other, in parallel on the fork/join pool of
+     * the calling thread or on the common pool, and puts the results together in the order of the sections. The
+     * allocator keeps no state between sections, so one instance can serve any number of threads.
+     */
+    @Override
+    public AssemblyProgram apply(AssemblyProgram program) {
+        AssemblyProgram newProg = new AssemblyProgram(program.context);
+        program.sections.parallelStream()
+                .map(section -> section.type == AssemblyProgram.Section.Type.DATA ? section : allocate(section))
+                .collect(Collectors.toList())
+                .forEach(newProg::emitSection);
+        return newProg;
+    }
+
+    /**
+     * Puts in {@code colours} the colour of every virtual register of the section whose liveness is given.
+     */
+    abstract void colour(Liveness liveness, Map<Register, Integer> colours);
+
+    /**
+     * @return whether the instruction copies a register into one of the same colour, and can be left out
+     */
+    boolean isRedundantCopy(Instruction insn, Map<Register, Integer> regToInt) {
+        return false;
+    }
+
+    private static void emitInstructionWithoutVirtualRegister(Instruction insn, Map<Register, Integer> regToInt, SpillSlots slots, Map<Register, Instruction> rematerialised, AssemblyProgram.Section section) {
+
+        section.emit("Original instruction: "+insn);
+
+        final Map<Register, Register> vrToAr = new HashMap<>();
+        final Stack<Register> freeTempRegs = new Stack<>();
+        final Stack<Register> freeSpilledRegs = new Stack<>();
+        freeTempRegs.addAll(Arrays.asList(registers));
+        freeSpilledRegs.addAll(Arrays.asList(spilledRegs));
+
+        // creates a map from virtual register to temporary architecture register for all registers appearing in the instructions
+        final Set<Register> spilled = new HashSet<>();
+        insn.registers().forEach(reg -> {
+            if (reg.isVirtual() && regToInt.get(reg) != 0) {
+                Register tmp = freeTempRegs.get(regToInt.get(reg)-1);
+                vrToAr.put(reg, tmp);
+            } else if (reg.isVirtual() && spilled.add(reg)) {
+                Register tmp = freeSpilledRegs.pop();
+                vrToAr.put(reg, tmp);
+            }
+        });
+
+        // load the values of any spilled registers from their stack slots, or recompute them
+        insn.uses().stream().distinct().forEach(reg -> {
+            if (reg.isVirtual() && rematerialised.containsKey(reg))
+                section.emit(rematerialised.get(reg).rebuild(vrToAr));
+            else if (reg.isVirtual() && regToInt.get(reg) == 0)
+                section.emit(OpCode.LW, vrToAr.get(reg), Register.Arch.fp, slots.offset(reg));
+        });
+
+        // emit new instructions where all virtual register have been replaced by architectural ones
+        section.emit(insn.rebuild(vrToAr));
+
+        if (insn.def() != null) {
+            if (insn.def().isVirtual() && regToInt.get(insn.def()) == 0)
+                section.emit(OpCode.SW, vrToAr.get(insn.def()), Register.Arch.fp, slots.offset(insn.def()));
+        }
+    }
+
+    // the section's instructions without virtual registers, and push/pop registers turned into real sequences of instructions
+    private AssemblyProgram.Section allocate(AssemblyProgram.Section section) {
+        final Liveness liveness = new Liveness(section.items);
+        final Map<Register, Integer> regToInt = new HashMap<>();
+        colour(liveness, regToInt);
+        final List<Register.Virtual> vrs = liveness.registers();
+
+        // recompute the spilled registers that hold a constant or an address where they are used, and give the
+        // others stack slots in the frame, sharing them where their live ranges allow
+        final Map<Register, Instruction> rematerialised = new HashMap<>();
+        Instruction[] rematerialisations = liveness.rematerialisations();
+        Set<Register> spilled = new HashSet<>();
+        for (int v = 0; v < vrs.size(); v++) {
+            if (regToInt.get(vrs.get(v)) != 0)
+                continue;
+            if (rematerialisations[v] != null)
+                rematerialised.put(vrs.get(v), rematerialisations[v]);
+            else
+                spilled.add(vrs.get(v));
+        }
+        final SpillSlots slots = spilled.isEmpty() ? SpillSlots.NONE : new SpillSlots(liveness, spilled);
+
+        // the callee-saved registers the section writes to, saved once for the whole function
+        BitSet used = new BitSet();
+        vrs.forEach(vr -> used.set(regToInt.get(vr)));
+        final List<Register> saved = new ArrayList<>();
+        used.stream().filter(c -> c != 0 && calleeSaved.contains(registers[c-1]))
+                .forEach(c -> saved.add(registers[c-1]));
+        // the most spilled registers of one instruction, which take the spill registers from the last
+        int spilledPerInstruction = 0;
+        for (Instruction insn : liveness.instructions())
+            spilledPerInstruction = Math.max(spilledPerInstruction, (int) insn.registers().stream().distinct()
+                    .filter(reg -> reg.isVirtual() && regToInt.get(reg) == 0).count());
+        for (int i = spilledRegs.length - spilledPerInstruction; i < spilledRegs.length; i++)
+            saved.add(spilledRegs[i]);
+
+        // the caller-saved registers live across each call, by instruction
+        final Map<Integer, List<Register>> callSaves = new HashMap<>();
+        liveness.scan((instruction, liveIn, liveOut) -> {
+            if (liveness.instructions().get(instruction).opcode != OpCode.JAL)
+                return;
+            BitSet colours = new BitSet();
+            for (int w = 0; w < liveOut.length; w++) {
+                for (long bits = liveOut[w]; bits != 0; bits &= bits - 1)
+                    colours.set(regToInt.get(vrs.get(w * 64 + Long.numberOfTrailingZeros(bits))));
+            }
+            List<Register> live = new ArrayList<>();
+            colours.stream().filter(c -> c != 0 && !calleeSaved.contains(registers[c-1]))
+                    .forEach(c -> live.add(registers[c-1]));
+            if (!live.isEmpty())
+                callSaves.put(instruction, live);
+        });
+        final int callSaveSize = 4 * callSaves.values().stream().mapToInt(List::size).max().orElse(0);
+
+        // below the saved frame pointer: the spill slots, the callee-saved registers, then the caller-saved
+        // registers of the current call, all reserved with a single adjustment of the stack pointer
+        final int savedBase = -slots.size();
+        final int callSaveBase = savedBase - 4 * saved.size();
+        final int frameSize = slots.size() + 4 * saved.size() + callSaveSize;
+
+        final AssemblyProgram.Section newSection = new AssemblyProgram.Section(AssemblyProgram.Section.Type.TEXT);
+
+        AssemblyItemVisitor visitor = new AssemblyItemVisitor() {
+            // position of the next instruction among the section's instructions
+            int instruction = 0;
+
+            public void visitComment(Comment comment) {
+                newSection.emit(comment);
+            }
+            public void visitLabel(Label label) {
+                newSection.emit(label);
+            }
+            public void visitDirective(Directive directive) {
+                newSection.emit(directive);
+            }
+            public void visitInstruction(Instruction insn) {
+                List<Register> live = callSaves.get(instruction++);
+                if (insn == Instruction.Nullary.pushRegisters) {
+                    newSection.emit("Original instruction: pushRegisters");
+                    if (frameSize > 0)
+                        newSection.emit(OpCode.ADDI, Register.Arch.sp, Register.Arch.sp, -frameSize);
+                    for (int i = 0; i < saved.size(); i++)
+                        newSection.emit(OpCode.SW, saved.get(i), Register.Arch.fp, savedBase - 4 * (i + 1));
+                } else if (insn == Instruction.Nullary.popRegisters) {
+                    newSection.emit("Original instruction: popRegisters");
+                    for (int i = 0; i < saved.size(); i++)
+                        newSection.emit(OpCode.LW, saved.get(i), Register.Arch.fp, savedBase - 4 * (i + 1));
+                    if (frameSize > 0)
+                        newSection.emit(OpCode.ADDI, Register.Arch.sp, Register.Arch.sp, frameSize);
+                } else if (isRedundantCopy(insn, regToInt))
+                    newSection.emit("Coalesced copy: "+insn);
+                else if (insn.def() != null && rematerialised.get(insn.def()) == insn)
+                    newSection.emit("Rematerialised at each use: "+insn);
+                else if (live != null) {
+                    newSection.emit("Saving the registers live across the call");
+                    for (int i = 0; i < live.size(); i++)
+                        newSection.emit(OpCode.SW, live.get(i), Register.Arch.fp, callSaveBase - 4 * (i + 1));
+                    emitInstructionWithoutVirtualRegister(insn, regToInt, slots, rematerialised, newSection);
+                    for (int i = 0; i < live.size(); i++)
+                        newSection.emit(OpCode.LW, live.get(i), Register.Arch.fp, callSaveBase - 4 * (i + 1));
+                } else
+                    emitInstructionWithoutVirtualRegister(insn, regToInt, slots, rematerialised, newSection);
+            }
+        };
+        section.items.forEach(item -> item.accept(visitor));
+        return newSection;
+    }
+}
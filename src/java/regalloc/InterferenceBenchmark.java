@@ -0,0 +1,100 @@
+package regalloc;
+
+import gen.asm.AssemblyItem;
+import gen.asm.CompilationContext;
+import gen.asm.Instruction;
+import gen.asm.OpCode;
+import gen.asm.Register;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Measures Chaitin's algorithm on synthetic functions with thousands of virtual registers, and checks that no two
+ * registers live at the same time are given the same colour.
+ *
+ * Usage: java regalloc.InterferenceBenchmark
+ */
+public class InterferenceBenchmark {
+
+    private static final int[] SIZES = {250, 500, 1000, 2000, 4000, 8000};
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) {
+        PrintStream out = System.out;
+        // the allocator reports every colour it hands out
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int size : SIZES) {
+                Liveness liveness = new Liveness(function(size));
+                Map<Register, Integer> colours = new HashMap<>();
+                double ms = time(() -> {
+                    colours.clear();
+                    new ChaitinAlgo().run(liveness).vertices.forEach(v -> colours.put(v.register, v.color));
+                });
+                check(liveness, colours, size);
+                long spilled = colours.values().stream().filter(c -> c == 0).count();
+                out.printf("%6d registers %5d spilled %10.1f ms%n", size, spilled, ms);
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static double time(Runnable allocation) {
+        allocation.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++)
+            allocation.run();
+        return (System.nanoTime() - start) / 1e6 / RUNS;
+    }
+
+    // the registers live out of each instruction, and the one it defines, have different colours unless spilled
+    private static void check(Liveness liveness, Map<Register, Integer> colours, int size) {
+        List<Register.Virtual> registers = liveness.registers();
+        liveness.scan((instruction, liveIn, liveOut) -> {
+            Map<Integer, Register> holders = new HashMap<>();
+            for (int w = 0; w < liveOut.length; w++) {
+                for (long bits = liveOut[w]; bits != 0; bits &= bits - 1)
+                    hold(holders, registers.get(w * 64 + Long.numberOfTrailingZeros(bits)), colours, size);
+            }
+            int def = liveness.def(instruction);
+            if (def != -1 && !holders.containsValue(registers.get(def)))
+                hold(holders, registers.get(def), colours, size);
+        });
+    }
+
+    private static void hold(Map<Integer, Register> holders, Register register, Map<Register, Integer> colours,
+                             int size) {
+        int colour = colours.get(register);
+        if (colour != 0 && holders.put(colour, register) != null)
+            throw new IllegalStateException("interfering registers share a colour on " + size + " registers");
+    }
+
+    // one register defined per instruction, most live for a few dozen instructions and some for a few hundred; a
+    // store after each instruction uses the registers whose last use it is
+    private static List<AssemblyItem> function(int size) {
+        CompilationContext context = new CompilationContext();
+        Register.Virtual[] registers = new Register.Virtual[size];
+        int[] lastUse = new int[size];
+        List<List<Register>> dying = new ArrayList<>();
+        for (int r = 0; r < size; r++) {
+            registers[r] = context.createVirtualRegister();
+            int length = 1 + (r * 7919) % 24 + (r % 64 == 0 ? 300 : 0);
+            lastUse[r] = Math.min(size - 1, r + length);
+            dying.add(new ArrayList<>());
+        }
+        for (int r = 0; r < size; r++)
+            dying.get(lastUse[r]).add(registers[r]);
+
+        List<AssemblyItem> items = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Register src = i == 0 ? Register.Arch.zero : registers[i - 1];
+            items.add(new Instruction.TernaryArithmetic(OpCode.ADD, registers[i], src, src));
+            for (Register register : dying.get(i))
+                items.add(new Instruction.Store(OpCode.SW, register, Register.Arch.sp, 0));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,234 @@
+package regalloc;
+
+import gen.asm.Register;
+
+import java.util.*;
+
+/**
+ * Interference graph of the virtual registers of one section. Registers are numbered densely in order of first
+ * appearance; interference is kept both as a triangular bit matrix, for constant-time tests, and as adjacency lists,
+ * for walking the neighbours of a register. The degree of each register counts its neighbours still in the graph and
+ * is kept up to date as registers are removed and added back.
+ */
+public class InterferenceGraph {
+    private final int k = ChaitinRegAlloc.registers.length;
+
+    // every vertex, removed or not, in order of first appearance
+    public final List<Vertex> vertices;
+
+    private final Vertex[] byId;
+    private final HashMap<String, Integer> ids;
+    private final long[] matrix;
+    private final int[][] adjacent;
+    private final int[] adjacentCount;
+    private final int[] degree;
+    private final boolean[] present;
+    private int presentCount;
+    // present vertices of degree lower than k
+    private final BitSet lowDegree;
+    // by vertex
+    private final double[] spillCosts;
+    // spill candidates by cost over degree; entries go stale as degrees fall and are refreshed when they come up
+    private final PriorityQueue<double[]> spillCandidates;
+
+    public InterferenceGraph(Liveness liveness) {
+        Register.Virtual[] registers = liveness.registers().toArray(new Register.Virtual[0]);
+        vertices = new ArrayList<>();
+        ids = new HashMap<>();
+        for (Register.Virtual register: registers) {
+            Vertex vertex = new Vertex(register);
+            ids.put(vertex.name, vertices.size());
+            vertices.add(vertex);
+        }
+
+        int n = vertices.size();
+        byId = vertices.toArray(new Vertex[0]);
+        matrix = new long[(int) (((long) n * (n - 1) / 2 + 63) / 64)];
+        adjacent = new int[n][];
+        adjacentCount = new int[n];
+        degree = new int[n];
+        present = new boolean[n];
+        Arrays.fill(present, true);
+        presentCount = n;
+        lowDegree = new BitSet(n);
+        spillCosts = liveness.spillCosts();
+        spillCandidates = new PriorityQueue<>((e1, e2) -> e1[0] != e2[0] ? Double.compare(e1[0], e2[0])
+                : Double.compare(e1[1], e2[1]));
+
+        int[] live = new int[byId.length];
+        liveness.scan((instruction, liveIn, liveOut) -> {
+            interfere(liveIn, live);
+            interfere(liveOut, live);
+            // a definition no one reads is in neither set, yet still overwrites its register
+            int def = liveness.def(instruction);
+            if (def != -1) {
+                for (int w = 0; w < liveOut.length; w++) {
+                    for (long bits = liveOut[w]; bits != 0; bits &= bits - 1)
+                        addEdge(def, w * 64 + Long.numberOfTrailingZeros(bits));
+                }
+            }
+        });
+        findLowDegree();
+    }
+
+    private void findLowDegree() {
+        for (int v = 0; v < byId.length; v++) {
+            if (degree[v] < k)
+                lowDegree.set(v);
+            spillCandidates.add(candidate(v));
+        }
+    }
+
+    // cost over degree, then the vertex
+    private double[] candidate(int v) {
+        return new double[]{spillCosts[v] / Math.max(degree[v], 1), v, degree[v]};
+    }
+
+    /**
+     * Returns the vertex to spill when none has fewer than k neighbours: the one whose spill costs the least for
+     * the neighbours it frees.
+     */
+    public Vertex getSpillCandidate() {
+        while (!spillCandidates.isEmpty()) {
+            double[] candidate = spillCandidates.poll();
+            int v = (int) candidate[1];
+            if (!present[v])
+                continue;
+            // degrees only fall while vertices are being removed, so a stale entry is refreshed to a higher ratio
+            if ((int) candidate[2] != degree[v]) {
+                spillCandidates.add(candidate(v));
+                continue;
+            }
+            return byId[v];
+        }
+        return null;
+    }
+
+    private void interfere(long[] registers, int[] live) {
+        int count = 0;
+        for (int w = 0; w < registers.length; w++) {
+            for (long bits = registers[w]; bits != 0; bits &= bits - 1)
+                live[count++] = w * 64 + Long.numberOfTrailingZeros(bits);
+        }
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++)
+                addEdge(live[i], live[j]);
+        }
+    }
+
+    private void addEdge(int v1, int v2) {
+        if (v1 == v2)
+            return;
+        long bit = bit(v1, v2);
+        int word = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        if ((matrix[word] & mask) != 0)
+            return;
+        matrix[word] |= mask;
+        append(v1, v2);
+        append(v2, v1);
+        degree[v1]++;
+        degree[v2]++;
+    }
+
+    private void append(int v, int neighbour) {
+        int[] list = adjacent[v];
+        if (list == null)
+            list = adjacent[v] = new int[4];
+        else if (adjacentCount[v] == list.length)
+            list = adjacent[v] = Arrays.copyOf(list, list.length * 2);
+        list[adjacentCount[v]++] = neighbour;
+    }
+
+    // position of the pair in the lower triangle of the matrix
+    private static long bit(int v1, int v2) {
+        int high = Math.max(v1, v2);
+        int low = Math.min(v1, v2);
+        return (long) high * (high - 1) / 2 + low;
+    }
+
+    public boolean interferes(Vertex v1, Vertex v2) {
+        int id1 = id(v1);
+        int id2 = id(v2);
+        if (id1 == id2)
+            return false;
+        long bit = bit(id1, id2);
+        return (matrix[(int) (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    private int id(Vertex v) {
+        return ids.get(v.name);
+    }
+
+    public int getDegree(Vertex v) {
+        return degree[id(v)];
+    }
+
+    /**
+     * Returns the first vertex, in order of appearance, with fewer than k neighbours, or null if there is none.
+     */
+    public Vertex getSubKVertex() {
+        int v = lowDegree.nextSetBit(0);
+        return v < 0 ? null : byId[v];
+    }
+
+    /**
+     * @return whether every vertex has been removed
+     */
+    public boolean isEmpty() {
+        return presentCount == 0;
+    }
+
+    public void removeVertex(Vertex vertex) {
+        int v = id(vertex);
+        present[v] = false;
+        presentCount--;
+        lowDegree.clear(v);
+        for (int i = 0; i < adjacentCount[v]; i++) {
+            int neighbour = adjacent[v][i];
+            if (present[neighbour] && --degree[neighbour] < k)
+                lowDegree.set(neighbour);
+        }
+    }
+
+    private void addVertex(Vertex vertex) {
+        int v = id(vertex);
+        present[v] = true;
+        presentCount++;
+        int d = 0;
+        for (int i = 0; i < adjacentCount[v]; i++) {
+            int neighbour = adjacent[v][i];
+            if (present[neighbour]) {
+                d++;
+                if (++degree[neighbour] >= k)
+                    lowDegree.clear(neighbour);
+            }
+        }
+        degree[v] = d;
+        if (d < k)
+            lowDegree.set(v);
+    }
+
+    /**
+     * Adds a vertex back and gives it the lowest colour none of its neighbours has; it keeps colour 0, spilled, if
+     * there is no such colour.
+     */
+    public void addAndColorVertex(Vertex vertex) {
+        addVertex(vertex);
+        int v = id(vertex);
+        // neighbours not coloured yet have colour 0, which is not a register
+        long used = 0;
+        for (int i = 0; i < adjacentCount[v]; i++)
+            used |= 1L << byId[adjacent[v][i]].color;
+        for (int i = 1; i <= k; i++) {
+            if ((used & (1L << i)) == 0) {
+                vertex.color = i;
+                break;
+            }
+        }
+    }
+
+    public void addSpilledVertex(Vertex vertex) {
+        addVertex(vertex);
+    }
+}
@@ -0,0 +1,386 @@
+package regalloc;
+
+import gen.asm.*;
+
+import java.util.*;
+
+/**
+ * George and Appel's iterated register coalescing: simplify, conservative (Briggs) coalescing of copies between
+ * virtual registers, freeze and optimistic colouring. Copies whose two registers end up with the same colour are left
+ * out of the program. Registers that do not get a colour are spilled as ChaitinRegAlloc spills them, so there is no
+ * need to rewrite the program and start again.
+ */
+public final class IteratedCoalescingRegAlloc extends ColouringRegAlloc {
+
+    public final static IteratedCoalescingRegAlloc INSTANCE = new IteratedCoalescingRegAlloc();
+
+    private IteratedCoalescingRegAlloc() { }
+
+    @Override
+    void colour(Liveness liveness, Map<Register, Integer> colours) {
+        int[] colour = new Allocation(liveness).colour();
+        List<Register.Virtual> virtuals = liveness.registers();
+        for (int v = 0; v < colour.length; v++)
+            colours.put(virtuals.get(v), colour[v]);
+    }
+
+    @Override
+    boolean isRedundantCopy(Instruction insn, Map<Register, Integer> regToInt) {
+        Register[] copy = copy(insn);
+        if (copy == null)
+            return false;
+        int colour = regToInt.get(copy[0]);
+        return colour != 0 && colour == regToInt.get(copy[1]);
+    }
+
+    /**
+     * @return the destination and the source of a copy between two virtual registers, or null
+     */
+    static Register[] copy(Instruction insn) {
+        Register dst = null;
+        Register src = null;
+        if (insn instanceof Instruction.ArithmeticWithImmediate) {
+            Instruction.ArithmeticWithImmediate i = (Instruction.ArithmeticWithImmediate) insn;
+            if ((i.opcode == OpCode.ADDI || i.opcode == OpCode.ADDIU || i.opcode == OpCode.ORI) && i.imm == 0) {
+                dst = i.dst;
+                src = i.src;
+            }
+        } else if (insn instanceof Instruction.TernaryArithmetic) {
+            Instruction.TernaryArithmetic i = (Instruction.TernaryArithmetic) insn;
+            if (i.opcode == OpCode.ADD || i.opcode == OpCode.ADDU || i.opcode == OpCode.OR) {
+                if (i.src2 == Register.Arch.zero) {
+                    dst = i.dst;
+                    src = i.src1;
+                } else if (i.src1 == Register.Arch.zero) {
+                    dst = i.dst;
+                    src = i.src2;
+                }
+            }
+        }
+        if (dst == null || !dst.isVirtual() || !src.isVirtual() || dst == src)
+            return null;
+        return new Register[]{dst, src};
+    }
+
+    /*
+     * The allocation of one section. Registers are the dense ids of the section's Liveness; the sets of the algorithm
+     * are the state of each register and of each move.
+     */
+    private static final class Allocation {
+        private static final int K = registers.length;
+
+        // where each register is
+        private static final byte SIMPLIFY = 0, FREEZE = 1, SPILL = 2, STACK = 3, COALESCED = 4, COLOURED = 5;
+        // where each move is
+        private static final byte WORKLIST = 0, ACTIVE = 1, DONE = 2;
+
+        private final int n;
+        private final long[] adjacencyMatrix;
+        private final int[][] adjacent;
+        private final int[] adjacentCount;
+        private final int[] degree;
+        private final int[] alias;
+        private final byte[] state;
+
+        private final int[] moveDst;
+        private final int[] moveSrc;
+        private final byte[] moveState;
+        private final List<List<Integer>> moveList;
+
+        private final BitSet simplifyWorklist = new BitSet();
+        private final BitSet freezeWorklist = new BitSet();
+        private final BitSet spillWorklist = new BitSet();
+        private final BitSet worklistMoves = new BitSet();
+        private final int[] selectStack;
+        private int selectCount;
+        private final double[] spillCosts;
+
+        Allocation(Liveness liveness) {
+            n = liveness.registers().size();
+            adjacencyMatrix = new long[(int) (((long) n * (n - 1) / 2 + 63) / 64)];
+            adjacent = new int[n][];
+            adjacentCount = new int[n];
+            degree = new int[n];
+            alias = new int[n];
+            state = new byte[n];
+            selectStack = new int[n];
+            spillCosts = liveness.spillCosts();
+            moveList = new ArrayList<>(n);
+            for (int v = 0; v < n; v++) {
+                alias[v] = v;
+                moveList.add(new ArrayList<>(0));
+            }
+
+            // the register a copy defines does not interfere with the one it reads, they may be coalesced
+            Map<Register, Integer> ids = new HashMap<>();
+            List<Register.Virtual> virtuals = liveness.registers();
+            for (int v = 0; v < n; v++)
+                ids.put(virtuals.get(v), v);
+            List<Instruction> instructions = liveness.instructions();
+            List<int[]> moves = new ArrayList<>();
+            liveness.scan((i, liveIn, liveOut) -> {
+                Instruction insn = instructions.get(i);
+                Register def = insn.def();
+                if (def == null || !def.isVirtual())
+                    return;
+                int d = ids.get(def);
+                Register[] copy = copy(insn);
+                int s = copy == null ? -1 : ids.get(copy[1]);
+                for (int w = 0; w < liveOut.length; w++) {
+                    for (long bits = liveOut[w]; bits != 0; bits &= bits - 1) {
+                        int live = w * 64 + Long.numberOfTrailingZeros(bits);
+                        if (live != s)
+                            addEdge(d, live);
+                    }
+                }
+                if (copy != null) {
+                    moveList.get(d).add(moves.size());
+                    moveList.get(s).add(moves.size());
+                    moves.add(new int[]{d, s});
+                }
+            });
+            moveDst = new int[moves.size()];
+            moveSrc = new int[moves.size()];
+            moveState = new byte[moves.size()];
+            for (int m = 0; m < moves.size(); m++) {
+                moveDst[m] = moves.get(m)[0];
+                moveSrc[m] = moves.get(m)[1];
+                worklistMoves.set(m);
+            }
+        }
+
+        int[] colour() {
+            makeWorklist();
+            while (true) {
+                if (!simplifyWorklist.isEmpty())
+                    simplify();
+                else if (!worklistMoves.isEmpty())
+                    coalesce();
+                else if (!freezeWorklist.isEmpty())
+                    freeze();
+                else if (!spillWorklist.isEmpty())
+                    selectSpill();
+                else
+                    break;
+            }
+            return assignColours();
+        }
+
+        private long bit(int u, int v) {
+            int high = Math.max(u, v);
+            int low = Math.min(u, v);
+            return (long) high * (high - 1) / 2 + low;
+        }
+
+        private boolean interferes(int u, int v) {
+            long bit = bit(u, v);
+            return (adjacencyMatrix[(int) (bit >>> 6)] & (1L << bit)) != 0;
+        }
+
+        private void addEdge(int u, int v) {
+            if (u == v || interferes(u, v))
+                return;
+            long bit = bit(u, v);
+            adjacencyMatrix[(int) (bit >>> 6)] |= 1L << bit;
+            append(u, v);
+            append(v, u);
+            degree[u]++;
+            degree[v]++;
+        }
+
+        private void append(int v, int neighbour) {
+            int[] list = adjacent[v];
+            if (list == null)
+                list = adjacent[v] = new int[4];
+            else if (adjacentCount[v] == list.length)
+                list = adjacent[v] = Arrays.copyOf(list, list.length * 2);
+            list[adjacentCount[v]++] = neighbour;
+        }
+
+        // neighbours still in the graph
+        private boolean isAdjacent(int v) {
+            return state[v] != STACK && state[v] != COALESCED;
+        }
+
+        private boolean isMoveRelated(int v) {
+            for (int m : moveList.get(v)) {
+                if (moveState[m] != DONE)
+                    return true;
+            }
+            return false;
+        }
+
+        private void makeWorklist() {
+            for (int v = 0; v < n; v++)
+                moveTo(v, degree[v] >= K ? SPILL : isMoveRelated(v) ? FREEZE : SIMPLIFY);
+        }
+
+        private void moveTo(int v, byte where) {
+            switch (state[v]) {
+                case SIMPLIFY: simplifyWorklist.clear(v); break;
+                case FREEZE:   freezeWorklist.clear(v); break;
+                case SPILL:    spillWorklist.clear(v); break;
+            }
+            state[v] = where;
+            switch (where) {
+                case SIMPLIFY: simplifyWorklist.set(v); break;
+                case FREEZE:   freezeWorklist.set(v); break;
+                case SPILL:    spillWorklist.set(v); break;
+            }
+        }
+
+        private void simplify() {
+            int v = simplifyWorklist.nextSetBit(0);
+            moveTo(v, STACK);
+            selectStack[selectCount++] = v;
+            for (int i = 0; i < adjacentCount[v]; i++) {
+                int t = adjacent[v][i];
+                if (isAdjacent(t))
+                    decrementDegree(t);
+            }
+        }
+
+        private void decrementDegree(int v) {
+            if (degree[v]-- != K)
+                return;
+            enableMoves(v);
+            for (int i = 0; i < adjacentCount[v]; i++) {
+                int t = adjacent[v][i];
+                if (isAdjacent(t))
+                    enableMoves(t);
+            }
+            moveTo(v, isMoveRelated(v) ? FREEZE : SIMPLIFY);
+        }
+
+        private void enableMoves(int v) {
+            for (int m : moveList.get(v)) {
+                if (moveState[m] == ACTIVE) {
+                    moveState[m] = WORKLIST;
+                    worklistMoves.set(m);
+                }
+            }
+        }
+
+        private void coalesce() {
+            int m = worklistMoves.nextSetBit(0);
+            worklistMoves.clear(m);
+            int u = alias(moveDst[m]);
+            int v = alias(moveSrc[m]);
+            if (u == v) {
+                moveState[m] = DONE;
+                addWorklist(u);
+            } else if (interferes(u, v)) {
+                moveState[m] = DONE;
+                addWorklist(u);
+                addWorklist(v);
+            } else if (conservative(u, v)) {
+                moveState[m] = DONE;
+                combine(u, v);
+                addWorklist(u);
+            } else {
+                moveState[m] = ACTIVE;
+            }
+        }
+
+        private void addWorklist(int v) {
+            if (state[v] == FREEZE && !isMoveRelated(v) && degree[v] < K)
+                moveTo(v, SIMPLIFY);
+        }
+
+        // Briggs: the combined register has fewer than K neighbours of significant degree
+        private boolean conservative(int u, int v) {
+            BitSet seen = new BitSet(n);
+            int significant = 0;
+            for (int w : new int[]{u, v}) {
+                for (int i = 0; i < adjacentCount[w]; i++) {
+                    int t = adjacent[w][i];
+                    if (isAdjacent(t) && !seen.get(t)) {
+                        seen.set(t);
+                        if (degree[t] >= K)
+                            significant++;
+                    }
+                }
+            }
+            return significant < K;
+        }
+
+        private int alias(int v) {
+            while (state[v] == COALESCED)
+                v = alias[v];
+            return v;
+        }
+
+        private void combine(int u, int v) {
+            moveTo(v, COALESCED);
+            alias[v] = u;
+            moveList.get(u).addAll(moveList.get(v));
+            enableMoves(v);
+            for (int i = 0; i < adjacentCount[v]; i++) {
+                int t = adjacent[v][i];
+                if (isAdjacent(t)) {
+                    addEdge(t, u);
+                    decrementDegree(t);
+                }
+            }
+            if (degree[u] >= K && state[u] == FREEZE)
+                moveTo(u, SPILL);
+        }
+
+        private void freeze() {
+            int v = freezeWorklist.nextSetBit(0);
+            moveTo(v, SIMPLIFY);
+            freezeMoves(v);
+        }
+
+        private void freezeMoves(int u) {
+            for (int m : moveList.get(u)) {
+                if (moveState[m] == DONE)
+                    continue;
+                int x = alias(moveDst[m]);
+                int y = alias(moveSrc[m]);
+                int v = y == alias(u) ? x : y;
+                worklistMoves.clear(m);
+                moveState[m] = DONE;
+                if (state[v] == FREEZE && !isMoveRelated(v) && degree[v] < K)
+                    moveTo(v, SIMPLIFY);
+            }
+        }
+
+        // the register whose spill costs the least for the neighbours it frees, as ChaitinRegAlloc chooses; the costs
+        // of coalesced registers are not combined, their copies are where most of their uses would be anyway
+        private void selectSpill() {
+            int spill = -1;
+            for (int v = spillWorklist.nextSetBit(0); v >= 0; v = spillWorklist.nextSetBit(v + 1)) {
+                if (spill == -1 || spillCosts[v] / degree[v] < spillCosts[spill] / degree[spill])
+                    spill = v;
+            }
+            moveTo(spill, SIMPLIFY);
+            freezeMoves(spill);
+        }
+
+        private int[] assignColours() {
+            int[] colour = new int[n];
+            while (selectCount > 0) {
+                int v = selectStack[--selectCount];
+                long used = 0;
+                for (int i = 0; i < adjacentCount[v]; i++) {
+                    int t = alias(adjacent[v][i]);
+                    if (state[t] == COLOURED)
+                        used |= 1L << colour[t];
+                }
+                state[v] = COLOURED;
+                for (int c = 1; c <= K; c++) {
+                    if ((used & (1L << c)) == 0) {
+                        colour[v] = c;
+                        break;
+                    }
+                }
+            }
+            for (int v = 0; v < n; v++) {
+                if (state[v] == COALESCED)
+                    colour[v] = colour[alias(v)];
+            }
+            return colour;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package regalloc;
+
+import gen.ControlFlowGraph;
+import gen.asm.*;
+
+import java.util.*;
+
+/**
+ * Poletto and Sarkar's linear-scan allocator. The live interval of a virtual register runs from the first to the last
+ * point of the section where it is live, instructions taken in the order of the section; intervals are handed the
+ * registers of {@code registers} in order of their start, and when none is free the interval that ends last is
+ * spilled, as ChaitinRegAlloc spills.
+ */
+public final class LinearScanRegAlloc extends ColouringRegAlloc {
+
+    public final static LinearScanRegAlloc INSTANCE = new LinearScanRegAlloc();
+
+    private LinearScanRegAlloc() { }
+
+    @Override
+    void colour(Liveness liveness, Map<Register, Integer> colours) {
+        List<Register.Virtual> virtuals = liveness.registers();
+        int n = virtuals.size();
+
+        // instruction i is live into at point 2i and out of at point 2i+1. A register live somewhere in a block is
+        // live between two of its uses and definitions there or the ends of the block, so those are enough
+        int[] start = new int[n];
+        int[] end = new int[n];
+        Arrays.fill(start, Integer.MAX_VALUE);
+        Arrays.fill(end, -1);
+        ControlFlowGraph cfg = liveness.cfg();
+        for (int b = 0; b < cfg.blockCount(); b++) {
+            extend(liveness.blockLiveIn(b), 2 * cfg.start(b), start, end);
+            extend(liveness.blockLiveOut(b), 2 * cfg.end(b) - 1, start, end);
+            for (int i = cfg.start(b); i < cfg.end(b); i++) {
+                for (int v : liveness.uses(i))
+                    extend(v, 2 * i, start, end);
+                if (liveness.def(i) != -1)
+                    extend(liveness.def(i), 2 * i + 1, start, end);
+            }
+        }
+
+        Integer[] byStart = new Integer[n];
+        for (int v = 0; v < n; v++)
+            byStart[v] = v;
+        Arrays.sort(byStart, Comparator.comparingInt((Integer v) -> start[v]).thenComparingInt(v -> v));
+
+        int[] colour = new int[n];
+        BitSet free = new BitSet();
+        free.set(1, registers.length + 1);
+        // active intervals by end, the register id breaking ties
+        TreeSet<Integer> active = new TreeSet<>(Comparator.comparingInt((Integer v) -> end[v]).thenComparingInt(v -> v));
+        for (int v : byStart) {
+            if (end[v] == -1)
+                continue;
+            while (!active.isEmpty() && end[active.first()] < start[v]) {
+                int expired = active.pollFirst();
+                free.set(colour[expired]);
+            }
+            if (!free.isEmpty()) {
+                colour[v] = free.nextSetBit(0);
+                free.clear(colour[v]);
+                active.add(v);
+                continue;
+            }
+            int last = active.last();
+            if (end[last] > end[v]) {
+                colour[v] = colour[last];
+                colour[last] = 0;
+                active.pollLast();
+                active.add(v);
+            }
+        }
+
+        for (int v = 0; v < n; v++)
+            colours.put(virtuals.get(v), colour[v]);
+    }
+
+    private static void extend(long[] live, int point, int[] start, int[] end) {
+        for (int w = 0; w < live.length; w++) {
+            for (long bits = live[w]; bits != 0; bits &= bits - 1)
+                extend(w * 64 + Long.numberOfTrailingZeros(bits), point, start, end);
+        }
+    }
+
+    private static void extend(int v, int point, int[] start, int[] end) {
+        start[v] = Math.min(start[v], point);
+        end[v] = Math.max(end[v], point);
+    }
+}
@@ -0,0 +1,293 @@
+package regalloc;
+
+import gen.ControlFlowGraph;
+import gen.asm.*;
+
+import java.util.*;
+
+/**
+ * Liveness of the virtual registers of one section. Virtual registers are numbered densely in order of first
+ * appearance and sets of them are bitsets, arrays of longs. The dataflow equations are solved once per basic block of
+ * the section's {@link ControlFlowGraph}, and the liveness at each instruction is recovered by scanning its block
+ * backwards from the block's live-out set.
+ */
+public final class Liveness {
+
+    /**
+     * Receives the liveness at each instruction; the sets are only valid for the duration of the call.
+     */
+    public interface Visitor {
+        void visit(int instruction, long[] liveIn, long[] liveOut);
+    }
+
+    private final ControlFlowGraph cfg;
+    private final List<Register.Virtual> registers = new ArrayList<>();
+    private final Map<Register, Integer> ids = new HashMap<>();
+    private final int words;
+
+    // per instruction: the id of the register it defines, or -1, and the ids of those it uses
+    private final int[] defs;
+    private final int[][] uses;
+
+    // per block
+    private final long[][] blockUse;
+    private final long[][] blockDef;
+    private final long[][] blockIn;
+    private final long[][] blockOut;
+
+    public Liveness(List<AssemblyItem> items) {
+        this(new ControlFlowGraph(items));
+    }
+
+    public Liveness(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        List<Instruction> instructions = cfg.instructions();
+        for (Instruction insn: instructions) {
+            for (Register register: insn.registers()) {
+                if (register.isVirtual() && !ids.containsKey(register)) {
+                    ids.put(register, registers.size());
+                    registers.add((Register.Virtual) register);
+                }
+            }
+        }
+        words = (registers.size() + 63) / 64;
+
+        int n = instructions.size();
+        defs = new int[n];
+        uses = new int[n][];
+        for (int i = 0; i < n; i++) {
+            Instruction insn = instructions.get(i);
+            Register def = insn.def();
+            defs[i] = def != null && def.isVirtual() ? ids.get(def) : -1;
+            List<Register> used = insn.uses();
+            int count = 0;
+            int[] ids = new int[used.size()];
+            for (Register register: used) {
+                if (register.isVirtual())
+                    ids[count++] = this.ids.get(register);
+            }
+            uses[i] = count == ids.length ? ids : Arrays.copyOf(ids, count);
+        }
+
+        int blocks = cfg.blockCount();
+        blockUse = new long[blocks][words];
+        blockDef = new long[blocks][words];
+        blockIn = new long[blocks][words];
+        blockOut = new long[blocks][words];
+        for (int b = 0; b < blocks; b++) {
+            for (int i = cfg.start(b); i < cfg.end(b); i++) {
+                for (int use: uses[i]) {
+                    if (!contains(blockDef[b], use))
+                        add(blockUse[b], use);
+                }
+                if (defs[i] != -1)
+                    add(blockDef[b], defs[i]);
+            }
+        }
+        solve();
+    }
+
+    /*
+     * Backward dataflow with a worklist seeded in postorder, the reverse of the reverse postorder, so that most
+     * blocks are visited after their successors. Blocks unreachable from the entry come last.
+     */
+    private void solve() {
+        int blocks = cfg.blockCount();
+        Deque<Integer> worklist = new ArrayDeque<>(blocks);
+        boolean[] queued = new boolean[blocks];
+        int[] rpo = cfg.reversePostorder();
+        for (int i = rpo.length - 1; i >= 0; i--) {
+            worklist.add(rpo[i]);
+            queued[rpo[i]] = true;
+        }
+        for (int b = 0; b < blocks; b++) {
+            if (!queued[b]) {
+                worklist.add(b);
+                queued[b] = true;
+            }
+        }
+
+        long[] in = new long[words];
+        while (!worklist.isEmpty()) {
+            int b = worklist.poll();
+            queued[b] = false;
+            long[] out = blockOut[b];
+            for (int s: cfg.successors(b)) {
+                long[] succIn = blockIn[s];
+                for (int w = 0; w < words; w++)
+                    out[w] |= succIn[w];
+            }
+            boolean changed = false;
+            for (int w = 0; w < words; w++) {
+                in[w] = blockUse[b][w] | (out[w] & ~blockDef[b][w]);
+                changed |= in[w] != blockIn[b][w];
+            }
+            if (!changed)
+                continue;
+            System.arraycopy(in, 0, blockIn[b], 0, words);
+            for (int p: cfg.predecessors(b)) {
+                if (!queued[p]) {
+                    worklist.add(p);
+                    queued[p] = true;
+                }
+            }
+        }
+    }
+
+    public ControlFlowGraph cfg() {
+        return cfg;
+    }
+
+    public List<Instruction> instructions() {
+        return cfg.instructions();
+    }
+
+    /**
+     * @return the virtual registers of the section, indexed by id
+     */
+    public List<Register.Virtual> registers() {
+        return registers;
+    }
+
+    /**
+     * @return the registers live into the block; the set must not be modified
+     */
+    public long[] blockLiveIn(int block) {
+        return blockIn[block];
+    }
+
+    /**
+     * @return the registers live out of the block; the set must not be modified
+     */
+    public long[] blockLiveOut(int block) {
+        return blockOut[block];
+    }
+
+    /**
+     * @return the register the instruction defines, or -1
+     */
+    public int def(int instruction) {
+        return defs[instruction];
+    }
+
+    /**
+     * @return the registers the instruction uses
+     */
+    public int[] uses(int instruction) {
+        return uses[instruction];
+    }
+
+    /**
+     * @return for each register, the number of times it is used or defined, each time weighted by 10 to the power of
+     * the loop depth of the instruction. A register that can be rematerialised costs only half of each of its uses:
+     * spilling it leaves out its definition and turns every load of it into a recomputation, which reads no memory.
+     */
+    public double[] spillCosts() {
+        Instruction[] rematerialisations = rematerialisations();
+        double[] costs = new double[registers.size()];
+        for (int i = 0; i < defs.length; i++) {
+            double weight = Math.pow(10, cfg.loopDepth(cfg.blockOf(i)));
+            if (defs[i] != -1 && rematerialisations[defs[i]] == null)
+                costs[defs[i]] += weight;
+            for (int use: uses[i])
+                costs[use] += rematerialisations[use] == null ? weight : weight / 2;
+        }
+        return costs;
+    }
+
+    /**
+     * @return for each register, its definition if that is the only one and loads a constant or the address of a
+     * label, so that it can be recomputed wherever the register is used instead of being spilled; null otherwise
+     */
+    public Instruction[] rematerialisations() {
+        List<Instruction> instructions = cfg.instructions();
+        Instruction[] rematerialisations = new Instruction[registers.size()];
+        boolean[] defined = new boolean[registers.size()];
+        boolean[] once = new boolean[registers.size()];
+        for (int i = 0; i < defs.length; i++) {
+            if (defs[i] == -1)
+                continue;
+            once[defs[i]] = !defined[defs[i]];
+            defined[defs[i]] = true;
+            Instruction insn = instructions.get(i);
+            if (insn instanceof Instruction.LoadImmediate || insn instanceof Instruction.LoadAddress)
+                rematerialisations[defs[i]] = insn;
+        }
+        for (int v = 0; v < rematerialisations.length; v++) {
+            if (!once[v])
+                rematerialisations[v] = null;
+        }
+        return rematerialisations;
+    }
+
+    /**
+     * Calls the visitor with the liveness at every instruction, block by block, each block from its last instruction
+     * to its first.
+     */
+    public void scan(Visitor visitor) {
+        long[] out = new long[words];
+        long[] in = new long[words];
+        for (int b = 0; b < cfg.blockCount(); b++) {
+            System.arraycopy(blockOut[b], 0, out, 0, words);
+            for (int i = cfg.end(b) - 1; i >= cfg.start(b); i--) {
+                System.arraycopy(out, 0, in, 0, words);
+                if (defs[i] != -1)
+                    remove(in, defs[i]);
+                for (int use: uses[i])
+                    add(in, use);
+                visitor.visit(i, in, out);
+                long[] swap = out;
+                out = in;
+                in = swap;
+            }
+        }
+    }
+
+    /**
+     * @return the registers live out of one instruction
+     */
+    public Set<Register> liveOut(int instruction) {
+        int b = cfg.blockOf(instruction);
+        long[] out = blockOut[b].clone();
+        for (int i = cfg.end(b) - 1; i > instruction; i--) {
+            if (defs[i] != -1)
+                remove(out, defs[i]);
+            for (int use: uses[i])
+                add(out, use);
+        }
+        return toSet(out);
+    }
+
+    /**
+     * @return the registers live into one instruction
+     */
+    public Set<Register> liveIn(int instruction) {
+        Set<Register> in = liveOut(instruction);
+        if (defs[instruction] != -1)
+            in.remove(registers.get(defs[instruction]));
+        for (int use: uses[instruction])
+            in.add(registers.get(use));
+        return in;
+    }
+
+    private Set<Register> toSet(long[] set) {
+        Set<Register> result = new LinkedHashSet<>();
+        for (int w = 0; w < words; w++) {
+            for (long bits = set[w]; bits != 0; bits &= bits - 1)
+                result.add(registers.get(w * 64 + Long.numberOfTrailingZeros(bits)));
+        }
+        return result;
+    }
+
+    static boolean contains(long[] set, int id) {
+        return (set[id >>> 6] & (1L << id)) != 0;
+    }
+
+    static void add(long[] set, int id) {
+        set[id >>> 6] |= 1L << id;
+    }
+
+    static void remove(long[] set, int id) {
+        set[id >>> 6] &= ~(1L << id);
+    }
+}
@@ -8,36 +8,14 @@ import gen.asm.*;
 import java.util.*;
 
 /**
- * A very naive register allocator which allocates each virtual registers in the data section with a label.
+ * A very naive register allocator which allocates each virtual registers in a stack slot of the function's frame.
  * The allocator assumes that each function has a single corresponding text section.
  */
 public final class NaiveRegAlloc implements AssemblyPass {
 
     private NaiveRegAlloc() { }
 
-    private static Map<Register.Virtual, Label>  collectVirtualRegisters(AssemblyProgram.Section section) {
-        final Map<Register.Virtual, Label> vrMap = new HashMap<>();
-
-        section.items.forEach(item ->
-                item.accept(new AssemblyItemVisitor() {
-                    public void visitComment(Comment comment) {}
-                    public void visitLabel(Label label) {}
-                    public void visitDirective(Directive directive) {}
-
-                    public void visitInstruction(Instruction insn) {
-                        insn.registers().forEach(reg -> {
-                            if (reg instanceof Register.Virtual) {
-                                Register.Virtual vr = (Register.Virtual) reg;
-                                Label l = Label.create(vr.toString());
-                                vrMap.put(vr, l);
-                            }
-                        });
-                    }
-                }));
-        return vrMap;
-    }
-
-    private static void emitInstructionWithoutVirtualRegister(Instruction insn, Map<Register.Virtual, Label> vrMap, AssemblyProgram.Section section) {
+    private static void emitInstructionWithoutVirtualRegister(Instruction insn, SpillSlots slots, AssemblyProgram.Section section) {
 
         section.emit("Original instruction: "+insn);
 
@@ -50,39 +28,28 @@ public final class NaiveRegAlloc implements AssemblyPass {
         insn.registers().forEach(reg -> {
             if (reg.isVirtual()) {
                 Register tmp = freeTempRegs.pop();
-                Label label = vrMap.get(reg);
                 vrToAr.put(reg, tmp);
             }
         });
 
-        // load the values of any virtual registers used by the instruction from memory into a temporary architectural register
+        // load the values of any virtual registers used by the instruction from their stack slots into a temporary architectural register
         insn.uses().forEach(reg -> {
-            if (reg.isVirtual()) {
-                Register tmp = vrToAr.get(reg);
-                Label label = vrMap.get(reg);
-                section.emit(OpCode.LA, tmp, label);
-                section.emit(OpCode.LW, tmp, tmp, 0);
-            }
+            if (reg.isVirtual())
+                section.emit(OpCode.LW, vrToAr.get(reg), Register.Arch.fp, slots.offset(reg));
         });
 
         // emit new instructions where all virtual register have been replaced by architectural ones
         section.emit(insn.rebuild(vrToAr));
 
         if (insn.def() != null) {
-            if (insn.def().isVirtual()) {
-                Register tmpVal = vrToAr.get(insn.def());
-                Register tmpAddr = freeTempRegs.remove(0);
-                Label label = vrMap.get(insn.def());
-
-                section.emit(OpCode.LA, tmpAddr, label);
-                section.emit(OpCode.SW, tmpVal, tmpAddr, 0);
-            }
+            if (insn.def().isVirtual())
+                section.emit(OpCode.SW, vrToAr.get(insn.def()), Register.Arch.fp, slots.offset(insn.def()));
         }
     }
 
     private static AssemblyProgram run(AssemblyProgram prog) {
 
-        AssemblyProgram newProg = new AssemblyProgram();
+        AssemblyProgram newProg = new AssemblyProgram(prog.context);
 
         // we assume that each function has a single corresponding text section
         prog.sections.forEach(section -> {
@@ -91,23 +58,13 @@ public final class NaiveRegAlloc implements AssemblyPass {
             else {
                 assert (section.type == AssemblyProgram.Section.Type.TEXT);
 
-                // map from virtual register to corresponding uniquely created label
-                final Map<Register.Virtual, Label> vrMap = collectVirtualRegisters(section);
-
-                // allocate one label for each virtual register in a new data section
-                AssemblyProgram.Section dataSec = newProg.newSection(AssemblyProgram.Section.Type.DATA);
-                dataSec.emit("Allocated labels for virtual registers");
-                vrMap.forEach((vr, lbl) -> {
-                    dataSec.emit(lbl);
-                    dataSec.emit(new Directive("space " + 4));
-                });
+                // give each virtual register a stack slot in the frame, sharing them where live ranges allow
+                Liveness liveness = new Liveness(section.items);
+                final SpillSlots slots = new SpillSlots(liveness, new HashSet<>(liveness.registers()));
 
                 // emit new instructions that don't use any virtual registers and transform push/pop registers instructions into real sequence of instructions
-                // When dealign with push/pop registers, we assume that if a virtual register is used in the section, then it must be written into.
+                // The values of the virtual registers live in the frame, so pushing them amounts to making room for them.
                 final AssemblyProgram.Section newSection = newProg.newSection(AssemblyProgram.Section.Type.TEXT);
-                List<Label> vrLabels = new LinkedList<>(vrMap.values());
-                List<Label> reverseVrLabels = new LinkedList<>(vrLabels);
-                Collections.reverse(reverseVrLabels);
 
                 section.items.forEach(item ->
                         item.accept(new AssemblyItemVisitor() {
@@ -124,28 +81,14 @@ public final class NaiveRegAlloc implements AssemblyPass {
 
                                 if (insn == Instruction.Nullary.pushRegisters) {
                                     newSection.emit("Original instruction: pushRegisters");
-                                    for (Label l : vrLabels) {
-                                        // load content of memory at label into $t0
-                                        newSection.emit(OpCode.LA, Register.Arch.t0, l);
-                                        newSection.emit(OpCode.LW, Register.Arch.t0, Register.Arch.t0, 0);
-
-                                        // push $t0 onto stack
-                                        newSection.emit(OpCode.ADDI, Register.Arch.sp, Register.Arch.sp, -4);
-                                        newSection.emit(OpCode.SW, Register.Arch.t0, Register.Arch.sp, 0);
-                                    }
+                                    if (slots.size() > 0)
+                                        newSection.emit(OpCode.ADDI, Register.Arch.sp, Register.Arch.sp, -slots.size());
                                 } else if (insn == Instruction.Nullary.popRegisters) {
                                     newSection.emit("Original instruction: popRegisters");
-                                    for (Label l : reverseVrLabels) {
-                                        // pop from stack into $t0
-                                        newSection.emit(OpCode.LW, Register.Arch.t0, Register.Arch.sp, 0);
-                                        newSection.emit(OpCode.ADDI, Register.Arch.sp, Register.Arch.sp, 4);
-
-                                        // store content of $t0 in memory at label
-                                        newSection.emit(OpCode.LA, Register.Arch.t1, l);
-                                        newSection.emit(OpCode.SW, Register.Arch.t0, Register.Arch.t1, 0);
-                                    }
+                                    if (slots.size() > 0)
+                                        newSection.emit(OpCode.ADDI, Register.Arch.sp, Register.Arch.sp, slots.size());
                                 } else
-                                    emitInstructionWithoutVirtualRegister(insn, vrMap, newSection);
+                                    emitInstructionWithoutVirtualRegister(insn, slots, newSection);
                             }
                         }));
 
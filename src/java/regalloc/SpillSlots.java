@@ -0,0 +1,113 @@
+package regalloc;
+
+import gen.asm.Register;
+
+import java.util.*;
+
+/**
+ * Stack slots for the spilled virtual registers of a section. The slots are the words just below the saved frame
+ * pointer: pushRegisters reserves them, before saving any register, and popRegisters gives them back, so a spilled
+ * register is loaded and stored with a single $fp-relative instruction and every activation of a recursive function
+ * has slots of its own.
+ *
+ * Two spilled registers share a slot unless one is live where the other is live or defined; slots are handed out
+ * greedily in order of first appearance.
+ */
+final class SpillSlots {
+
+    /**
+     * The slots of a section with no spilled registers.
+     */
+    static final SpillSlots NONE = new SpillSlots();
+
+    private final Map<Register, Integer> offsets = new HashMap<>();
+    private final int count;
+
+    private SpillSlots() {
+        count = 0;
+    }
+
+    SpillSlots(Liveness liveness, Set<Register> spilled) {
+        List<Register.Virtual> registers = liveness.registers();
+        int n = registers.size();
+        boolean[] isSpilled = new boolean[n];
+        for (int v = 0; v < n; v++)
+            isSpilled[v] = spilled.contains(registers.get(v));
+
+        // neighbours may repeat, which only costs the greedy pass a little time
+        int[][] adjacent = new int[n][];
+        int[] adjacentCount = new int[n];
+        int[] live = new int[n];
+        liveness.scan((instruction, liveIn, liveOut) -> {
+            interfere(liveIn, -1, isSpilled, live, adjacent, adjacentCount);
+            interfere(liveOut, liveness.def(instruction), isSpilled, live, adjacent, adjacentCount);
+        });
+
+        // by register id, -1 for registers that are not spilled
+        int[] slot = new int[n];
+        Arrays.fill(slot, -1);
+        // the neighbour last seen to take each slot, plus one
+        int[] takenBy = new int[n + 1];
+        int slots = 0;
+        for (int v = 0; v < n; v++) {
+            if (!isSpilled[v])
+                continue;
+            for (int i = 0; i < adjacentCount[v]; i++) {
+                int s = slot[adjacent[v][i]];
+                if (s != -1)
+                    takenBy[s] = v + 1;
+            }
+            int s = 0;
+            while (takenBy[s] == v + 1)
+                s++;
+            slot[v] = s;
+            offsets.put(registers.get(v), -4 * (s + 1));
+            slots = Math.max(slots, s + 1);
+        }
+        count = slots;
+    }
+
+    // the spilled registers of the set, and the extra one if it is spilled too, all interfere with each other
+    private static void interfere(long[] set, int extra, boolean[] isSpilled, int[] live, int[][] adjacent,
+                                  int[] adjacentCount) {
+        int count = 0;
+        for (int w = 0; w < set.length; w++) {
+            for (long bits = set[w]; bits != 0; bits &= bits - 1) {
+                int v = w * 64 + Long.numberOfTrailingZeros(bits);
+                if (isSpilled[v] && v != extra)
+                    live[count++] = v;
+            }
+        }
+        if (extra != -1 && isSpilled[extra])
+            live[count++] = extra;
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                append(adjacent, adjacentCount, live[i], live[j]);
+                append(adjacent, adjacentCount, live[j], live[i]);
+            }
+        }
+    }
+
+    private static void append(int[][] adjacent, int[] adjacentCount, int v, int neighbour) {
+        int[] list = adjacent[v];
+        if (list == null)
+            list = adjacent[v] = new int[4];
+        else if (adjacentCount[v] == list.length)
+            list = adjacent[v] = Arrays.copyOf(list, list.length * 2);
+        list[adjacentCount[v]++] = neighbour;
+    }
+
+    /**
+     * @return the size in bytes of the slots, to reserve below the saved frame pointer
+     */
+    int size() {
+        return 4 * count;
+    }
+
+    /**
+     * @return the offset from $fp of the slot of a spilled register
+     */
+    int offset(Register register) {
+        return offsets.get(register);
+    }
+}
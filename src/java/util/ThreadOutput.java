@@ -0,0 +1,97 @@
+package util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Redirects {@link System#out} and {@link System#err} per thread, so that several compilations running at once in the
+ * same JVM each get their own diagnostics. Threads that have not called {@link #begin()} keep writing to the original
+ * streams.
+ */
+public final class ThreadOutput {
+
+    private static final ThreadLocal<ByteArrayOutputStream> CAPTURE = new ThreadLocal<>();
+    private static PrintStream originalOut;
+
+    private ThreadOutput() {
+    }
+
+    /**
+     * Replaces the standard streams with per-thread ones; does nothing if they have already been replaced.
+     */
+    public static synchronized void install() {
+        if (originalOut != null)
+            return;
+        originalOut = System.out;
+        System.setOut(new PrintStream(new Demultiplexer(System.out), true));
+        System.setErr(new PrintStream(new Demultiplexer(System.err), true));
+    }
+
+    /**
+     * Returns the standard output as it was before {@link #install()}.
+     */
+    public static synchronized PrintStream original() {
+        return originalOut != null ? originalOut : System.out;
+    }
+
+    /**
+     * Starts capturing everything the calling thread prints.
+     */
+    public static void begin() {
+        CAPTURE.set(new ByteArrayOutputStream());
+    }
+
+    /**
+     * Stops capturing for the calling thread and returns what it printed since {@link #begin()}.
+     */
+    public static String end() {
+        System.out.flush();
+        System.err.flush();
+        ByteArrayOutputStream captured = CAPTURE.get();
+        CAPTURE.remove();
+        return captured == null ? "" : captured.toString();
+    }
+
+    private static final class Demultiplexer extends OutputStream {
+        private final OutputStream fallback;
+
+        Demultiplexer(OutputStream fallback) {
+            this.fallback = fallback;
+        }
+
+        private OutputStream target() {
+            ByteArrayOutputStream captured = CAPTURE.get();
+            return captured != null ? captured : fallback;
+        }
+
+        @Override
+        public void write(int b) {
+            try {
+                target().write(b);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            try {
+                target().write(b, off, len);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void flush() {
+            try {
+                target().flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+#include "minic-stdlib.h"
+
+// Conditions of if and while: every relational operator between two variables and against zero, && and || whose
+// operands have side effects, and conditions known at compile time. Prints:
+// FTF0FFT0TTF1TFT1TFF1FTT0Y1111Y110111 TTF1FFF0TTT1FFT0FFT0TTF1N1111Y110111 TTT1FFF0TTT1FFF0FFF0TTT1Y11Y110111
+// FFF0TFT1FTF0TTT1FTF0TFT1N111N1101111 FFF0FFF0TTT1TTT1TTT1FFF0Y111Y11100111 TFT1FFF0TTT1FTF0FTF0TFT1N111Y11100111
+// FFF0TTT1FFF0TTT1FFF0TTT1N111N1111111 FFF0TTF1FFT0TTT1FFT0TTF1N111N1101111 FFT0FTF0TFT1TTF1TFF1FTT0Y111N1111111
+// cdn
+// 0y
+
+int g;
+
+// records each call in g, as one more digit
+int t(int v) {
+  g = g * 10 + 1;
+  return v;
+}
+
+void main() {
+  int a;
+  int b;
+  int i;
+  int j;
+  int xs[3];
+  char c;
+
+  xs[0] = -2;
+  xs[1] = 0;
+  xs[2] = 3;
+  i = 0;
+  while (i < 3) {
+    j = 0;
+    while (j < 3) {
+      a = xs[i];
+      b = xs[j];
+
+      if (a < b) print_c('T'); else print_c('F');
+      if (a < 0) print_c('T'); else print_c('F');
+      if (0 < b) print_c('T'); else print_c('F');
+      print_i(a < b);
+      if (a > b) print_c('T'); else print_c('F');
+      if (a > 0) print_c('T'); else print_c('F');
+      if (0 > b) print_c('T'); else print_c('F');
+      print_i(a > b);
+      if (a <= b) print_c('T'); else print_c('F');
+      if (a <= 0) print_c('T'); else print_c('F');
+      if (0 <= b) print_c('T'); else print_c('F');
+      print_i(a <= b);
+      if (a >= b) print_c('T'); else print_c('F');
+      if (a >= 0) print_c('T'); else print_c('F');
+      if (0 >= b) print_c('T'); else print_c('F');
+      print_i(a >= b);
+      if (a == b) print_c('T'); else print_c('F');
+      if (a == 0) print_c('T'); else print_c('F');
+      if (0 == b) print_c('T'); else print_c('F');
+      print_i(a == b);
+      if (a != b) print_c('T'); else print_c('F');
+      if (a != 0) print_c('T'); else print_c('F');
+      if (0 != b) print_c('T'); else print_c('F');
+      print_i(a != b);
+
+      g = 0;
+      if (t(a) < 0 && t(b) > 0 || t(a) == t(b)) print_c('Y'); else print_c('N');
+      print_i(g);
+      g = 0;
+      if ((t(a) != 0 || t(b) >= 0) && t(a) <= 1) print_c('Y'); else print_c('N');
+      print_i(g);
+      g = 0;
+      print_i(t(a) > 0 && t(b));
+      print_i(t(a) || t(b) < 0);
+      print_i(g);
+      print_c(' ');
+      j = j + 1;
+    }
+    print_c('\n');
+    i = i + 1;
+  }
+
+  c = 'q';
+  if (c == 'q') print_c('c');
+  if (c != '\0') print_c('d');
+  while ((int) c > (int) 'n') c = (char) ((int) c - 1);
+  print_c(c);
+  print_c('\n');
+
+  // constant conditions
+  i = 5;
+  while (i) i = i - 1;
+  print_i(i);
+  while (0) print_i(7);
+  if (1) print_c('y'); else print_c('n');
+  print_c('\n');
+}
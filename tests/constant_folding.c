@@ -0,0 +1,86 @@
+#include "minic-stdlib.h"
+
+// Expressions, conditions and variables that constant folding replaces. Prints the same with and without --no-fold:
+// 23
+// 9
+// z
+// 66
+// 010
+// 11
+// -3-1
+// 2
+// 5
+// 46
+
+int g;
+
+int side() {
+  g = g + 1;
+  return 1;
+}
+
+void main() {
+  int n;
+  int debug;
+  char c;
+  int k;
+  int arr[4];
+
+  n = 3 + 4 * 5;
+  debug = 0;
+  c = 'z';
+
+  // conditions known at compile time
+  if (debug) {
+    print_s((char*)"dbg");
+  }
+  while (0) {
+    print_i(99);
+  }
+  if (1 < 2)
+    print_i(n);
+  else
+    print_i(-1);
+  print_c('\n');
+
+  print_i(sizeof(int) + sizeof(char) + sizeof(int*));
+  print_c('\n');
+  if (c == 'z')
+    print_c(c);
+  print_c('\n');
+  print_i((int)'A' + 1);
+  print_c('\n');
+
+  // the right operand is called only when the left one does not decide the result
+  print_i(0 && side());
+  print_i(1 || side());
+  print_i(g);
+  print_c('\n');
+  print_i(1 && side());
+  print_i(g);
+  print_c('\n');
+
+  // division rounds towards zero
+  print_i(-7 / 2);
+  print_i(-7 % 2);
+  print_c('\n');
+
+  // k is assigned twice, so it is not a constant
+  k = 1;
+  k = k + 1;
+  print_i(k);
+  print_c('\n');
+
+  arr[n - 20] = 5;
+  print_i(arr[3]);
+  print_c('\n');
+
+  if (0)
+    print_i(1);
+  else {
+    int m;
+    m = 2;
+    print_i(m * n);
+  }
+  print_c('\n');
+}
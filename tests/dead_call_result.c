@@ -0,0 +1,21 @@
+#include "minic-stdlib.h"
+
+// The result of h(y) is never used, yet its register must not be shared with x, which is live across the call.
+// With the input 5 then 7, prints "7 5".
+
+int h(int x) {
+  return x * 3;
+}
+
+int main() {
+  int y;
+  int x;
+
+  y = read_i();
+  x = read_i();
+  h(y);
+  print_i(x);
+  print_c(' ');
+  print_i(y);
+  return 0;
+}
@@ -0,0 +1,220 @@
+#include "minic-stdlib.h"
+
+// Multiplications, divisions and remainders by constants, which are strength-reduced, checked against the same
+// operations by the value of a global, which go through mult and div. Prints "ok" when every result agrees, and
+// each operation that does not otherwise.
+
+int d;
+int failures;
+
+void check(int got, int want, int x, char op) {
+  if (got != want) {
+    print_i(x);
+    print_c(op);
+    print_i(d);
+    print_s((char*)" gave ");
+    print_i(got);
+    print_s((char*)" instead of ");
+    print_i(want);
+    print_c('\n');
+    failures = failures + 1;
+  }
+}
+
+void main() {
+  int xs[15];
+  int i;
+  int x;
+
+  xs[0] = 0;
+  xs[1] = 1;
+  xs[2] = -1;
+  xs[3] = 7;
+  xs[4] = -7;
+  xs[5] = 13;
+  xs[6] = -13;
+  xs[7] = 2147483647;
+  xs[8] = -2147483647 - 1;
+  xs[9] = 1000;
+  xs[10] = -1000;
+  xs[11] = 65535;
+  xs[12] = -65536;
+  xs[13] = 123457;
+  xs[14] = -123457;
+
+  i = 0;
+  while (i < 15) {
+    x = xs[i];
+
+    d = 0;
+    check(x * 0, x * d, x, '*');
+    check(0 * x, x * d, x, '*');
+    d = 1;
+    check(x * 1, x * d, x, '*');
+    check(1 * x, x * d, x, '*');
+    check(x / 1, x / d, x, '/');
+    check(x % 1, x % d, x, '%');
+    d = -1;
+    check(x * (-1), x * d, x, '*');
+    check((-1) * x, x * d, x, '*');
+    check(x / (-1), x / d, x, '/');
+    check(x % (-1), x % d, x, '%');
+    d = 2;
+    check(x * 2, x * d, x, '*');
+    check(2 * x, x * d, x, '*');
+    check(x / 2, x / d, x, '/');
+    check(x % 2, x % d, x, '%');
+    d = -2;
+    check(x * (-2), x * d, x, '*');
+    check((-2) * x, x * d, x, '*');
+    check(x / (-2), x / d, x, '/');
+    check(x % (-2), x % d, x, '%');
+    d = 3;
+    check(x * 3, x * d, x, '*');
+    check(3 * x, x * d, x, '*');
+    check(x / 3, x / d, x, '/');
+    check(x % 3, x % d, x, '%');
+    d = -3;
+    check(x * (-3), x * d, x, '*');
+    check((-3) * x, x * d, x, '*');
+    check(x / (-3), x / d, x, '/');
+    check(x % (-3), x % d, x, '%');
+    d = 4;
+    check(x * 4, x * d, x, '*');
+    check(4 * x, x * d, x, '*');
+    check(x / 4, x / d, x, '/');
+    check(x % 4, x % d, x, '%');
+    d = 5;
+    check(x * 5, x * d, x, '*');
+    check(5 * x, x * d, x, '*');
+    check(x / 5, x / d, x, '/');
+    check(x % 5, x % d, x, '%');
+    d = 6;
+    check(x * 6, x * d, x, '*');
+    check(6 * x, x * d, x, '*');
+    check(x / 6, x / d, x, '/');
+    check(x % 6, x % d, x, '%');
+    d = 7;
+    check(x * 7, x * d, x, '*');
+    check(7 * x, x * d, x, '*');
+    check(x / 7, x / d, x, '/');
+    check(x % 7, x % d, x, '%');
+    d = -7;
+    check(x * (-7), x * d, x, '*');
+    check((-7) * x, x * d, x, '*');
+    check(x / (-7), x / d, x, '/');
+    check(x % (-7), x % d, x, '%');
+    d = 8;
+    check(x * 8, x * d, x, '*');
+    check(8 * x, x * d, x, '*');
+    check(x / 8, x / d, x, '/');
+    check(x % 8, x % d, x, '%');
+    d = -8;
+    check(x * (-8), x * d, x, '*');
+    check((-8) * x, x * d, x, '*');
+    check(x / (-8), x / d, x, '/');
+    check(x % (-8), x % d, x, '%');
+    d = 9;
+    check(x * 9, x * d, x, '*');
+    check(9 * x, x * d, x, '*');
+    check(x / 9, x / d, x, '/');
+    check(x % 9, x % d, x, '%');
+    d = 10;
+    check(x * 10, x * d, x, '*');
+    check(10 * x, x * d, x, '*');
+    check(x / 10, x / d, x, '/');
+    check(x % 10, x % d, x, '%');
+    d = 12;
+    check(x * 12, x * d, x, '*');
+    check(12 * x, x * d, x, '*');
+    check(x / 12, x / d, x, '/');
+    check(x % 12, x % d, x, '%');
+    d = 14;
+    check(x * 14, x * d, x, '*');
+    check(14 * x, x * d, x, '*');
+    check(x / 14, x / d, x, '/');
+    check(x % 14, x % d, x, '%');
+    d = 15;
+    check(x * 15, x * d, x, '*');
+    check(15 * x, x * d, x, '*');
+    check(x / 15, x / d, x, '/');
+    check(x % 15, x % d, x, '%');
+    d = 16;
+    check(x * 16, x * d, x, '*');
+    check(16 * x, x * d, x, '*');
+    check(x / 16, x / d, x, '/');
+    check(x % 16, x % d, x, '%');
+    d = -16;
+    check(x * (-16), x * d, x, '*');
+    check((-16) * x, x * d, x, '*');
+    check(x / (-16), x / d, x, '/');
+    check(x % (-16), x % d, x, '%');
+    d = 17;
+    check(x * 17, x * d, x, '*');
+    check(17 * x, x * d, x, '*');
+    check(x / 17, x / d, x, '/');
+    check(x % 17, x % d, x, '%');
+    d = 31;
+    check(x * 31, x * d, x, '*');
+    check(31 * x, x * d, x, '*');
+    check(x / 31, x / d, x, '/');
+    check(x % 31, x % d, x, '%');
+    d = 32;
+    check(x * 32, x * d, x, '*');
+    check(32 * x, x * d, x, '*');
+    check(x / 32, x / d, x, '/');
+    check(x % 32, x % d, x, '%');
+    d = -32;
+    check(x * (-32), x * d, x, '*');
+    check((-32) * x, x * d, x, '*');
+    check(x / (-32), x / d, x, '/');
+    check(x % (-32), x % d, x, '%');
+    d = 33;
+    check(x * 33, x * d, x, '*');
+    check(33 * x, x * d, x, '*');
+    check(x / 33, x / d, x, '/');
+    check(x % 33, x % d, x, '%');
+    d = 64;
+    check(x * 64, x * d, x, '*');
+    check(64 * x, x * d, x, '*');
+    check(x / 64, x / d, x, '/');
+    check(x % 64, x % d, x, '%');
+    d = 1024;
+    check(x * 1024, x * d, x, '*');
+    check(1024 * x, x * d, x, '*');
+    check(x / 1024, x / d, x, '/');
+    check(x % 1024, x % d, x, '%');
+    d = 65536;
+    check(x * 65536, x * d, x, '*');
+    check(65536 * x, x * d, x, '*');
+    check(x / 65536, x / d, x, '/');
+    check(x % 65536, x % d, x, '%');
+    d = -65536;
+    check(x * (-65536), x * d, x, '*');
+    check((-65536) * x, x * d, x, '*');
+    check(x / (-65536), x / d, x, '/');
+    check(x % (-65536), x % d, x, '%');
+    d = 65537;
+    check(x * 65537, x * d, x, '*');
+    check(65537 * x, x * d, x, '*');
+    check(x / 65537, x / d, x, '/');
+    check(x % 65537, x % d, x, '%');
+    d = 1073741824;
+    check(x * 1073741824, x * d, x, '*');
+    check(1073741824 * x, x * d, x, '*');
+    check(x / 1073741824, x / d, x, '/');
+    check(x % 1073741824, x % d, x, '%');
+
+    // INT_MIN
+    d = -2147483647 - 1;
+    check(x * (-2147483647 - 1), x * d, x, '*');
+    check(x / (-2147483647 - 1), x / d, x, '/');
+    check(x % (-2147483647 - 1), x % d, x, '%');
+
+    i = i + 1;
+  }
+
+  if (failures == 0)
+    print_s((char*)"ok");
+  print_c('\n');
+}